@@ -24,6 +24,7 @@ native {
     create("jniBindings")
     create("foreignBindings")
     create("jvmciBindings")
+    create("matrixBindings")
 }
 
 benchmark {
@@ -37,6 +38,70 @@ benchmark {
             iterationTimeUnit = "ns"
             outputTimeUnit = "ns"
             mode = "avgt"
+            exclude("benchmark\\.matrix\\..*")
+        }
+        // Every invoker and marshalling path, run with `./gradlew :benchmarks:matrixBenchmarkCheck`
+        register("matrix") {
+            include("benchmark\\.matrix\\..*")
+            warmups = 3
+            iterations = 5
+            iterationTime = 1
+            iterationTimeUnit = "s"
+            outputTimeUnit = "ns"
+            mode = "avgt"
+            reportFormat = "json"
         }
     }
-}
\ No newline at end of file
+}
+
+/**
+ * Compares the latest matrix report with the baseline, and fails if some benchmark became slower than threshold.
+ *
+ * - `-PbenchmarkBaseline=path/to/jvm.json` - report of the previous run
+ * - `-PbenchmarkThreshold=0.1` - allowed slowdown (10% by default)
+ */
+tasks.register("matrixBenchmarkCheck") {
+    group = "benchmark"
+    description = "Runs matrix benchmarks and checks them for regressions"
+    dependsOn("matrixBenchmark")
+
+    val reportsDir = layout.buildDirectory.dir("reports/benchmarks/matrix")
+    val baselinePath = providers.gradleProperty("benchmarkBaseline")
+    val threshold = providers.gradleProperty("benchmarkThreshold").map { it.toDouble() }.orElse(0.1)
+
+    doLast {
+        val report = reportsDir.get().asFile.walk()
+            .filter { it.name == "jvm.json" }
+            .maxByOrNull { it.lastModified() }
+            ?: throw GradleException("Matrix benchmark report was not found")
+
+        if(!baselinePath.isPresent) {
+            logger.lifecycle("Baseline is not set, current report: $report")
+            return@doLast
+        }
+
+        val current = readBenchmarkScores(report)
+        val baseline = readBenchmarkScores(file(baselinePath.get()))
+
+        val regressions = current.mapNotNull { (name, score) ->
+            val previous = baseline[name] ?: return@mapNotNull null
+            val change = score / previous - 1
+            if(change > threshold.get()) "$name: $previous -> $score ns/op (+${"%.1f".format(change * 100)}%)"
+            else null
+        }
+        if(regressions.isNotEmpty())
+            throw GradleException("Benchmarks are slower than the baseline:\n" + regressions.joinToString("\n"))
+        logger.lifecycle("No regressions found in ${current.size} benchmarks")
+    }
+}
+
+/**
+ * Reads JMH JSON report as map of "benchmark(params)" to average time
+ */
+@Suppress("UNCHECKED_CAST")
+fun readBenchmarkScores(file: File): Map<String, Double> =
+    (groovy.json.JsonSlurper().parse(file) as List<Map<String, Any?>>).associate {
+        val params = (it["params"] as Map<String, Any?>?).orEmpty().toSortedMap()
+        val name = "${it["benchmark"]}$params"
+        name to ((it["primaryMetric"] as Map<String, Any?>)["score"] as Number).toDouble()
+    }
\ No newline at end of file
@@ -23,6 +23,7 @@ extern "C" {
 int32_t callCriticalJVMCI();
 int32_t callCriticalJVMCIAdd(int32_t a, int32_t b);
 int32_t callCriticalJVMCIString(const char* arg);
+int32_t callCriticalJVMCIStringView(const char* arg, int32_t arg_length);
 
 #ifdef __cplusplus
 }
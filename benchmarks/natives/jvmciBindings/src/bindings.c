@@ -11,4 +11,8 @@ int callCriticalJVMCIAdd(int a, int b) {
 
 int callCriticalJVMCIString(const char* arg) {
     return 10;
+}
+
+int callCriticalJVMCIStringView(const char* arg, int32_t arg_length) {
+    return 10;
 }
\ No newline at end of file
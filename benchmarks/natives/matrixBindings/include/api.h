@@ -0,0 +1,65 @@
+/*
+ * This file was automatically generated by Gradle.
+ *
+ * DO NOT EDIT THIS FILE MANUALLY.
+ * Any changes made to this file will be overwritten the next time
+ * the project is built.
+ */
+ 
+#ifndef KOTLIN_NATIVE_MATRIXBINDINGS_H
+#define KOTLIN_NATIVE_MATRIXBINDINGS_H
+
+#include <stdint.h>
+#include <stdbool.h>
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+#ifndef INVOKE
+#define INVOKE(callback, ...) callback->invoke(callback, ##__VA_ARGS__)
+#endif // INVOKE
+
+#ifndef FREE_CALLBACK
+#define FREE_CALLBACK(callback) callback->free(callback)
+#endif // FREE_CALLBACK
+
+typedef struct IntCallback IntCallback;
+
+/* =================== *\
+        Callbacks
+\* =================== */
+
+struct IntCallback {
+	void *m;
+	int32_t (*invoke)(IntCallback* _, int32_t value);
+	void (*free)(IntCallback* _);
+};
+
+/* =================== *\
+        Functions
+\* =================== */
+
+int32_t empty();
+int32_t add2(int32_t a1, int32_t a2);
+int32_t add4(int32_t a1, int32_t a2, int32_t a3, int32_t a4);
+float mixed8(int32_t a1, float a2, int32_t a3, float a4, int32_t a5, float a6, int32_t a7, float a8);
+float mixed13(float a1, float a2, float a3, float a4, float a5, float a6, float a7, float a8, float a9, int32_t a10, int32_t a11, int32_t a12, int32_t a13);
+float mixed17(float a1, int32_t a2, float a3, int32_t a4, float a5, int32_t a6, float a7, int32_t a8, float a9, int32_t a10, float a11, int32_t a12, float a13, int32_t a14, float a15, int32_t a16, float a17);
+int32_t criticalEmpty();
+int32_t criticalAdd2(int32_t a1, int32_t a2);
+int32_t criticalAdd4(int32_t a1, int32_t a2, int32_t a3, int32_t a4);
+float criticalMixed8(int32_t a1, float a2, int32_t a3, float a4, int32_t a5, float a6, int32_t a7, float a8);
+float criticalMixed13(float a1, float a2, float a3, float a4, float a5, float a6, float a7, float a8, float a9, int32_t a10, int32_t a11, int32_t a12, int32_t a13);
+float criticalMixed17(float a1, int32_t a2, float a3, int32_t a4, float a5, int32_t a6, float a7, int32_t a8, float a9, int32_t a10, float a11, int32_t a12, float a13, int32_t a14, float a15, int32_t a16, float a17);
+int32_t stringLength(const char* text);
+int32_t criticalStringLength(const char* text);
+const char* makeString(int32_t length);
+int32_t upcall(IntCallback* callback, int32_t count);
+int32_t roundTrip(IntCallback* callback, int32_t value);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif // KOTLIN_NATIVE_MATRIXBINDINGS_H
\ No newline at end of file
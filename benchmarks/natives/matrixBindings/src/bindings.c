@@ -0,0 +1,83 @@
+#include "api.h"
+#include <stdlib.h>
+#include <string.h>
+
+// Arity
+
+int empty() {
+    return 10;
+}
+
+int add2(int a1, int a2) {
+    return a1 + a2;
+}
+
+int add4(int a1, int a2, int a3, int a4) {
+    return a1 + a2 + a3 + a4;
+}
+
+float mixed8(int a1, float a2, int a3, float a4, int a5, float a6, int a7, float a8) {
+    return a1 + a2 + a3 + a4 + a5 + a6 + a7 + a8;
+}
+
+float mixed13(float a1, float a2, float a3, float a4, float a5, float a6, float a7, float a8, float a9, int a10, int a11, int a12, int a13) {
+    return a1 + a2 + a3 + a4 + a5 + a6 + a7 + a8 + a9 + a10 + a11 + a12 + a13;
+}
+
+float mixed17(float a1, int a2, float a3, int a4, float a5, int a6, float a7, int a8, float a9, int a10, float a11, int a12, float a13, int a14, float a15, int a16, float a17) {
+    return a1 + a2 + a3 + a4 + a5 + a6 + a7 + a8 + a9 + a10 + a11 + a12 + a13 + a14 + a15 + a16 + a17;
+}
+
+int criticalEmpty() {
+    return empty();
+}
+
+int criticalAdd2(int a1, int a2) {
+    return add2(a1, a2);
+}
+
+int criticalAdd4(int a1, int a2, int a3, int a4) {
+    return add4(a1, a2, a3, a4);
+}
+
+float criticalMixed8(int a1, float a2, int a3, float a4, int a5, float a6, int a7, float a8) {
+    return mixed8(a1, a2, a3, a4, a5, a6, a7, a8);
+}
+
+float criticalMixed13(float a1, float a2, float a3, float a4, float a5, float a6, float a7, float a8, float a9, int a10, int a11, int a12, int a13) {
+    return mixed13(a1, a2, a3, a4, a5, a6, a7, a8, a9, a10, a11, a12, a13);
+}
+
+float criticalMixed17(float a1, int a2, float a3, int a4, float a5, int a6, float a7, int a8, float a9, int a10, float a11, int a12, float a13, int a14, float a15, int a16, float a17) {
+    return mixed17(a1, a2, a3, a4, a5, a6, a7, a8, a9, a10, a11, a12, a13, a14, a15, a16, a17);
+}
+
+// Strings
+
+int stringLength(const char* text) {
+    return (int)strlen(text);
+}
+
+int criticalStringLength(const char* text) {
+    return (int)strlen(text);
+}
+
+const char* makeString(int length) {
+    char* result = (char*)malloc(length + 1);
+    memset(result, 'a', length);
+    result[length] = 0;
+    return result;
+}
+
+// Callbacks
+
+int upcall(IntCallback* callback, int count) {
+    int result = 0;
+    for(int i = 0; i < count; i++)
+        result += INVOKE(callback, i);
+    return result;
+}
+
+int roundTrip(IntCallback* callback, int value) {
+    return INVOKE(callback, value);
+}
@@ -17,7 +17,13 @@ import natives.jniBindings.loadLibJniBindingsSync
 import natives.jvmciBindings.callCriticalJVMCI
 import natives.jvmciBindings.callCriticalJVMCIAdd
 import natives.jvmciBindings.callCriticalJVMCIString
+import natives.jvmciBindings.callCriticalJVMCIStringView
 import natives.jvmciBindings.loadLibJvmciBindingsSync
+import java.lang.foreign.FunctionDescriptor
+import java.lang.foreign.Linker
+import java.lang.foreign.SymbolLookup
+import java.lang.foreign.ValueLayout
+import java.lang.invoke.MethodHandle
 import java.util.concurrent.ThreadLocalRandom
 
 fun main() {
@@ -25,6 +31,26 @@ fun main() {
     callCriticalJVMCIAdd(2, 6)
 }
 
+/**
+ * Functions of foreignBindings, called with Linker by hand.
+ * Handles are static final, so generated bindings should have the same performance
+ */
+private object RawForeign {
+    private val linker = Linker.nativeLinker()
+    private val addDescriptor = FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT)
+
+    @JvmField val add: MethodHandle = linker.downcallHandle(
+        SymbolLookup.loaderLookup().find("EXPORTED_natives_foreignBindings_callForeignAdd").orElseThrow(),
+        addDescriptor
+    )
+
+    @JvmField val criticalAdd: MethodHandle = linker.downcallHandle(
+        SymbolLookup.loaderLookup().find("EXPORTED_natives_foreignBindings_callCriticalForeignAdd").orElseThrow(),
+        addDescriptor,
+        Linker.Option.critical(true)
+    )
+}
+
 @State(Scope.Benchmark)
 @Suppress("unused")
 open class NativeKtBenchmark {
@@ -75,6 +101,10 @@ open class NativeKtBenchmark {
     open fun foreignString() =
         callForeignString("test")
 
+    @Benchmark
+    open fun rawForeignAdd() =
+        RawForeign.add.invokeExact(a, b) as Int
+
     // Critical
 
     @Benchmark
@@ -93,6 +123,10 @@ open class NativeKtBenchmark {
     open fun criticalForeignAdd() =
         callCriticalForeignAdd(a, b)
 
+    @Benchmark
+    open fun rawCriticalForeignAdd() =
+        RawForeign.criticalAdd.invokeExact(a, b) as Int
+
     @Benchmark
     open fun criticalForeignString() =
         callCriticalForeignString("test")
@@ -109,4 +143,8 @@ open class NativeKtBenchmark {
     open fun criticalJVMCIString() =
         callCriticalJVMCIString("test")
 
+    @Benchmark
+    open fun criticalJVMCIStringView() =
+        callCriticalJVMCIStringView("test")
+
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package benchmark.matrix
+
+import kotlinx.benchmark.*
+import natives.matrixBindings.*
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * Calls with different count of arguments and mixed int/float registers
+ */
+@State(Scope.Benchmark)
+@Suppress("unused")
+open class ArityBenchmark: MatrixBenchmark() {
+
+    var i = 0
+    var f = 0f
+
+    @Setup
+    open fun prepare() {
+        i = ThreadLocalRandom.current().nextInt()
+        f = ThreadLocalRandom.current().nextFloat()
+    }
+
+    @Benchmark
+    open fun noArgs() =
+        empty()
+
+    @Benchmark
+    open fun twoInts() =
+        add2(i, i)
+
+    @Benchmark
+    open fun fourInts() =
+        add4(i, i, i, i)
+
+    @Benchmark
+    open fun mixed8Args() =
+        mixed8(i, f, i, f, i, f, i, f)
+
+    @Benchmark
+    open fun mixed13Args() =
+        mixed13(f, f, f, f, f, f, f, f, f, i, i, i, i)
+
+    @Benchmark
+    open fun mixed17Args() =
+        mixed17(f, i, f, i, f, i, f, i, f, i, f, i, f, i, f, i, f)
+
+    // Critical
+
+    @Benchmark
+    open fun criticalNoArgs() =
+        criticalEmpty()
+
+    @Benchmark
+    open fun criticalTwoInts() =
+        criticalAdd2(i, i)
+
+    @Benchmark
+    open fun criticalFourInts() =
+        criticalAdd4(i, i, i, i)
+
+    @Benchmark
+    open fun criticalMixed8Args() =
+        criticalMixed8(i, f, i, f, i, f, i, f)
+
+    @Benchmark
+    open fun criticalMixed13Args() =
+        criticalMixed13(f, f, f, f, f, f, f, f, f, i, i, i, i)
+
+    @Benchmark
+    open fun criticalMixed17Args() =
+        criticalMixed17(f, i, f, i, f, i, f, i, f, i, f, i, f, i, f, i, f)
+}
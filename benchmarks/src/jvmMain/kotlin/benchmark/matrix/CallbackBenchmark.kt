@@ -0,0 +1,33 @@
+package benchmark.matrix
+
+import kotlinx.benchmark.*
+import natives.matrixBindings.roundTrip
+import natives.matrixBindings.upcall
+import org.openjdk.jmh.annotations.OperationsPerInvocation
+
+/**
+ * Upcalls from native code into Kotlin
+ */
+@State(Scope.Benchmark)
+@Suppress("unused")
+open class CallbackBenchmark: MatrixBenchmark() {
+
+    /**
+     * Cost of a single upcall, wrapping of the callback is amortized
+     */
+    @Benchmark
+    @OperationsPerInvocation(UPCALLS)
+    open fun upcallOnly() =
+        upcall({ it + 1 }, UPCALLS)
+
+    /**
+     * Wrap, downcall, upcall and free of the callback
+     */
+    @Benchmark
+    open fun callbackRoundTrip() =
+        roundTrip({ it + 1 }, 10)
+
+    companion object {
+        const val UPCALLS = 1000
+    }
+}
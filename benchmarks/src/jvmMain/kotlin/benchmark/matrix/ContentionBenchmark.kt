@@ -0,0 +1,33 @@
+package benchmark.matrix
+
+import kotlinx.benchmark.*
+import natives.matrixBindings.add2
+import natives.matrixBindings.criticalAdd2
+import natives.matrixBindings.roundTrip
+import natives.matrixBindings.stringLength
+import org.openjdk.jmh.annotations.Threads
+
+/**
+ * The same calls from several threads at once
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@Suppress("unused")
+open class ContentionBenchmark: MatrixBenchmark() {
+
+    @Benchmark
+    open fun intArgs() =
+        add2(1, 2)
+
+    @Benchmark
+    open fun criticalIntArgs() =
+        criticalAdd2(1, 2)
+
+    @Benchmark
+    open fun stringArg() =
+        stringLength("contended string")
+
+    @Benchmark
+    open fun callbackRoundTrip() =
+        roundTrip({ it + 1 }, 10)
+}
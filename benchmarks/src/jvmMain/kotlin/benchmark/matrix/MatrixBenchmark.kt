@@ -0,0 +1,36 @@
+package benchmark.matrix
+
+import com.huskerdev.nativekt.NativeKtUtils
+import kotlinx.benchmark.*
+import natives.matrixBindings.loadLibMatrixBindingsSync
+import org.openjdk.jmh.annotations.Fork
+
+/**
+ * Base of the invoker matrix.
+ *
+ * Invoker is chosen once, when library is loaded, so every parameter combination is run in a separate fork.
+ * JVMCI is used only for `[Critical]` functions, other functions fall back to Foreign.
+ */
+@State(Scope.Benchmark)
+@Fork(1, jvmArgsAppend = [
+    "--enable-native-access=ALL-UNNAMED",
+    "-XX:+UnlockExperimentalVMOptions",
+    "-XX:+EnableJVMCI"
+])
+abstract class MatrixBenchmark {
+
+    @Param("jni", "foreign", "jvmci")
+    var invoker: String = ""
+
+    @Setup
+    open fun loadLibrary() {
+        if(invoker == "jvmci") {
+            System.setProperty("nativekt.jvm.forceInvoker", "foreign")
+            check(NativeKtUtils.isJvmciAvailable()) { "JVMCI is not available in this JVM" }
+        } else {
+            System.setProperty("nativekt.jvm.disableJVMCI", "true")
+            System.setProperty("nativekt.jvm.forceInvoker", invoker)
+        }
+        loadLibMatrixBindingsSync()
+    }
+}
@@ -0,0 +1,36 @@
+package benchmark.matrix
+
+import kotlinx.benchmark.*
+import natives.matrixBindings.criticalStringLength
+import natives.matrixBindings.makeString
+import natives.matrixBindings.stringLength
+
+/**
+ * String arguments and `[Dealloc]` string returns of different length (0 B - 1 MB)
+ */
+@State(Scope.Benchmark)
+@Suppress("unused")
+open class StringBenchmark: MatrixBenchmark() {
+
+    @Param("0", "16", "1024", "65536", "1048576")
+    var length = 0
+
+    var text = ""
+
+    @Setup
+    open fun prepare() {
+        text = "a".repeat(length)
+    }
+
+    @Benchmark
+    open fun stringArg() =
+        stringLength(text)
+
+    @Benchmark
+    open fun criticalStringArg() =
+        criticalStringLength(text)
+
+    @Benchmark
+    open fun deallocReturn() =
+        makeString(length)
+}
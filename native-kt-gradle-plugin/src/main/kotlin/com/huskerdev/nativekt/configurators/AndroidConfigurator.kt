@@ -2,21 +2,29 @@ package com.huskerdev.nativekt.configurators
 
 import com.android.build.api.dsl.KotlinMultiplatformAndroidLibraryExtension
 import com.android.build.api.variant.KotlinMultiplatformAndroidComponentsExtension
+import com.huskerdev.nativekt.plugin.CompileTask
+import com.huskerdev.nativekt.plugin.GenerateTask
 import com.huskerdev.nativekt.plugin.NativeKtExtension
 import com.huskerdev.nativekt.plugin.NativeModule
+import com.huskerdev.nativekt.plugin.registerCompileTask
+import com.huskerdev.nativekt.plugin.registerGenerateTask
 import com.huskerdev.nativekt.printers.HeaderPrinter
 import com.huskerdev.nativekt.printers.KotlinAndroidPrinter
 import com.huskerdev.nativekt.printers.jvm.CJniArenaPrinter
 import com.huskerdev.nativekt.printers.jvm.CJniPrinter
-import com.huskerdev.nativekt.utils.cmakeBuild
-import com.huskerdev.nativekt.utils.cmakeGen
-import com.huskerdev.nativekt.utils.dir
 import com.huskerdev.nativekt.utils.fresh
+import com.huskerdev.nativekt.utils.writeCmakeOptimization
 import com.huskerdev.webidl.resolver.IdlResolver
-import org.gradle.api.DefaultTask
 import org.gradle.api.Project
 import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.Internal
 import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.TaskAction
 import org.gradle.internal.extensions.stdlib.capitalized
 import org.gradle.kotlin.dsl.the
 import org.jetbrains.kotlin.gradle.plugin.KotlinSourceSet
@@ -26,7 +34,6 @@ internal fun configureAndroid(
     project: Project,
     extension: NativeKtExtension,
     androidExtension: KotlinMultiplatformAndroidLibraryExtension,
-    idl: IdlResolver,
     module: NativeModule,
     sourceSet: KotlinSourceSet,
     srcGenDir: File,
@@ -45,105 +52,149 @@ internal fun configureAndroid(
 
     val toolchain = File(ndkDir, "build/cmake/android.toolchain.cmake")
 
-    val androidGenDir = File(srcGenDir, "android/src")
-    androidGenDir.fresh()
+    val jniLibsDir = File(srcGenDir, "android/jniLibs")
 
-    val classPathFile = File(androidGenDir, module.classPath.replace(".", "/"))
+    val cmakeDir = File(cmakeRootDir, "android/project")
+    val cmakeBuildDir = File(cmakeRootDir, "android/out")
 
-    val jniLibsDir = File(srcGenDir, "android/jniLibs")
-    jniLibsDir.fresh()
+    val generateTask = project.registerGenerateTask<GenerateAndroidTask>("generateNatives${module.name.capitalized()}Android", module) {
+        sourcesDir.set(File(srcGenDir, "android/src"))
+        this.cmakeDir.set(cmakeDir)
+        useCoroutines.set(extension.useCoroutines)
+        this.expectActual.set(expectActual)
+    }
 
-    val cmakeDir = File(cmakeRootDir, "android")
-    cmakeDir.mkdirs()
+    sourceSet.kotlin.srcDir(generateTask.flatMap { it.sourcesDir })
 
-    val cmakeBuildDir = File(cmakeDir, "out")
-    cmakeBuildDir.mkdirs()
+    // Compilation task
+    val task = project.registerCompileTask<CompileAndroidTask>(
+        "compileNatives${module.name.capitalized()}Android", module, extension,
+        generateTask.flatMap { it.cmakeDir }
+    ) {
+        outputFolder.set(jniLibsDir)
+        this.cmakeBuildDir.set(cmakeBuildDir)
+        abis.set(extension.androidTargets)
+        this.toolchain.set(toolchain)
+        platform.set("android-${androidExtension.compileSdk}")
+        compilerVersion.set("ndk-${extension.ndkVersion}")
+        lto.set(module.lto)
+    }
 
-    val commonCmakeBuildDir = File(cmakeRootDir, "common")
-    commonCmakeBuildDir.mkdirs()
+    androidComponents.onVariants {
+        it.sources.jniLibs?.addGeneratedSourceDirectory(
+            task,
+            CompileAndroidTask::outputFolder
+        )
+    }
+}
 
-    sourceSet.kotlin.srcDir(androidGenDir)
+/**
+ * Generates Kotlin/Android bindings and CMake project for all ABIs
+ */
+@CacheableTask
+internal abstract class GenerateAndroidTask: GenerateTask() {
 
-    // Create CMakeLists.txt
-    File(cmakeDir, "CMakeLists.txt").writeText($$"""
-        cmake_minimum_required(VERSION 3.15)
+    @get:OutputDirectory
+    abstract val sourcesDir: DirectoryProperty
 
-        project("$${module.name}")
+    @get:OutputDirectory
+    abstract val cmakeDir: DirectoryProperty
 
-        add_subdirectory("$${
-            module.dir(project).absolutePath.replace("\\", "/")
-        }" "$${
-            commonCmakeBuildDir.absolutePath.replace("\\", "/")
-        }/android/${ANDROID_ABI}")
+    @get:Input
+    abstract val useCoroutines: Property<Boolean>
 
-        add_library(lib$${module.name} SHARED $<TARGET_OBJECTS:$${module.name}> jni_bindings.c)
-    """.trimIndent())
+    @get:Input
+    abstract val expectActual: Property<Boolean>
 
-    // Create Kotlin/Android bindings
-    KotlinAndroidPrinter(
-        idl = idl,
-        target = File(classPathFile, "${module.name}.kt"),
-        classPath = module.classPath,
-        moduleName = module.name,
-        useCoroutines = extension.useCoroutines,
-        expectActual = expectActual
-    )
+    override fun generate(idl: IdlResolver) {
+        val androidGenDir = sourcesDir.get().asFile
+        androidGenDir.fresh()
 
-    CJniPrinter(
-        idl = idl,
-        target = File(cmakeDir, "jni_bindings.c"),
-        classPath = module.classPath
-    )
+        val cmakeDir = cmakeDir.get().asFile
+        cmakeDir.fresh()
 
-    CJniArenaPrinter(
-        target = File(cmakeDir, "jni_arena.h"),
-        callbacks = idl.callbacks.isNotEmpty()
-    )
+        val name = moduleName.get()
+        val classPathFile = File(androidGenDir, classPath.get().replace(".", "/"))
 
-    HeaderPrinter(
-        idl = idl,
-        target = File(cmakeDir, "api.h")
-    )
+        // Create CMakeLists.txt
+        File(cmakeDir, "CMakeLists.txt").writeText($$"""
+            cmake_minimum_required(VERSION 3.15)
 
-    // Compilation task
-    val task = project.tasks.register("compileNatives${module.name.capitalized()}Android", CompileTask::class.java) {
-        group = "native"
-        outputFolder.set(jniLibsDir)
+            project("$$name")
 
-        doLast {
-            extension.androidTargets.forEach { abi ->
-                val targetBuildDir = File(cmakeBuildDir, abi)
+            include("${CMAKE_CURRENT_SOURCE_DIR}/optimization.cmake")
 
-                // Generate CMake build
-                cmakeGen(project, cmakeDir, targetBuildDir, module.buildType,
-                    args = setOf(
-                        "-DCMAKE_TOOLCHAIN_FILE=\"$toolchain\"",
-                        "-DANDROID_ABI=$abi",
-                        "-DANDROID_PLATFORM=android-${androidExtension.compileSdk}"
-                    )
-                )
+            add_subdirectory("${NATIVE_KT_MODULE_DIR}" "${NATIVE_KT_COMMON_DIR}")
 
-                // Build
-                cmakeBuild(project, targetBuildDir)
+            add_library(lib$$name SHARED $<TARGET_OBJECTS:$$name> jni_bindings.c)
+        """.trimIndent())
+        writeCmakeOptimization(cmakeDir)
 
-                // Copy library to jniLibs dir
-                File(targetBuildDir, "liblib${module.name}.so").copyTo(
-                    File(jniLibsDir, "$abi/lib${module.name}.so")
-                )
-            }
-        }
-    }
+        // Create Kotlin/Android bindings
+        KotlinAndroidPrinter(
+            idl = idl,
+            target = File(classPathFile, "$name.kt"),
+            classPath = classPath.get(),
+            moduleName = name,
+            useCoroutines = useCoroutines.get(),
+            expectActual = expectActual.get()
+        )
 
-    androidComponents.onVariants {
-        it.sources.jniLibs?.addGeneratedSourceDirectory(
-            task,
-            CompileTask::outputFolder
+        CJniPrinter(
+            idl = idl,
+            target = File(cmakeDir, "jni_bindings.c"),
+            classPath = classPath.get()
+        )
+
+        CJniArenaPrinter(
+            target = File(cmakeDir, "jni_arena.h"),
+            callbacks = idl.callbacks.isNotEmpty()
+        )
+
+        HeaderPrinter(
+            idl = idl,
+            target = File(cmakeDir, "api.h")
         )
     }
 }
 
-private abstract class CompileTask: DefaultTask() {
+/**
+ * Builds shared libraries for all ABIs
+ */
+@CacheableTask
+internal abstract class CompileAndroidTask: CompileTask() {
 
     @get:OutputDirectory
     abstract val outputFolder: DirectoryProperty
-}
\ No newline at end of file
+
+    @get:Internal
+    abstract val cmakeBuildDir: DirectoryProperty
+
+    @get:Internal
+    abstract val toolchain: RegularFileProperty
+
+    @get:Input
+    abstract val abis: ListProperty<String>
+
+    @get:Input
+    abstract val platform: Property<String>
+
+    @TaskAction
+    fun compile() {
+        val jniLibsDir = outputFolder.get().asFile
+        jniLibsDir.fresh()
+
+        abis.get().forEach { abi ->
+            val targetBuildDir = cmakeBuildDir.dir(abi).get().asFile
+
+            build(targetBuildDir, setOf(
+                "-DCMAKE_TOOLCHAIN_FILE=\"${toolchain.get().asFile}\"",
+                "-DANDROID_ABI=$abi",
+                "-DANDROID_PLATFORM=${platform.get()}"
+            )) {
+                // Copy library to jniLibs dir
+                copies.put("liblib${moduleName.get()}.so", File(jniLibsDir, "$abi/lib${moduleName.get()}.so"))
+            }
+        }
+    }
+}
@@ -1,34 +1,60 @@
 package com.huskerdev.nativekt.configurators
 
+import com.huskerdev.nativekt.plugin.GenerateTask
 import com.huskerdev.nativekt.plugin.Multiplatform
 import com.huskerdev.nativekt.plugin.NativeKtExtension
+import com.huskerdev.nativekt.plugin.registerGenerateTask
 import com.huskerdev.nativekt.printers.KotlinCommonPrinter
 import com.huskerdev.nativekt.utils.fresh
 import com.huskerdev.webidl.resolver.IdlResolver
+import org.gradle.api.Project
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.internal.extensions.stdlib.capitalized
 import org.jetbrains.kotlin.gradle.ExperimentalKotlinGradlePluginApi
 import org.jetbrains.kotlin.gradle.plugin.KotlinSourceSet
 import java.io.File
 
 @OptIn(ExperimentalKotlinGradlePluginApi::class)
 internal fun configureCommon(
+    project: Project,
     configuration: NativeKtExtension,
-    idl: IdlResolver,
     module: Multiplatform,
     sourceSet: KotlinSourceSet,
     srcGenDir: File
 ) {
-    val commonGenDir = File(srcGenDir, "common")
-    commonGenDir.fresh()
+    val task = project.registerGenerateTask<GenerateCommonTask>("generateNatives${module.name.capitalized()}Common", module) {
+        sourcesDir.set(File(srcGenDir, "common"))
+        useCoroutines.set(configuration.useCoroutines)
+    }
 
-    val classPathFile = File(commonGenDir, module.classPath.replace(".", "/"))
+    sourceSet.kotlin.srcDir(task.flatMap { it.sourcesDir })
+}
 
-    sourceSet.kotlin.srcDir(commonGenDir)
+@CacheableTask
+internal abstract class GenerateCommonTask: GenerateTask() {
 
-    KotlinCommonPrinter(
-        idl = idl,
-        target = File(classPathFile, "${module.name}.kt"),
-        classPath = module.classPath,
-        moduleName = module.name,
-        useCoroutines = configuration.useCoroutines
-    )
-}
\ No newline at end of file
+    @get:OutputDirectory
+    abstract val sourcesDir: DirectoryProperty
+
+    @get:Input
+    abstract val useCoroutines: Property<Boolean>
+
+    override fun generate(idl: IdlResolver) {
+        val commonGenDir = sourcesDir.get().asFile
+        commonGenDir.fresh()
+
+        val classPathFile = File(commonGenDir, classPath.get().replace(".", "/"))
+
+        KotlinCommonPrinter(
+            idl = idl,
+            target = File(classPathFile, "${moduleName.get()}.kt"),
+            classPath = classPath.get(),
+            moduleName = moduleName.get(),
+            useCoroutines = useCoroutines.get()
+        )
+    }
+}
@@ -1,17 +1,27 @@
 package com.huskerdev.nativekt.configurators
 
+import com.huskerdev.nativekt.plugin.CompileTask
+import com.huskerdev.nativekt.plugin.GenerateTask
 import com.huskerdev.nativekt.plugin.NativeKtExtension
 import com.huskerdev.nativekt.plugin.NativeModule
+import com.huskerdev.nativekt.plugin.registerCompileTask
+import com.huskerdev.nativekt.plugin.registerGenerateTask
 import com.huskerdev.nativekt.printers.HeaderPrinter
 import com.huskerdev.nativekt.printers.js.CEmscriptenPrinter
-import com.huskerdev.nativekt.utils.dir
 import com.huskerdev.nativekt.printers.js.KotlinJsPrinter
-import com.huskerdev.nativekt.utils.cmakeBuild
-import com.huskerdev.nativekt.utils.cmakeGen
 import com.huskerdev.nativekt.utils.fresh
+import com.huskerdev.nativekt.utils.batchName
+import com.huskerdev.nativekt.utils.batchOperators
 import com.huskerdev.nativekt.utils.globalOperators
 import com.huskerdev.webidl.resolver.IdlResolver
 import org.gradle.api.Project
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.TaskAction
 import org.gradle.internal.extensions.stdlib.capitalized
 import org.jetbrains.kotlin.gradle.plugin.KotlinSourceSet
 import java.io.File
@@ -19,7 +29,6 @@ import java.io.File
 internal fun configureJs(
     project: Project,
     extension: NativeKtExtension,
-    idl: IdlResolver,
     module: NativeModule,
     sourceSet: KotlinSourceSet,
     srcGenDir: File,
@@ -29,96 +38,133 @@ internal fun configureJs(
     if(System.getenv()["EMSDK"] == null)
         project.logger.error("Environment variable 'EMSDK' is not specified")
 
-    val jsGenDir = File(srcGenDir, "js/src")
-    jsGenDir.fresh()
-
-    val classPathFile = File(jsGenDir, module.classPath.replace(".", "/"))
-
     val rcsGenDir = File(srcGenDir, "js/resources")
-    rcsGenDir.fresh()
-
-    val cmakeDir = File(cmakeRootDir, "emscripten")
-    cmakeDir.mkdirs()
 
-    val cmakeBuildDir = File(cmakeDir, "out")
-    cmakeBuildDir.mkdirs()
+    val cmakeDir = File(cmakeRootDir, "emscripten/project")
+    val cmakeBuildDir = File(cmakeRootDir, "emscripten/out")
 
-    val commonCmakeBuildDir = File(cmakeRootDir, "common")
-    commonCmakeBuildDir.mkdirs()
-
-    val exportedFunctions = idl.globalOperators().map { "__${it.name}" } + listOf("_free", "_malloc")
-    val exportedStr = exportedFunctions.joinToString(",")
+    val generateTask = project.registerGenerateTask<GenerateJsTask>("generateNatives${module.name.capitalized()}Js", module) {
+        sourcesDir.set(File(srcGenDir, "js/src"))
+        this.cmakeDir.set(cmakeDir)
+        useCoroutines.set(extension.useCoroutines)
+        this.expectActual.set(expectActual)
+    }
 
-    sourceSet.kotlin.srcDir(jsGenDir)
+    sourceSet.kotlin.srcDir(generateTask.flatMap { it.sourcesDir })
     sourceSet.resources.srcDir(rcsGenDir)
 
-    // Create CMakeLists.txt with emscripten linker flags
-    File(cmakeDir, "CMakeLists.txt").writeText($$"""
-        cmake_minimum_required(VERSION 3.15)
-
-        project("$${module.name}")
-
-        add_subdirectory("$${
-            module.dir(project).absolutePath.replace("\\", "/")
-        }" "$${
-            commonCmakeBuildDir.absolutePath.replace("\\", "/")
-        }")
-
-        add_executable(lib$${module.name} $<TARGET_OBJECTS:$${module.name}> emscripten_bindings.c)
-        
-        set_target_properties(libtest PROPERTIES LINK_FLAGS "-s --no-entry -s ALLOW_MEMORY_GROWTH=1 -s ALLOW_TABLE_GROWTH=1 -s MODULARIZE=1 -s EXPORT_ES6=1 -s WASM_BIGINT=0 -s EXPORTED_RUNTIME_METHODS=UTF8ToString,stringToUTF8,lengthBytesUTF8,HEAP32,addFunction -s EXPORTED_FUNCTIONS=$$exportedStr")
-    """.trimIndent())
-
-    // Create Kotlin/JS bindings
-    KotlinJsPrinter(
-        idl = idl,
-        target = File(classPathFile, "${module.name}.kt"),
-        classPath = module.classPath,
-        moduleName = module.name,
-        useCoroutines = extension.useCoroutines,
-        expectActual = expectActual
-    )
-    CEmscriptenPrinter(
-        idl = idl,
-        target = File(cmakeDir, "emscripten_bindings.c")
-    )
-
-    HeaderPrinter(
-        idl = idl,
-        target = File(cmakeDir, "api.h")
-    )
-
     // Compilation task
-    val task = project.tasks.register("compileNatives${module.name.capitalized()}Js") {
-        group = "native"
-        doLast {
-            // Generate CMake build
-            val toolchain = File(System.getenv()["EMSDK"],
-                "upstream/emscripten/cmake/Modules/Platform/Emscripten.cmake")
-            cmakeGen(
-                project, cmakeDir, cmakeBuildDir,
-                module.buildType,
-                args = setOf(
-                    "-DCMAKE_TOOLCHAIN_FILE=\"$toolchain\""
-                )
-            )
-
-            // Build
-            cmakeBuild(project, cmakeBuildDir)
-
-            // Copy .js file
-            cmakeBuildDir.listFiles()!!.first {
-                it.name == "lib${module.name}.js"
-            }.copyTo(File(rcsGenDir, "lib${module.name}.js"), overwrite = true)
-
-            // Cope .wasm file
-            cmakeBuildDir.listFiles()!!.first {
-                it.name == "lib${module.name}.wasm"
-            }.copyTo(File(rcsGenDir, "lib${module.name}.wasm"), overwrite = true)
-        }
+    val task = project.registerCompileTask<CompileJsTask>(
+        "compileNatives${module.name.capitalized()}Js", module, extension,
+        generateTask.flatMap { it.cmakeDir }
+    ) {
+        outputDir.set(rcsGenDir)
+        this.cmakeBuildDir.set(cmakeBuildDir)
+
+        val emsdk = System.getenv()["EMSDK"]
+        if(emsdk != null) {
+            val versionFile = File(emsdk, "upstream/emscripten/emscripten-version.txt")
+            compilerVersion.set(project.providers.fileContents(project.layout.file(project.provider { versionFile }))
+                .asText.map { "emscripten-${it.trim()}" })
+        } else compilerVersion.set(null as String?)
     }
 
     project.tasks.matching { it.name == "compileKotlinJs" }.forEach {
         it.dependsOn(task)
     }
-}
\ No newline at end of file
+}
+
+/**
+ * Builds `.js` and `.wasm` files with Emscripten
+ */
+@CacheableTask
+internal abstract class CompileJsTask: CompileTask() {
+
+    @get:OutputDirectory
+    abstract val outputDir: DirectoryProperty
+
+    @get:Internal
+    abstract val cmakeBuildDir: DirectoryProperty
+
+    @TaskAction
+    fun compile() {
+        val buildDir = cmakeBuildDir.get().asFile
+        val toolchain = File(System.getenv()["EMSDK"],
+            "upstream/emscripten/cmake/Modules/Platform/Emscripten.cmake")
+
+        build(buildDir, setOf("-DCMAKE_TOOLCHAIN_FILE=\"$toolchain\"")) {
+            // Copy .js and .wasm files
+            listOf("js", "wasm").forEach {
+                val name = "lib${moduleName.get()}.$it"
+                copies.put(name, outputDir.file(name).get().asFile)
+            }
+        }
+    }
+}
+
+/**
+ * Generates Kotlin/JS bindings and Emscripten CMake project
+ */
+@CacheableTask
+internal abstract class GenerateJsTask: GenerateTask() {
+
+    @get:OutputDirectory
+    abstract val sourcesDir: DirectoryProperty
+
+    @get:OutputDirectory
+    abstract val cmakeDir: DirectoryProperty
+
+    @get:Input
+    abstract val useCoroutines: Property<Boolean>
+
+    @get:Input
+    abstract val expectActual: Property<Boolean>
+
+    override fun generate(idl: IdlResolver) {
+        val jsGenDir = sourcesDir.get().asFile
+        jsGenDir.fresh()
+
+        val cmakeDir = cmakeDir.get().asFile
+        cmakeDir.fresh()
+
+        val name = moduleName.get()
+        val classPathFile = File(jsGenDir, classPath.get().replace(".", "/"))
+
+        val exportedFunctions = idl.globalOperators().map { "__${it.name}" } +
+                idl.batchOperators().map { "__${batchName(it)}" } +
+                listOf("_free", "_malloc")
+        val exportedStr = exportedFunctions.joinToString(",")
+
+        // Create CMakeLists.txt with emscripten linker flags
+        File(cmakeDir, "CMakeLists.txt").writeText($$"""
+            cmake_minimum_required(VERSION 3.15)
+
+            project("$$name")
+
+            add_subdirectory("${NATIVE_KT_MODULE_DIR}" "${NATIVE_KT_COMMON_DIR}")
+
+            add_executable(lib$$name $<TARGET_OBJECTS:$$name> emscripten_bindings.c)
+            
+            set_target_properties(lib$$name PROPERTIES LINK_FLAGS "-s --no-entry -s ALLOW_MEMORY_GROWTH=1 -s ALLOW_TABLE_GROWTH=1 -s MODULARIZE=1 -s EXPORT_ES6=1 -s WASM_BIGINT=0 -s EXPORTED_RUNTIME_METHODS=UTF8ToString,stringToUTF8,lengthBytesUTF8,HEAP8,HEAP16,HEAP32,HEAPF32,HEAPF64,addFunction -s EXPORTED_FUNCTIONS=$$exportedStr")
+        """.trimIndent())
+
+        // Create Kotlin/JS bindings
+        KotlinJsPrinter(
+            idl = idl,
+            target = File(classPathFile, "$name.kt"),
+            classPath = classPath.get(),
+            moduleName = name,
+            useCoroutines = useCoroutines.get(),
+            expectActual = expectActual.get()
+        )
+        CEmscriptenPrinter(
+            idl = idl,
+            target = File(cmakeDir, "emscripten_bindings.c")
+        )
+
+        HeaderPrinter(
+            idl = idl,
+            target = File(cmakeDir, "api.h")
+        )
+    }
+}
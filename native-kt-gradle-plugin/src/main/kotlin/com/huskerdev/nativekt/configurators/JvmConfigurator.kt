@@ -1,7 +1,12 @@
 package com.huskerdev.nativekt.configurators
 
+import com.huskerdev.nativekt.plugin.CompileTask
+import com.huskerdev.nativekt.plugin.GenerateTask
 import com.huskerdev.nativekt.plugin.NativeKtExtension
 import com.huskerdev.nativekt.plugin.NativeModule
+import com.huskerdev.nativekt.plugin.PgoMode
+import com.huskerdev.nativekt.plugin.registerCompileTask
+import com.huskerdev.nativekt.plugin.registerGenerateTask
 import com.huskerdev.nativekt.printers.HeaderPrinter
 import com.huskerdev.nativekt.printers.jvm.CExportedPrinter
 import com.huskerdev.nativekt.printers.jvm.CJniArenaPrinter
@@ -9,27 +14,42 @@ import com.huskerdev.nativekt.printers.jvm.CJniPrinter
 import com.huskerdev.nativekt.printers.jvm.CJniUtilsPrinter
 import com.huskerdev.nativekt.printers.jvm.CJvmciPrinter
 import com.huskerdev.nativekt.printers.jvm.KotlinJvmPrinter
-import com.huskerdev.nativekt.utils.cmakeBuild
-import com.huskerdev.nativekt.utils.cmakeGen
 import com.huskerdev.nativekt.utils.currentTargetType
 import com.huskerdev.nativekt.utils.dir
+import com.huskerdev.nativekt.utils.exec
 import com.huskerdev.nativekt.utils.fresh
 import com.huskerdev.nativekt.utils.libExtension
+import com.huskerdev.nativekt.utils.writeCmakeOptimization
 import com.huskerdev.webidl.resolver.IdlResolver
 import org.apache.tools.ant.taskdefs.condition.Os
+import org.gradle.api.DefaultTask
 import org.gradle.api.Project
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskAction
 import org.gradle.internal.extensions.stdlib.capitalized
 import org.gradle.jvm.tasks.Jar
 import org.gradle.kotlin.dsl.get
+import org.gradle.process.ExecOperations
 import org.jetbrains.kotlin.gradle.plugin.KotlinSourceSet
 import java.io.File
+import javax.inject.Inject
 
 private const val LOCAL_RUN_CONFIGURATION = "_localNativeJvmRun"
 
 internal fun configureJvm(
     project: Project,
     extension: NativeKtExtension,
-    idl: IdlResolver,
     module: NativeModule,
     sourceSet: KotlinSourceSet,
     srcGenDir: File,
@@ -47,30 +67,12 @@ internal fun configureJvm(
         }
     }
 
-    val jvmGenDir = File(srcGenDir, "jvm/src")
-    jvmGenDir.fresh()
-
     val libsGenDir = File(srcGenDir, "jvm/libs")
-    libsGenDir.fresh()
-
-    val cmakeDir = File(cmakeRootDir, "jvm")
-    cmakeDir.fresh()
-
-    val commonCmakeDir = File(cmakeRootDir, "common")
-    commonCmakeDir.mkdirs()
-
-    val cmakeBuildDir = File(cmakeDir, currentTargetType().kotlinTarget)
-    cmakeBuildDir.mkdirs()
 
-    val classPathFile = File(jvmGenDir, module.classPath.replace(".", "/"))
+    val cmakeDir = File(cmakeRootDir, "jvm/project")
+    val cmakeBuildDir = File(cmakeRootDir, "jvm/${currentTargetType().kotlinTarget}")
 
     val jdkPath = System.getProperty("java.home").replace("\\", "/")
-    val jdkPlatformName = when {
-        Os.isFamily(Os.FAMILY_WINDOWS) -> "win32"
-        Os.isFamily(Os.FAMILY_MAC) -> "darwin"
-        Os.isFamily(Os.FAMILY_UNIX) -> "linux"
-        else -> throw UnsupportedOperationException()
-    }
 
     val platformName = when {
         Os.isFamily(Os.FAMILY_WINDOWS) -> "windows"
@@ -89,110 +91,333 @@ internal fun configureJvm(
     val libFullFileName = "lib${module.name}-$libArch.${libExtension}"
     val targetLibFile = File(libsGenDir, libFullFileName)
 
-    sourceSet.kotlin.srcDir(jvmGenDir)
+    val pgo = project.providers.gradleProperty("nativekt.pgo").orNull
+        ?.let { PgoMode.valueOf(it.uppercase()) }
+        ?: module.pgo
+    val profileFile = File(module.dir(project), "default.profdata")
+    val rawProfilesDir = File(cmakeRootDir, "jvm/pgo")
 
+    val generateTask = project.registerGenerateTask<GenerateJvmTask>("generateNatives${module.name.capitalized()}Jvm", module) {
+        sourcesDir.set(File(srcGenDir, "jvm/src"))
+        this.cmakeDir.set(cmakeDir)
+        useCoroutines.set(extension.useCoroutines)
+        this.expectActual.set(expectActual)
+        useForeignApi.set(extension.useForeignApi)
+        useJVMCI.set(extension.useJVMCI)
+        useUniversalMacOSLib.set(extension.useUniversalMacOSLib)
+        keepJniThreadsAttached.set(extension.keepJniThreadsAttached)
+        useLazyBinding.set(extension.useLazyBinding)
+        blockingThreads.set(extension.blockingThreads)
+    }
 
-    File(cmakeDir, "CMakeLists.txt").writeText($$"""
-        cmake_minimum_required(VERSION 3.15)
+    sourceSet.kotlin.srcDir(generateTask.flatMap { it.sourcesDir })
 
-        project("$${module.name}")
+    fun registerJvmCompileTask(
+        name: String,
+        buildDir: File,
+        libraryFile: File,
+        configure: CompileJvmTask.() -> Unit = {}
+    ) = project.registerCompileTask<CompileJvmTask>(name, module, extension, generateTask.flatMap { it.cmakeDir }) {
+        this.cmakeBuildDir.set(buildDir)
+        libraryName.set(libOutFileName)
+        this.libraryFile.set(libraryFile)
+        this.jdkPath.set(jdkPath)
+        jdkVersion.set(System.getProperty("java.specification.version"))
+        lto.set(module.lto)
+        this.pgo.set(pgo)
+        this.rawProfilesDir.set(rawProfilesDir)
+        if(pgo == PgoMode.USE)
+            profile.from(profileFile)
 
-        add_subdirectory("$${module.dir(project).absolutePath.replace("\\", "/")}" "$${commonCmakeDir.absolutePath.replace("\\", "/")}")
+        // Instrumented library contains absolute path of profiles
+        outputs.cacheIf { pgo != PgoMode.GENERATE }
 
-        add_library(lib_$${module.name} SHARED jni_bindings.c $${if(extension.useForeignApi || extension.useJVMCI) "externals.c" else ""} $${if(extension.useJVMCI) "jvmci.c" else ""})
-        
-        target_link_libraries(lib_$${module.name} PRIVATE $${module.name})
-        
-        target_include_directories(lib_$${module.name} PRIVATE "$${jdkPath}/include")
-        target_include_directories(lib_$${module.name} PRIVATE "$${jdkPath}/include/$$jdkPlatformName")
-    """.trimIndent())
+        cmakeArgs.add("-DCMAKE_C_COMPILER=clang")
+        cmakeArgs.add("-DCMAKE_CXX_COMPILER=clang++")
+        configure()
+    }
 
-    KotlinJvmPrinter(
-        idl = idl,
-        target = File(classPathFile, "${module.name}_jvm.kt"),
-        classPath = module.classPath,
-        moduleName = module.name,
-        useCoroutines = extension.useCoroutines,
-        expectActual = expectActual,
-        useForeignApi = extension.useForeignApi,
-        useJVMCI = extension.useJVMCI,
-        useUniversalMacOSLib = extension.useUniversalMacOSLib
+    val compileTasks = arrayListOf(
+        registerJvmCompileTask("compileNatives${module.name.capitalized()}Jvm", cmakeBuildDir, targetLibFile) {
+            if(Os.isFamily(Os.FAMILY_MAC) && extension.useUniversalMacOSLib) {
+                cmakeArgs.add("-DCMAKE_C_FLAGS=\"-arch x86_64 -arch arm64\"")
+                cmakeArgs.add("-DCMAKE_CXX_FLAGS=\"-arch x86_64 -arch arm64\"")
+            }
+        }
     )
 
-    CJniUtilsPrinter(
-        idl = idl,
-        target = File(cmakeDir, "jni_utils.h"),
-        classPath = module.classPath,
-        name = "${module.name.capitalized()}JNI"
-    )
+    // Variants for newer x86-64 CPUs, chosen by NativeKtUtils.loadLibrary
+    if(libArch == "x64") {
+        extension.jvmX64Levels.forEach { level ->
+            if(level !in setOf("x86-64-v2", "x86-64-v3", "x86-64-v4"))
+                throw Exception("Unknown x86-64 level '$level'")
+            val suffix = level.removePrefix("x86-64-")
 
-    CJniPrinter(
-        idl = idl,
-        target = File(cmakeDir, "jni_bindings.c"),
-        classPath = module.classPath,
-        name = "${module.name.capitalized()}JNI"
-    )
+            compileTasks += registerJvmCompileTask(
+                "compileNatives${module.name.capitalized()}Jvm${suffix.capitalized()}",
+                File(cmakeRootDir, "jvm/${currentTargetType().kotlinTarget}-$suffix"),
+                File(libsGenDir, "lib${module.name}-$libArch-$suffix.${libExtension}")
+            ) {
+                cmakeArgs.add("-DCMAKE_C_FLAGS=\"-march=$level\"")
+                cmakeArgs.add("-DCMAKE_CXX_FLAGS=\"-march=$level\"")
+            }
+        }
+    }
 
-    CJniArenaPrinter(
-        target = File(cmakeDir, "jni_arena.h"),
-        callbacks = idl.callbacks.isNotEmpty()
-    )
+    val packNativeJar = project.tasks.findByName("allNativesJar") as Jar?
+        ?: project.tasks.register("allNativesJar", Jar::class.java) {
+            group = "native"
+            archiveAppendix.set("jvm")
+            archiveClassifier.set("$platformName-$libArch")
 
-    if(extension.useForeignApi || extension.useJVMCI) {
-        CExportedPrinter(
-            idl = idl,
-            target = File(cmakeDir, "externals.c"),
-            classPath = module.classPath
-        )
+            project.dependencies.add(LOCAL_RUN_CONFIGURATION, project.files(this@register))
+        }.get()
+
+    compileTasks.forEach { task ->
+        packNativeJar.dependsOn(task)
+        packNativeJar.from(task.flatMap { it.libraryFile })
     }
 
-    if(extension.useJVMCI) {
-        CJvmciPrinter(
-            target = File(cmakeDir, "jvmci.c"),
-            classPath = module.classPath,
-            name = "${module.name.capitalized()}JVMCI"
-        )
+    if(pgo == PgoMode.GENERATE) {
+        // Profiles are written only when the training task is executed
+        project.tasks.matching { it.name == module.pgoTrainingTask }.configureEach {
+            outputs.upToDateWhen { false }
+        }
+        project.tasks.register("mergeNatives${module.name.capitalized()}Profile", MergeProfileTask::class.java) {
+            this.rawProfilesDir.set(rawProfilesDir)
+            this.profileFile.set(profileFile)
+            dependsOn(module.pgoTrainingTask)
+        }
     }
+}
 
-    HeaderPrinter(
-        idl = idl,
-        target = File(cmakeDir, "api.h")
-    )
+/**
+ * Merges raw profiles, written by instrumented library during the training task,
+ * into `default.profdata` of the native module
+ */
+internal abstract class MergeProfileTask: DefaultTask() {
 
-    val compileTask = project.tasks.register("compileNatives${module.name.capitalized()}Jvm") {
+    @get:Internal
+    abstract val rawProfilesDir: DirectoryProperty
+
+    @get:OutputFile
+    abstract val profileFile: RegularFileProperty
+
+    @get:Inject
+    protected abstract val execOperations: ExecOperations
+
+    init {
         group = "native"
-        doLast {
-            // Generate CMake build
-            val args = hashSetOf(
-                "-DCMAKE_C_COMPILER=clang",
-                "-DCMAKE_CXX_COMPILER=clang++"
-            )
-            if(Os.isFamily(Os.FAMILY_MAC) && extension.useUniversalMacOSLib) {
-                args += setOf(
-                    "-DCMAKE_C_FLAGS=\"-arch x86_64 -arch arm64\"",
-                    "-DCMAKE_CXX_FLAGS=\"-arch x86_64 -arch arm64\""
-                )
-            }
-            cmakeGen(project, cmakeDir, cmakeBuildDir, module.buildType, args)
+    }
+
+    @TaskAction
+    fun merge() {
+        val rawProfilesDir = rawProfilesDir.get().asFile
+        val rawProfiles = rawProfilesDir.listFiles { file -> file.extension == "profraw" }.orEmpty()
+        if(rawProfiles.isEmpty())
+            throw Exception("Profiles were not found in '$rawProfilesDir': training task didn't load native library")
+
+        // llvm-profdata should be of the same version as clang
+        val profdata = if(Os.isFamily(Os.FAMILY_MAC)) "xcrun llvm-profdata" else "llvm-profdata"
+        execOperations.exec("$profdata merge -o \"${profileFile.get().asFile}\" ${rawProfiles.joinToString(" ") { "\"$it\"" }}")
+
+        // The next training starts from scratch
+        rawProfiles.forEach { it.delete() }
+    }
+}
+
+/**
+ * Builds shared library for the current platform
+ */
+@CacheableTask
+internal abstract class CompileJvmTask: CompileTask() {
+
+    @get:Internal
+    abstract val cmakeBuildDir: DirectoryProperty
+
+    @get:Internal
+    abstract val jdkPath: Property<String>
+
+    /**
+     * JNI headers are taken from this JDK
+     */
+    @get:Input
+    abstract val jdkVersion: Property<String>
+
+    @get:Input
+    abstract val libraryName: Property<String>
+
+    @get:OutputFile
+    abstract val libraryFile: RegularFileProperty
+
+    @get:Input
+    abstract val pgo: Property<PgoMode>
+
+    /**
+     * Directory, where instrumented library writes raw profiles
+     */
+    @get:Internal
+    abstract val rawProfilesDir: DirectoryProperty
+
+    /**
+     * Merged profile, when [pgo] is [PgoMode.USE]
+     */
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.NONE)
+    abstract val profile: ConfigurableFileCollection
 
-            // Build
-            cmakeBuild(project, cmakeBuildDir)
+    @TaskAction
+    fun compile() {
+        val args = hashSetOf("-DNATIVE_KT_JDK_DIR=\"${jdkPath.get()}\"")
+        when(pgo.get()) {
+            PgoMode.NONE -> Unit
+            PgoMode.GENERATE -> {
+                val dir = rawProfilesDir.get().asFile
+                args += "-DNATIVE_KT_PROFILE_GENERATE=\"${dir.absolutePath.replace("\\", "/")}\""
+            }
+            PgoMode.USE -> {
+                val file = profile.singleFile
+                if(!file.exists())
+                    throw Exception("PGO profile '$file' was not found. Collect it with 'mergeNatives${moduleName.get().capitalized()}Profile -Pnativekt.pgo=generate'")
+                args += "-DNATIVE_KT_PROFILE_USE=\"${file.absolutePath.replace("\\", "/")}\""
+            }
+        }
 
-            cmakeBuildDir.listFiles()!!.first {
-                it.name == libOutFileName
-            }.copyTo(targetLibFile, overwrite = true)
+        build(cmakeBuildDir.get().asFile, args) {
+            copies.put(libraryName.get(), libraryFile.get().asFile)
         }
     }
+}
 
-    val packNativeJar = project.tasks.findByName("allNativesJar") as Jar?
-        ?: project.tasks.register("allNativesJar", Jar::class.java) {
-            group = "native"
-            archiveAppendix.set("jvm")
-            archiveClassifier.set("$platformName-$libArch")
+/**
+ * Generates Kotlin/JVM bindings and CMake project of the shared library
+ */
+@CacheableTask
+internal abstract class GenerateJvmTask: GenerateTask() {
 
-            project.dependencies.add(LOCAL_RUN_CONFIGURATION, project.files(this@register))
-        }.get()
+    @get:OutputDirectory
+    abstract val sourcesDir: DirectoryProperty
+
+    @get:OutputDirectory
+    abstract val cmakeDir: DirectoryProperty
+
+    @get:Input
+    abstract val useCoroutines: Property<Boolean>
+
+    @get:Input
+    abstract val expectActual: Property<Boolean>
+
+    @get:Input
+    abstract val useForeignApi: Property<Boolean>
+
+    @get:Input
+    abstract val useJVMCI: Property<Boolean>
+
+    @get:Input
+    abstract val useUniversalMacOSLib: Property<Boolean>
+
+    @get:Input
+    abstract val keepJniThreadsAttached: Property<Boolean>
+
+    @get:Input
+    abstract val useLazyBinding: Property<Boolean>
+
+    @get:Input
+    abstract val blockingThreads: Property<Int>
+
+    @get:Input
+    val jdkPlatformName = when {
+        Os.isFamily(Os.FAMILY_WINDOWS) -> "win32"
+        Os.isFamily(Os.FAMILY_MAC) -> "darwin"
+        Os.isFamily(Os.FAMILY_UNIX) -> "linux"
+        else -> throw UnsupportedOperationException()
+    }
+
+    override fun generate(idl: IdlResolver) {
+        val jvmGenDir = sourcesDir.get().asFile
+        jvmGenDir.fresh()
+
+        val cmakeDir = cmakeDir.get().asFile
+        cmakeDir.fresh()
 
-    packNativeJar.dependsOn(compileTask)
-    packNativeJar.from(targetLibFile)
-}
\ No newline at end of file
+        val name = moduleName.get()
+        val classPath = classPath.get()
+        val classPathFile = File(jvmGenDir, classPath.replace(".", "/"))
+
+        val useForeignApi = useForeignApi.get()
+        val useJVMCI = useJVMCI.get()
+
+        File(cmakeDir, "CMakeLists.txt").writeText($$"""
+            cmake_minimum_required(VERSION 3.15)
+
+            project("$$name")
+
+            include("${CMAKE_CURRENT_SOURCE_DIR}/optimization.cmake")
+
+            add_subdirectory("${NATIVE_KT_MODULE_DIR}" "${NATIVE_KT_COMMON_DIR}")
+
+            add_library(lib_$$name SHARED jni_bindings.c $${if(useForeignApi || useJVMCI) "externals.c" else ""} $${if(useJVMCI) "jvmci.c" else ""})
+            
+            target_link_libraries(lib_$$name PRIVATE $$name)
+            
+            target_include_directories(lib_$$name PRIVATE "${NATIVE_KT_JDK_DIR}/include")
+            target_include_directories(lib_$$name PRIVATE "${NATIVE_KT_JDK_DIR}/include/$$jdkPlatformName")
+        """.trimIndent())
+        writeCmakeOptimization(cmakeDir)
+
+        KotlinJvmPrinter(
+            idl = idl,
+            target = File(classPathFile, "${name}_jvm.kt"),
+            classPath = classPath,
+            moduleName = name,
+            useCoroutines = useCoroutines.get(),
+            expectActual = expectActual.get(),
+            useForeignApi = useForeignApi,
+            useJVMCI = useJVMCI,
+            useUniversalMacOSLib = useUniversalMacOSLib.get(),
+            useLazyBinding = useLazyBinding.get(),
+            blockingThreads = blockingThreads.get()
+        )
+
+        CJniUtilsPrinter(
+            idl = idl,
+            target = File(cmakeDir, "jni_utils.h"),
+            classPath = classPath,
+            name = "${name.capitalized()}JNI",
+            keepThreadsAttached = keepJniThreadsAttached.get()
+        )
+
+        CJniPrinter(
+            idl = idl,
+            target = File(cmakeDir, "jni_bindings.c"),
+            classPath = classPath,
+            name = "${name.capitalized()}JNI"
+        )
+
+        CJniArenaPrinter(
+            target = File(cmakeDir, "jni_arena.h"),
+            callbacks = idl.callbacks.isNotEmpty()
+        )
+
+        if(useForeignApi || useJVMCI) {
+            CExportedPrinter(
+                idl = idl,
+                target = File(cmakeDir, "externals.c"),
+                classPath = classPath
+            )
+        }
+
+        if(useJVMCI) {
+            CJvmciPrinter(
+                target = File(cmakeDir, "jvmci.c"),
+                classPath = classPath,
+                name = "${name.capitalized()}JVMCI"
+            )
+        }
+
+        HeaderPrinter(
+            idl = idl,
+            target = File(cmakeDir, "api.h")
+        )
+    }
+}
@@ -1,19 +1,29 @@
 package com.huskerdev.nativekt.configurators
 
 import com.huskerdev.nativekt.TargetType
+import com.huskerdev.nativekt.plugin.CompileTask
+import com.huskerdev.nativekt.plugin.GenerateTask
 import com.huskerdev.nativekt.plugin.NativeKtExtension
 import com.huskerdev.nativekt.plugin.NativeModule
+import com.huskerdev.nativekt.plugin.registerCompileTask
+import com.huskerdev.nativekt.plugin.registerGenerateTask
+import com.huskerdev.nativekt.utils.LINKER_OPTS_FILE
+import com.huskerdev.nativekt.utils.LINK_DIR
 import com.huskerdev.nativekt.utils.currentTargetType
-import com.huskerdev.nativekt.utils.dir
 import com.huskerdev.nativekt.utils.exec
 import com.huskerdev.nativekt.printers.kn.DefPrinter
 import com.huskerdev.nativekt.printers.HeaderPrinter
 import com.huskerdev.nativekt.printers.kn.KotlinNativePrinter
-import com.huskerdev.nativekt.utils.cmakeBuild
-import com.huskerdev.nativekt.utils.cmakeGen
 import com.huskerdev.nativekt.utils.fresh
 import com.huskerdev.webidl.resolver.IdlResolver
 import org.gradle.api.Project
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.TaskAction
 import org.gradle.internal.extensions.stdlib.capitalized
 import org.gradle.kotlin.dsl.the
 import org.jetbrains.kotlin.gradle.dsl.KotlinMultiplatformExtension
@@ -24,7 +34,6 @@ import java.io.File
 internal fun configureNative(
     project: Project,
     extension: NativeKtExtension,
-    idl: IdlResolver,
     module: NativeModule,
     sourceSet: KotlinSourceSet,
     targetType: TargetType,
@@ -40,69 +49,18 @@ internal fun configureNative(
     val targetName = targetType.kotlinTarget
     val sourceSetName = sourceSet.name
 
-    val nativeGenDir = File(srcGenDir, "native/$sourceSetName")
-    nativeGenDir.fresh()
-
-    val cinteropGenDir = File(srcGenDir, "cinterop")
-    cinteropGenDir.mkdirs()
-
-    val classPathFile = File(nativeGenDir, module.classPath.replace(".", "/"))
-
-    val cinteropDefFile = File(cinteropGenDir, "${module.name}.def")
-    val cinteropHeaderFile = File(cinteropGenDir, "${module.name}.h")
-
-    val cmakeDir = File(cmakeRootDir, "kn")
-    cmakeDir.mkdirs()
-
-    val cmakeBuildDir = File(cmakeDir, targetName)
-    cmakeBuildDir.mkdirs()
-
-    val commonCmakeBuildDir = File(cmakeRootDir, "common")
-    commonCmakeBuildDir.mkdirs()
-
-    sourceSet.kotlin.srcDir(nativeGenDir)
-
-    // Generate Kotlin files
-    KotlinNativePrinter(
-        idl = idl,
-        target = File(classPathFile, "${module.name}.kt"),
-        classPath = module.classPath,
-        moduleName = module.name,
-        useCoroutines = extension.useCoroutines,
-        expectActual = expectActual
-    )
-    HeaderPrinter(
-        idl = idl,
-        target = cinteropHeaderFile,
-        guardName = module.name.uppercase(),
-        constChar = false
-    )
-    DefPrinter(
-        target = cinteropDefFile,
-        headerFile = cinteropHeaderFile,
-        classPath = module.classPath
-    )
-
-    // Create CMake file
-    File(cmakeDir, "CMakeLists.txt").writeText($$"""
-        cmake_minimum_required(VERSION 3.15)
-
-        project("$${module.name}")
-
-        add_subdirectory("$${
-            module.dir(project).absolutePath.replace("\\", "/")
-        }" "$${
-            commonCmakeBuildDir.absolutePath.replace("\\", "/")
-        }")
-
-        add_library(lib_$${module.name} SHARED stub.c)
-        target_link_libraries(lib_$${module.name} PUBLIC $${module.name})
-        
-        add_library(libstatic_$${module.name} STATIC stub.c)
-        target_link_libraries(libstatic_$${module.name} PUBLIC $${module.name})
-    """.trimIndent())
-
-    File(cmakeDir, "stub.c").writeText("")
+    val cmakeDir = File(cmakeRootDir, "kn/$targetName/project")
+    val cmakeBuildDir = File(cmakeRootDir, "kn/$targetName/out")
+
+    val generateTask = project.registerGenerateTask<GenerateNativeTask>("generateNatives${module.name.capitalized()}Native${targetName.capitalized()}", module) {
+        sourcesDir.set(File(srcGenDir, "native/$sourceSetName"))
+        cinteropDir.set(File(srcGenDir, "cinterop/$targetName"))
+        this.cmakeDir.set(cmakeDir)
+        useCoroutines.set(extension.useCoroutines)
+        this.expectActual.set(expectActual)
+    }
+
+    sourceSet.kotlin.srcDir(generateTask.flatMap { it.sourcesDir })
 
     // Configure Kotlin cinterop
     val target = kotlin.targets.findByName(targetName) as? KotlinNativeTarget
@@ -112,146 +70,33 @@ internal fun configureNative(
         ?: throw UnsupportedOperationException()
 
     compilation.cinterops {
-        create("natives_${module.name}").definitionFile.set(cinteropDefFile)
+        create("natives_${module.name}") {
+            definitionFile.set(generateTask.flatMap { it.cinteropDir.file("${module.name}.def") })
+            includeDirs(generateTask.flatMap { it.cinteropDir })
+        }
     }
 
-    val task = project.tasks.register("compileNatives${module.name.capitalized()}Native${targetName.capitalized()}") {
-        group = "native"
-        doLast {
-            // Generate CMake build
-            run {
-                fun flags(vararg flags: String) = setOf(
-                    "-DCMAKE_C_FLAGS=\"${flags.joinToString(" ")}\"",
-                    "-DCMAKE_CXX_FLAGS=\"${flags.joinToString(" ")}\""
-                )
-                fun xcSdkVersion(sdk: String) =
-                    project.exec("xcrun --sdk $sdk --show-sdk-platform-version", silent = true)
-                fun xcSdkSysroot(sdk: String) =
-                    project.exec("xcrun --sdk $sdk --show-sdk-path", silent = true)
-
-
-                val args = hashSetOf(
-                    "-DCMAKE_C_COMPILER=clang",
-                    "-DCMAKE_CXX_COMPILER=clang++",
-                )
-                args += when(targetType) {
-                    TargetType.IOS_SIMULATOR_ARM64 -> flags(
-                        "-arch arm64",
-                        "-target arm64-apple-ios${xcSdkVersion("iphonesimulator")}-simulator",
-                        "-isysroot ${xcSdkSysroot("iphonesimulator")}"
-                    )
-                    TargetType.IOS_X64 -> flags(
-                        "-arch x86_64",
-                        "-target x86_64-apple-ios${xcSdkVersion("iphonesimulator")}-simulator",
-                        "-isysroot ${xcSdkSysroot("iphonesimulator")}"
-                    )
-                    TargetType.IOS_ARM64 -> flags(
-                        "-arch arm64",
-                        "-target arm64-apple-ios${xcSdkVersion("iphoneos")}",
-                        "-isysroot ${xcSdkSysroot("iphoneos")}"
-                    )
-                    TargetType.TVOS_ARM64 -> flags(
-                        "-arch arm64",
-                        "-target arm64-apple-tvos${xcSdkVersion("appletvos")}",
-                        "-isysroot ${xcSdkSysroot("appletvos")}"
-                    )
-                    TargetType.TVOS_SIMULATOR_ARM64 -> flags(
-                        "-arch arm64",
-                        "-target arm64-apple-tvos${xcSdkVersion("appletvsimulator")}-simulator",
-                        "-isysroot ${xcSdkSysroot("appletvsimulator")}"
-                    )
-                    TargetType.TVOS_X64 -> flags(
-                        "-arch x86_64",
-                        "-target x86_64-apple-tvos${xcSdkVersion("appletvsimulator")}-simulator",
-                        "-isysroot ${xcSdkSysroot("appletvsimulator")}"
-                    )
-                    TargetType.WATCHOS_ARM32 -> flags(
-                        "-arch armv7k",
-                        "-target armv7k-apple-watchos${xcSdkVersion("watchos")}",
-                        "-isysroot ${xcSdkSysroot("watchos")}"
-                    )
-                    TargetType.WATCHOS_ARM64 -> flags(
-                        "-arch arm64_32",
-                        "-target arm64-apple-watchos${xcSdkVersion("watchos")}",
-                        "-isysroot ${xcSdkSysroot("watchos")}"
-                    )
-                    TargetType.WATCHOS_DEVICE_ARM64 -> flags(
-                        "-arch arm64",
-                        "-target arm64-apple-watchos${xcSdkVersion("watchos")}",
-                        "-isysroot ${xcSdkSysroot("watchos")}"
-                    )
-                    TargetType.WATCHOS_SIMULATOR_ARM64 -> flags(
-                        "-arch arm64",
-                        "-target arm64-apple-watchos${xcSdkVersion("watchsimulator")}-simulator",
-                        "-isysroot ${xcSdkSysroot("watchsimulator")}"
-                    )
-                    TargetType.WATCHOS_X64 -> flags(
-                        "-arch x86_64",
-                        "-target x86_64-apple-watchos${xcSdkVersion("watchsimulator")}-simulator",
-                        "-isysroot ${xcSdkSysroot("watchsimulator")}"
-                    )
-                    TargetType.MACOS_ARM64 -> flags("-arch arm64")
-                    TargetType.MACOS_X64 -> flags("-arch x86_64")
-                    else -> emptySet()
-                }
+    val task = project.registerCompileTask<CompileNativeTask>(
+        "compileNatives${module.name.capitalized()}Native${targetName.capitalized()}", module, extension,
+        generateTask.flatMap { it.cmakeDir }
+    ) {
+        this.targetType.set(targetType)
+        this.cmakeBuildDir.set(cmakeBuildDir)
+        linkDir.set(File(cmakeRootDir, "kn/$targetName/link"))
+
+        cmakeArgs.add("-DCMAKE_C_COMPILER=clang")
+        cmakeArgs.add("-DCMAKE_CXX_COMPILER=clang++")
+    }
 
-                cmakeGen(project, cmakeDir, cmakeBuildDir, module.buildType, args)
-            }
-
-            // Build
-            cmakeBuild(project, cmakeBuildDir)
-
-            // Configure Kotlin linker options (copy from CMake)
-            target.binaries {
-                all {
-                    // arguments generates only with executable or shared libraries, so our CMakeLists.txt contains `SHARED` target
-                    val args = arrayListOf<String>()
-
-                    val linkLibs = File(
-                        cmakeBuildDir,
-                        "CMakeFiles/lib_${module.name}.dir/linkLibs.rsp"
-                    )
-                    val link = File(
-                        cmakeBuildDir,
-                        "CMakeFiles/lib_${module.name}.dir/link.txt"
-                    )
-
-                    if(linkLibs.exists()) {
-                        args += linkLibs.readText()
-                            .splitRespectingQuotes()
-                            .map {
-                                if(!it.startsWith("-l") && !File(it).isAbsolute)
-                                    File(cmakeBuildDir, it).absolutePath
-                                else it
-                            }
-                            .filter { it !in setOf("-lpthread") }
-                    } else if(link.exists()) {
-                        val parts = link.readText()
-                            .splitRespectingQuotes()
-
-                        var i = 0
-                        while(i < parts.size) {
-                            val part = parts[i]
-                            if(part.endsWith(".a")) {
-                                val path = if(!File(part).isAbsolute)
-                                    File(cmakeBuildDir, part).absolutePath
-                                else part
-                                args += path
-                            }
-                            if(part == "-framework") {
-                                args += part
-                                args += parts[++i]
-                            }
-                            i++
-                        }
-                    }
-
-                    linkerOpts(args +
-                        "-L${cmakeBuildDir.absolutePath.replace("\\", "/")}" +
-                        "-llibstatic_${module.name}"
-                    )
+    // Configure Kotlin linker options (copied from CMake by the compilation task)
+    target.binaries.all {
+        linkTaskProvider.configure {
+            toolOptions.freeCompilerArgs.addAll(task.flatMap { it.linkDir }.map { dir ->
+                val linkDir = dir.asFile.absolutePath.replace("\\", "/")
+                dir.file(LINKER_OPTS_FILE).asFile.readLines().flatMap {
+                    listOf("-linker-option", it.replace(LINK_DIR, linkDir))
                 }
-            }
+            })
         }
     }
 
@@ -260,8 +105,182 @@ internal fun configureNative(
     }
 }
 
-private fun String.splitRespectingQuotes(): List<String> =
-    """[^\s"']+|"([^"]*)"|'([^']*)'""".toRegex()
-        .findAll(this)
-        .map { it.value.trim('"', '\'') }
-        .toList()
+/**
+ * Generates Kotlin/Native bindings, cinterop definition and CMake project for the target
+ */
+@CacheableTask
+internal abstract class GenerateNativeTask: GenerateTask() {
+
+    @get:OutputDirectory
+    abstract val sourcesDir: DirectoryProperty
+
+    @get:OutputDirectory
+    abstract val cinteropDir: DirectoryProperty
+
+    @get:OutputDirectory
+    abstract val cmakeDir: DirectoryProperty
+
+    @get:Input
+    abstract val useCoroutines: Property<Boolean>
+
+    @get:Input
+    abstract val expectActual: Property<Boolean>
+
+    override fun generate(idl: IdlResolver) {
+        val nativeGenDir = sourcesDir.get().asFile
+        nativeGenDir.fresh()
+
+        val cinteropGenDir = cinteropDir.get().asFile
+        cinteropGenDir.fresh()
+
+        val cmakeDir = cmakeDir.get().asFile
+        cmakeDir.fresh()
+
+        val name = moduleName.get()
+        val classPathFile = File(nativeGenDir, classPath.get().replace(".", "/"))
+        val cinteropHeaderFile = File(cinteropGenDir, "$name.h")
+
+        // Generate Kotlin files
+        KotlinNativePrinter(
+            idl = idl,
+            target = File(classPathFile, "$name.kt"),
+            classPath = classPath.get(),
+            moduleName = name,
+            useCoroutines = useCoroutines.get(),
+            expectActual = expectActual.get()
+        )
+        HeaderPrinter(
+            idl = idl,
+            target = cinteropHeaderFile,
+            guardName = name.uppercase(),
+            constChar = false
+        )
+        DefPrinter(
+            target = File(cinteropGenDir, "$name.def"),
+            headerFile = cinteropHeaderFile,
+            classPath = classPath.get()
+        )
+
+        // Create CMake file
+        File(cmakeDir, "CMakeLists.txt").writeText($$"""
+            cmake_minimum_required(VERSION 3.15)
+
+            project("$$name")
+
+            add_subdirectory("${NATIVE_KT_MODULE_DIR}" "${NATIVE_KT_COMMON_DIR}")
+
+            add_library(lib_$$name SHARED stub.c)
+            target_link_libraries(lib_$$name PUBLIC $$name)
+            
+            add_library(libstatic_$$name STATIC stub.c)
+            target_link_libraries(libstatic_$$name PUBLIC $$name)
+        """.trimIndent())
+
+        File(cmakeDir, "stub.c").writeText("")
+    }
+}
+
+/**
+ * Builds static library for the Kotlin/Native target
+ */
+@CacheableTask
+internal abstract class CompileNativeTask: CompileTask() {
+
+    @get:Input
+    abstract val targetType: Property<TargetType>
+
+    @get:Internal
+    abstract val cmakeBuildDir: DirectoryProperty
+
+    /**
+     * Static libraries and arguments, that should be passed to Kotlin linker
+     */
+    @get:OutputDirectory
+    abstract val linkDir: DirectoryProperty
+
+    @TaskAction
+    fun compile() {
+        val name = moduleName.get()
+        val linkDir = linkDir.get().asFile
+        linkDir.fresh()
+
+        build(cmakeBuildDir.get().asFile, platformArgs()) {
+            copies.put("liblibstatic_$name.a", File(linkDir, "liblibstatic_$name.a"))
+            linkTarget.set("lib_$name")
+            this.linkDir.set(linkDir)
+            extraLinkerOpts.addAll("-L$LINK_DIR", "-llibstatic_$name")
+        }
+    }
+
+    private fun platformArgs(): Set<String> {
+        fun flags(vararg flags: String) = setOf(
+            "-DCMAKE_C_FLAGS=\"${flags.joinToString(" ")}\"",
+            "-DCMAKE_CXX_FLAGS=\"${flags.joinToString(" ")}\""
+        )
+        fun xcSdkVersion(sdk: String) =
+            execOperations.exec("xcrun --sdk $sdk --show-sdk-platform-version", silent = true)
+        fun xcSdkSysroot(sdk: String) =
+            execOperations.exec("xcrun --sdk $sdk --show-sdk-path", silent = true)
+
+        return when(targetType.get()) {
+            TargetType.IOS_SIMULATOR_ARM64 -> flags(
+                "-arch arm64",
+                "-target arm64-apple-ios${xcSdkVersion("iphonesimulator")}-simulator",
+                "-isysroot ${xcSdkSysroot("iphonesimulator")}"
+            )
+            TargetType.IOS_X64 -> flags(
+                "-arch x86_64",
+                "-target x86_64-apple-ios${xcSdkVersion("iphonesimulator")}-simulator",
+                "-isysroot ${xcSdkSysroot("iphonesimulator")}"
+            )
+            TargetType.IOS_ARM64 -> flags(
+                "-arch arm64",
+                "-target arm64-apple-ios${xcSdkVersion("iphoneos")}",
+                "-isysroot ${xcSdkSysroot("iphoneos")}"
+            )
+            TargetType.TVOS_ARM64 -> flags(
+                "-arch arm64",
+                "-target arm64-apple-tvos${xcSdkVersion("appletvos")}",
+                "-isysroot ${xcSdkSysroot("appletvos")}"
+            )
+            TargetType.TVOS_SIMULATOR_ARM64 -> flags(
+                "-arch arm64",
+                "-target arm64-apple-tvos${xcSdkVersion("appletvsimulator")}-simulator",
+                "-isysroot ${xcSdkSysroot("appletvsimulator")}"
+            )
+            TargetType.TVOS_X64 -> flags(
+                "-arch x86_64",
+                "-target x86_64-apple-tvos${xcSdkVersion("appletvsimulator")}-simulator",
+                "-isysroot ${xcSdkSysroot("appletvsimulator")}"
+            )
+            TargetType.WATCHOS_ARM32 -> flags(
+                "-arch armv7k",
+                "-target armv7k-apple-watchos${xcSdkVersion("watchos")}",
+                "-isysroot ${xcSdkSysroot("watchos")}"
+            )
+            TargetType.WATCHOS_ARM64 -> flags(
+                "-arch arm64_32",
+                "-target arm64-apple-watchos${xcSdkVersion("watchos")}",
+                "-isysroot ${xcSdkSysroot("watchos")}"
+            )
+            TargetType.WATCHOS_DEVICE_ARM64 -> flags(
+                "-arch arm64",
+                "-target arm64-apple-watchos${xcSdkVersion("watchos")}",
+                "-isysroot ${xcSdkSysroot("watchos")}"
+            )
+            TargetType.WATCHOS_SIMULATOR_ARM64 -> flags(
+                "-arch arm64",
+                "-target arm64-apple-watchos${xcSdkVersion("watchsimulator")}-simulator",
+                "-isysroot ${xcSdkSysroot("watchsimulator")}"
+            )
+            TargetType.WATCHOS_X64 -> flags(
+                "-arch x86_64",
+                "-target x86_64-apple-watchos${xcSdkVersion("watchsimulator")}-simulator",
+                "-isysroot ${xcSdkSysroot("watchsimulator")}"
+            )
+            TargetType.MACOS_ARM64 -> flags("-arch arm64")
+            TargetType.MACOS_X64 -> flags("-arch x86_64")
+            else -> emptySet()
+        }
+    }
+}
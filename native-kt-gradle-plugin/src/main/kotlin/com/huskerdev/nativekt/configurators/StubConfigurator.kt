@@ -1,32 +1,63 @@
 package com.huskerdev.nativekt.configurators
 
+import com.huskerdev.nativekt.plugin.GenerateTask
 import com.huskerdev.nativekt.plugin.NativeKtExtension
 import com.huskerdev.nativekt.plugin.NativeModule
+import com.huskerdev.nativekt.plugin.registerGenerateTask
 import com.huskerdev.nativekt.printers.KotlinStubPrinter
+import com.huskerdev.nativekt.utils.fresh
 import com.huskerdev.webidl.resolver.IdlResolver
+import org.gradle.api.Project
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.internal.extensions.stdlib.capitalized
 import org.jetbrains.kotlin.gradle.plugin.KotlinSourceSet
 import java.io.File
 
 internal fun configureStub(
+    project: Project,
     extension: NativeKtExtension,
-    idl: IdlResolver,
     module: NativeModule,
     sourceSet: KotlinSourceSet,
     srcGenDir: File
 ) {
-    val stubGenDir = File(srcGenDir, "stub/src")
-    stubGenDir.mkdirs()
-
-    val classPathFile = File(stubGenDir, module.classPath.replace(".", "/"))
-
-    sourceSet.kotlin.srcDir(stubGenDir)
-
-    // Create stub sources
-    KotlinStubPrinter(
-        idl = idl,
-        target = File(classPathFile, "${module.name}.kt"),
-        classPath = module.classPath,
-        moduleName = module.name,
-        useCoroutines = extension.useCoroutines
-    )
-}
\ No newline at end of file
+    // Stub sources are the same for all source sets
+    val taskName = "generateNatives${module.name.capitalized()}Stub"
+    val task = if(taskName in project.tasks.names)
+        project.tasks.named(taskName, GenerateStubTask::class.java)
+    else project.registerGenerateTask<GenerateStubTask>(taskName, module) {
+        sourcesDir.set(File(srcGenDir, "stub/src"))
+        useCoroutines.set(extension.useCoroutines)
+    }
+
+    sourceSet.kotlin.srcDir(task.flatMap { it.sourcesDir })
+}
+
+@CacheableTask
+internal abstract class GenerateStubTask: GenerateTask() {
+
+    @get:OutputDirectory
+    abstract val sourcesDir: DirectoryProperty
+
+    @get:Input
+    abstract val useCoroutines: Property<Boolean>
+
+    override fun generate(idl: IdlResolver) {
+        val stubGenDir = sourcesDir.get().asFile
+        stubGenDir.fresh()
+
+        val classPathFile = File(stubGenDir, classPath.get().replace(".", "/"))
+
+        // Create stub sources
+        KotlinStubPrinter(
+            idl = idl,
+            target = File(classPathFile, "${moduleName.get()}.kt"),
+            classPath = classPath.get(),
+            moduleName = moduleName.get(),
+            useCoroutines = useCoroutines.get()
+        )
+    }
+}
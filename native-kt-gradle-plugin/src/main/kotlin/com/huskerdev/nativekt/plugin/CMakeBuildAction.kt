@@ -0,0 +1,89 @@
+package com.huskerdev.nativekt.plugin
+
+import com.huskerdev.nativekt.utils.LINKER_OPTS_FILE
+import com.huskerdev.nativekt.utils.LINK_DIR
+import com.huskerdev.nativekt.utils.cmakeBuild
+import com.huskerdev.nativekt.utils.cmakeGen
+import com.huskerdev.nativekt.utils.cmakeLinkerOpts
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.ListProperty
+import org.gradle.api.provider.MapProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.SetProperty
+import org.gradle.process.ExecOperations
+import org.gradle.workers.WorkAction
+import org.gradle.workers.WorkParameters
+import java.io.File
+import javax.inject.Inject
+
+/**
+ * Single CMake build, executed by Gradle workers.
+ *
+ * Builds of different modules, targets and ABIs are independent,
+ * so they run concurrently, limited by `--max-workers`.
+ */
+abstract class CMakeBuildAction: WorkAction<CMakeBuildAction.Parameters> {
+
+    interface Parameters: WorkParameters {
+        val cmakeDir: DirectoryProperty
+        val buildDir: DirectoryProperty
+        val buildType: Property<CMakeBuildType>
+        val generator: Property<String>
+        val args: SetProperty<String>
+        val parallelJobs: Property<Int>
+
+        /**
+         * Files to copy after the build: name in [buildDir] to the destination
+         */
+        val copies: MapProperty<String, File>
+
+        /**
+         * Target, which linker arguments are written to [linkDir] (used by Kotlin/Native).
+         *
+         * Static libraries are copied to [linkDir] too, and are referenced relatively to it with [LINK_DIR],
+         * so the directory can be restored from the build cache on other machine.
+         */
+        val linkTarget: Property<String>
+        val linkDir: DirectoryProperty
+        val extraLinkerOpts: ListProperty<String>
+    }
+
+    @get:Inject
+    abstract val execOperations: ExecOperations
+
+    override fun execute() {
+        val buildDir = parameters.buildDir.get().asFile
+
+        cmakeGen(execOperations,
+            parameters.cmakeDir.get().asFile,
+            buildDir,
+            parameters.buildType.get(),
+            parameters.generator.get(),
+            parameters.args.get()
+        )
+        cmakeBuild(execOperations, buildDir, parameters.parallelJobs.get())
+
+        parameters.copies.get().forEach { (name, target) ->
+            File(buildDir, name).copyTo(target, overwrite = true)
+        }
+
+        if(parameters.linkDir.isPresent) {
+            val linkDir = parameters.linkDir.get().asFile
+            val names = hashSetOf<String>()
+
+            val args = cmakeLinkerOpts(execOperations, buildDir, parameters.linkTarget.get(), parameters.generator.get()).map {
+                val file = File(it)
+                if(!it.endsWith(".a") || !file.isFile)
+                    return@map it
+
+                var name = file.name
+                while(!names.add(name))
+                    name = "_$name"
+                file.copyTo(File(linkDir, name), overwrite = true)
+                "$LINK_DIR/$name"
+            } + parameters.extraLinkerOpts.get()
+
+            File(linkDir, LINKER_OPTS_FILE).writeText(args.joinToString("\n"))
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.huskerdev.nativekt.plugin
+
+import com.huskerdev.nativekt.utils.clangVersion
+import com.huskerdev.nativekt.utils.cmakeGenerator
+import com.huskerdev.nativekt.utils.dir
+import org.gradle.api.DefaultTask
+import org.gradle.api.Project
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.Directory
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.provider.Provider
+import org.gradle.api.provider.SetProperty
+import org.gradle.api.tasks.IgnoreEmptyDirectories
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputDirectory
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.NormalizeLineEndings
+import org.gradle.api.tasks.Optional
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskProvider
+import org.gradle.internal.extensions.stdlib.capitalized
+import org.gradle.process.ExecOperations
+import org.gradle.workers.WorkerExecutor
+import java.io.File
+import javax.inject.Inject
+
+/**
+ * Builds generated CMake project of the target.
+ *
+ * Native sources and generated project are inputs of the task,
+ * so it is up-to-date while nothing is changed.
+ * Paths are relative and line endings are normalized, so built libraries can be reused
+ * from the build cache on other machines, if compiler and flags are the same.
+ */
+abstract class CompileTask: DefaultTask() {
+
+    @get:Input
+    abstract val moduleName: Property<String>
+
+    @get:InputDirectory
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    @get:NormalizeLineEndings
+    abstract val cmakeDir: DirectoryProperty
+
+    @get:InputFiles
+    @get:PathSensitive(PathSensitivity.RELATIVE)
+    @get:IgnoreEmptyDirectories
+    @get:NormalizeLineEndings
+    abstract val sources: ConfigurableFileCollection
+
+    @get:Internal
+    abstract val moduleDir: DirectoryProperty
+
+    @get:Input
+    abstract val buildType: Property<CMakeBuildType>
+
+    @get:Input
+    abstract val generator: Property<String>
+
+    @get:Input
+    abstract val cmakeArgs: SetProperty<String>
+
+    /**
+     * Link-time optimization. Set only for projects, that include generated `optimization.cmake` (JVM and Android)
+     */
+    @get:Input
+    @get:Optional
+    abstract val lto: Property<Boolean>
+
+    /**
+     * Version of the toolchain (clang, NDK, Emscripten)
+     */
+    @get:Input
+    @get:Optional
+    abstract val compilerVersion: Property<String>
+
+    /**
+     * Doesn't affect the result, so it is not an input
+     */
+    @get:Internal
+    abstract val parallelJobs: Property<Int>
+
+    @get:Inject
+    protected abstract val execOperations: ExecOperations
+
+    @get:Inject
+    protected abstract val workerExecutor: WorkerExecutor
+
+    init {
+        group = "native"
+    }
+
+    /**
+     * Submits configuration (if needed) and build of CMake project in [buildDir] to workers.
+     *
+     * Every build has own binary directory of the native module,
+     * so concurrent builds don't overwrite each other.
+     */
+    protected fun build(
+        buildDir: File,
+        args: Set<String> = emptySet(),
+        configure: CMakeBuildAction.Parameters.() -> Unit = {}
+    ) {
+        val variables = setOfNotNull(
+            "-DNATIVE_KT_MODULE_DIR=\"${moduleDir.get().asFile.absolutePath.replace("\\", "/")}\"",
+            "-DNATIVE_KT_COMMON_DIR=\"${File(buildDir, "common").absolutePath.replace("\\", "/")}\"",
+            lto.orNull?.let { "-DNATIVE_KT_LTO=${if(it) "ON" else "OFF"}" }
+        )
+        workerExecutor.noIsolation().submit(CMakeBuildAction::class.java) {
+            cmakeDir.set(this@CompileTask.cmakeDir)
+            this.buildDir.set(buildDir)
+            buildType.set(this@CompileTask.buildType)
+            generator.set(this@CompileTask.generator)
+            this.args.set(cmakeArgs.get() + variables + args)
+            parallelJobs.set(this@CompileTask.parallelJobs)
+            configure()
+        }
+    }
+}
+
+internal inline fun <reified T: CompileTask> Project.registerCompileTask(
+    name: String,
+    module: NativeModule,
+    extension: NativeKtExtension,
+    cmakeDir: Provider<Directory>,
+    crossinline configure: T.() -> Unit
+): TaskProvider<T> = tasks.register(name, T::class.java) {
+    val moduleDir = module.dir(project)
+
+    moduleName.set(module.name)
+    this.cmakeDir.set(cmakeDir)
+    this.moduleDir.set(moduleDir)
+    sources.from(project.fileTree(moduleDir) {
+        // IDE build directories
+        exclude("build/**", "cmake-build-*/**", ".*/**")
+        // PGO profile is an input of JVM build only
+        exclude("*.profdata")
+    })
+    buildType.set(module.buildType)
+    generator.set(cmakeGenerator(extension.useNinja))
+    parallelJobs.set(extension.cmakeParallelJobs)
+    compilerVersion.set(project.clangVersion())
+
+    // api.h is a part of sources
+    dependsOn("generateNatives${module.name.capitalized()}Header")
+    configure()
+}
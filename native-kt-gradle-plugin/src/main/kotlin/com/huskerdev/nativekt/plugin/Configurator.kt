@@ -3,11 +3,8 @@ package com.huskerdev.nativekt.plugin
 import com.android.build.api.variant.KotlinMultiplatformAndroidComponentsExtension
 import com.huskerdev.nativekt.TargetType
 import com.huskerdev.nativekt.configurators.*
-import com.huskerdev.nativekt.printers.HeaderPrinter
 import com.huskerdev.nativekt.utils.dir
-import com.huskerdev.nativekt.utils.idl
 import com.huskerdev.nativekt.utils.idlFile
-import com.huskerdev.webidl.resolver.IdlResolver
 import org.gradle.internal.extensions.stdlib.capitalized
 import org.gradle.kotlin.dsl.the
 import org.jetbrains.kotlin.gradle.dsl.KotlinMultiplatformExtension
@@ -38,20 +35,17 @@ fun NativeKtPlugin.configureKotlin(
             return@whenObjectAdded
         }
 
-        val idl = module.idl(project)
         val cmakeModuleDir = File(cmakeDir, module.name)
         val srcGenModuleDir = File(srcGenDir, module.name)
 
-        when(module) {
-            is Multiplatform -> configureMultiplatform(idl, cmakeModuleDir, srcGenModuleDir, module)
-            is SinglePlatform -> configureSinglePlatform(idl, cmakeModuleDir, srcGenModuleDir, module)
+        project.registerGenerateTask<GenerateHeaderTask>("generateNatives${module.name.capitalized()}Header", module) {
+            headerFile.set(File(module.dir(project), "include/api.h"))
         }
 
-        HeaderPrinter(
-            idl = idl,
-            target = File(module.dir(project), "include/api.h"),
-            guardName = module.name.uppercase()
-        )
+        when(module) {
+            is Multiplatform -> configureMultiplatform(cmakeModuleDir, srcGenModuleDir, module)
+            is SinglePlatform -> configureSinglePlatform(cmakeModuleDir, srcGenModuleDir, module)
+        }
     }
 }
 
@@ -67,7 +61,6 @@ fun NativeKtPlugin.initAndroid(
             if(!module.idlFile(project).exists())
                 return@forEach
 
-            val idl = module.idl(project)
             val cmakeModuleDir = File(cmakeDir, module.name)
             val srcGenModuleDir = File(srcGenDir, module.name)
 
@@ -76,7 +69,7 @@ fun NativeKtPlugin.initAndroid(
                     module.getActiveSourceSets(kotlin)
                         .filter { getTargetType(kotlin, it) == TargetType.ANDROID }
                         .forEach {
-                            configureAndroid(project, extension, androidExtension, idl, module, it, srcGenModuleDir, cmakeModuleDir, true)
+                            configureAndroid(project, extension, androidExtension, module, it, srcGenModuleDir, cmakeModuleDir, true)
                         }
                 }
                 is SinglePlatform -> {
@@ -84,7 +77,7 @@ fun NativeKtPlugin.initAndroid(
                         ?: throw Exception("Source set '${module.targetSourceSet}' was not found")
 
                     if(getTargetType(kotlin, sourceSet) == TargetType.ANDROID)
-                        configureAndroid(project, extension, androidExtension, idl, module, sourceSet, srcGenModuleDir, cmakeModuleDir, false)
+                        configureAndroid(project, extension, androidExtension, module, sourceSet, srcGenModuleDir, cmakeModuleDir, false)
                 }
             }
         }
@@ -92,7 +85,6 @@ fun NativeKtPlugin.initAndroid(
 }
 
 private fun NativeKtPlugin.configureSinglePlatform(
-    idl: IdlResolver,
     cmakeRootDir: File,
     srcGenDir: File,
     module: SinglePlatform
@@ -102,11 +94,10 @@ private fun NativeKtPlugin.configureSinglePlatform(
     val sourceSet = kotlin.sourceSets.findByName(module.targetSourceSet)
         ?: throw Exception("Source set '${module.targetSourceSet}' was not found")
 
-    configureKotlinSourceSet(kotlin, idl, cmakeRootDir, srcGenDir, module, sourceSet, false)
+    configureKotlinSourceSet(kotlin, cmakeRootDir, srcGenDir, module, sourceSet, false)
 }
 
 private fun NativeKtPlugin.configureMultiplatform(
-    idl: IdlResolver,
     cmakeRootDir: File,
     srcGenDir: File,
     module: Multiplatform
@@ -117,8 +108,8 @@ private fun NativeKtPlugin.configureMultiplatform(
     val stubSourceSets = module.getActiveStubs(kotlin)
 
     configureCommon(
+        project = project,
         configuration = extension,
-        idl = idl,
         module = module,
         sourceSet = kotlin.sourceSets.findByName(module.commonSourceSet)
             ?: throw Exception("Source set '${module.commonSourceSet}' was not found"),
@@ -126,27 +117,26 @@ private fun NativeKtPlugin.configureMultiplatform(
     )
 
     targetSourceSets.forEach {
-        configureKotlinSourceSet(kotlin, idl, cmakeRootDir, srcGenDir, module, it, true)
+        configureKotlinSourceSet(kotlin, cmakeRootDir, srcGenDir, module, it, true)
     }
 
     stubSourceSets.forEach {
-        configureStub(extension, idl, module, it, srcGenDir)
+        configureStub(project, extension, module, it, srcGenDir)
     }
 }
 
 private fun NativeKtPlugin.configureKotlinSourceSet(
     kotlin: KotlinMultiplatformExtension,
-    idl: IdlResolver,
     cmakeRootDir: File,
     srcGenDir: File,
     module: NativeModule,
     sourceSet: KotlinSourceSet,
     expectActual: Boolean
 ) = when(val targetType = getTargetType(kotlin, sourceSet)) {
-    TargetType.JVM -> configureJvm(project, extension, idl, module, sourceSet, srcGenDir, cmakeRootDir, expectActual)
-    TargetType.JS -> configureJs(project, extension, idl, module, sourceSet, srcGenDir, cmakeRootDir, expectActual)
+    TargetType.JVM -> configureJvm(project, extension, module, sourceSet, srcGenDir, cmakeRootDir, expectActual)
+    TargetType.JS -> configureJs(project, extension, module, sourceSet, srcGenDir, cmakeRootDir, expectActual)
     TargetType.WASM -> { }
-    else -> configureNative(project, extension, idl, module, sourceSet, targetType, srcGenDir, cmakeRootDir, expectActual)
+    else -> configureNative(project, extension, module, sourceSet, targetType, srcGenDir, cmakeRootDir, expectActual)
 }
 
 private fun Multiplatform.getActiveSourceSets(kotlin: KotlinMultiplatformExtension): Set<KotlinSourceSet> {
@@ -0,0 +1,84 @@
+package com.huskerdev.nativekt.plugin
+
+import com.huskerdev.nativekt.printers.HeaderPrinter
+import com.huskerdev.nativekt.utils.idlFile
+import com.huskerdev.nativekt.utils.parseIdl
+import com.huskerdev.webidl.resolver.IdlResolver
+import org.gradle.api.DefaultTask
+import org.gradle.api.Project
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskAction
+import org.gradle.api.tasks.TaskProvider
+
+/**
+ * Generates bindings from `api.ndl`.
+ *
+ * IDL is parsed only when the task is executed, so configuration of the project
+ * doesn't depend on the API, and sources are rewritten only when IDL or settings are changed.
+ */
+abstract class GenerateTask: DefaultTask() {
+
+    @get:InputFile
+    @get:PathSensitive(PathSensitivity.NONE)
+    abstract val idlFile: RegularFileProperty
+
+    @get:Input
+    abstract val moduleName: Property<String>
+
+    @get:Input
+    abstract val classPath: Property<String>
+
+    init {
+        group = "native"
+    }
+
+    @TaskAction
+    fun generate() =
+        generate(parseIdl(idlFile.get().asFile))
+
+    protected abstract fun generate(idl: IdlResolver)
+}
+
+/**
+ * Generates `include/api.h` in the native project
+ */
+@CacheableTask
+abstract class GenerateHeaderTask: GenerateTask() {
+
+    @get:OutputFile
+    abstract val headerFile: RegularFileProperty
+
+    override fun generate(idl: IdlResolver) {
+        HeaderPrinter(
+            idl = idl,
+            target = headerFile.get().asFile,
+            guardName = moduleName.get().uppercase()
+        )
+    }
+}
+
+internal inline fun <reified T: GenerateTask> Project.registerGenerateTask(
+    name: String,
+    module: NativeModule,
+    crossinline configure: T.() -> Unit
+): TaskProvider<T> {
+    val task = tasks.register(name, T::class.java) {
+        idlFile.set(module.idlFile(project))
+        moduleName.set(module.name)
+        classPath.set(module.classPath)
+        configure()
+    }
+
+    // Sources should exist before IDE sync
+    tasks.matching { it.name == "prepareKotlinIdeaImport" }.configureEach {
+        dependsOn(task)
+    }
+    return task
+}
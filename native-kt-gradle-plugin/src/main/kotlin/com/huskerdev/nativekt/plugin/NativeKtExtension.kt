@@ -28,6 +28,54 @@ open class NativeKtExtension @Inject constructor(
 
     var useUniversalMacOSLib = false
 
+    /**
+     * Looks up native functions of Foreign API and JVMCI on the first call, instead of library loading.
+     * Speeds up loading of libraries with large API, as unused functions are never resolved.
+     *
+     * Default value: `false`
+     */
+    var useLazyBinding = false
+
+    /**
+     * Additional x86-64 micro-architecture levels of JVM library (`x86-64-v2`, `x86-64-v3`, `x86-64-v4`).
+     * They are packed with the baseline library, and the best one, that is supported by CPU, is loaded at runtime.
+     *
+     * Default value: empty
+     */
+    val jvmX64Levels = arrayListOf<String>()
+
+    /**
+     * Opt-in mode, that keeps native threads attached to JVM after JNI callback, until the thread exits.
+     * Threads are attached as daemons, so they don't block JVM shutdown.
+     *
+     * By default, thread is attached only for the duration of a callback.
+     *
+     * Default value: `false`
+     */
+    var keepJniThreadsAttached = false
+
+    /**
+     * Count of platform threads in JVM, that execute `[Blocking]` functions of a module.
+     * Can be changed at runtime with `-Dnativekt.jvm.blockingThreads.[name]=N`.
+     *
+     * Default value: `0` (count of available processors)
+     */
+    var blockingThreads = 0
+
+    /**
+     * Uses Ninja generator for CMake builds, if `ninja` is found in PATH.
+     *
+     * Default value: `true`
+     */
+    var useNinja = true
+
+    /**
+     * Count of parallel jobs in a single CMake build.
+     *
+     * Default value: count of available processors
+     */
+    var cmakeParallelJobs = Runtime.getRuntime().availableProcessors()
+
     var ndkVersion: String? = null
     val androidTargets = arrayListOf("arm64-v8a", "armeabi-v7a", "x86_64")
 }
@@ -52,6 +100,30 @@ sealed class NativeModule @Inject constructor(
      */
     var buildType: CMakeBuildType = CMakeBuildType.RELEASE
 
+    /**
+     * Link-time optimization of native project together with generated bindings,
+     * so bindings can inline called functions.
+     * Applies only to JVM and Android, Kotlin/Native and JS builds ignore it.
+     *
+     * Default value: `false`
+     */
+    var lto: Boolean = false
+
+    /**
+     * Profile-guided optimization of JVM library. Other targets are built without profiles.
+     * Can be overridden for all modules with `-Pnativekt.pgo=[none|generate|use]`.
+     *
+     * Default value: `NONE`
+     */
+    var pgo: PgoMode = PgoMode.NONE
+
+    /**
+     * Task, that collects PGO profile with instrumented library (e.g. `jvmTest` or `jvmBenchmark`).
+     *
+     * Default value: `jvmTest`
+     */
+    var pgoTrainingTask: String = "jvmTest"
+
     /**
      * Classpath where bindings will be generated.
      *
@@ -129,4 +201,21 @@ enum class CMakeBuildType(
     REL_WITH_DEB_INFO("RelWithDebInfo"),
     RELEASE("Release"),
     MIN_SIZE_REL("MinSizeRel")
+}
+
+enum class PgoMode {
+    /**
+     * Profile is not used
+     */
+    NONE,
+
+    /**
+     * Library is instrumented, and writes raw profiles during the training task
+     */
+    GENERATE,
+
+    /**
+     * Library is optimized with `default.profdata` from the module directory
+     */
+    USE
 }
\ No newline at end of file
@@ -1,10 +1,19 @@
 package com.huskerdev.nativekt.printers
 
+import com.huskerdev.nativekt.utils.asyncCompletion
 import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.isAsync
+import com.huskerdev.nativekt.utils.isPointer
+import com.huskerdev.nativekt.utils.isString
+import com.huskerdev.nativekt.utils.isView
+import com.huskerdev.nativekt.utils.layout
+import com.huskerdev.nativekt.utils.structs
 import com.huskerdev.nativekt.utils.toCType
 import com.huskerdev.webidl.resolver.IdlResolver
 import com.huskerdev.webidl.resolver.ResolvedIdlCallbackFunction
+import com.huskerdev.webidl.resolver.ResolvedIdlDictionary
 import com.huskerdev.webidl.resolver.ResolvedIdlOperation
+import com.huskerdev.webidl.resolver.ResolvedIdlType
 import java.io.File
 
 class HeaderPrinter(
@@ -47,6 +56,18 @@ class HeaderPrinter(
             
         """.trimIndent())
 
+        if(idl.structs().isNotEmpty()) {
+            builder.append("""
+                
+                /* =================== *\
+                         Structs
+                \* =================== */
+                
+            """.trimIndent())
+            val printed = hashSetOf<String>()
+            idl.structs().forEach { printStruct(builder, it, printed) }
+        }
+
         if(idl.callbacks.isNotEmpty()) {
             builder.append("""
                 
@@ -58,6 +79,10 @@ class HeaderPrinter(
                 #define FREE_CALLBACK(callback) callback->free(callback)
                 #endif // FREE_CALLBACK
                 
+                #ifndef COMPLETE
+                #define COMPLETE(completion, ...) do { INVOKE(completion, ##__VA_ARGS__); FREE_CALLBACK(completion); } while(0)
+                #endif // COMPLETE
+                
             """.trimIndent())
             idl.callbacks.values.forEach { printCallbackTypedef(builder, it) }
             builder.append("""
@@ -96,6 +121,10 @@ class HeaderPrinter(
     }
 
     private fun printFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        // Validates the completion
+        if(function.isAsync())
+            function.asyncCompletion()
+
         append("\n")
         append(function.type.toCType(constChar = constChar))
         append(" ")
@@ -103,12 +132,45 @@ class HeaderPrinter(
         append("(")
 
         function.args.joinTo(builder) {
-            "${it.type.toCType(constChar = constChar)} ${it.name}"
+            if(it.isView()) {
+                if(!it.type.isString())
+                    throw UnsupportedOperationException("[View] is supported only by strings (${function.name}: ${it.name})")
+                "${it.type.toCType(constChar = constChar)} ${it.name}, int32_t ${it.name}_length"
+            } else "${it.type.toCType(constChar = constChar, array = it.isPointer())} ${it.name}"
         }
 
         append(");")
     }
 
+    private fun printStruct(builder: StringBuilder, struct: ResolvedIdlDictionary, printed: MutableSet<String>): Unit = builder.run {
+        if(!printed.add(struct.name))
+            return
+
+        // Nested structs should be declared before
+        struct.members.forEach {
+            val decl = (it.type as? ResolvedIdlType.Default)?.declaration
+            if(decl is ResolvedIdlDictionary)
+                printStruct(builder, decl, printed)
+        }
+
+        append("\ntypedef struct ")
+        append(struct.name)
+        append(" {\n")
+        struct.layout().fields.forEach {
+            append("\t")
+            append(it.type.toCType())
+            append(" ")
+            append(it.name)
+            // Keeps the same layout on 32-bit targets
+            if(it.alignment == 8)
+                append(" __attribute__((aligned(8)))")
+            append(";\n")
+        }
+        append("} ")
+        append(struct.name)
+        append(";\n")
+    }
+
     private fun printCallbackTypedef(builder: StringBuilder, callback: ResolvedIdlCallbackFunction) = builder.apply {
         append("\ntypedef struct ")
         append(callback.name)
@@ -1,9 +1,18 @@
 package com.huskerdev.nativekt.printers
 
 import com.huskerdev.nativekt.printers.jvm.KotlinJvmJniPrinter
+import com.huskerdev.nativekt.printers.jvm.jniCall
 import com.huskerdev.nativekt.utils.asyncFunctionName
+import com.huskerdev.nativekt.utils.asyncOperators
+import com.huskerdev.nativekt.utils.batchArrays
+import com.huskerdev.nativekt.utils.batchName
+import com.huskerdev.nativekt.utils.batchOperators
+import com.huskerdev.nativekt.utils.batchRequire
 import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.printBatchHeader
+import com.huskerdev.nativekt.utils.printCallbackTypealias
 import com.huskerdev.nativekt.utils.printFunctionHeader
+import com.huskerdev.nativekt.utils.printSuspendFunction
 import com.huskerdev.nativekt.utils.syncFunctionName
 import com.huskerdev.webidl.resolver.IdlResolver
 import com.huskerdev.webidl.resolver.ResolvedIdlOperation
@@ -53,7 +62,15 @@ class KotlinAndroidPrinter(
             """.trimIndent())
         }
 
+        if(!expectActual) {
+            KotlinStructPrinter(idl, builder)
+            idl.callbacks.values.forEach { printCallbackTypealias(builder, it) }
+        }
+
         idl.globalOperators().forEach { printFunction(builder, it) }
+        idl.batchOperators().forEach { printBatchFunction(builder, it) }
+        if(!expectActual && useCoroutines)
+            idl.asyncOperators().forEach { printSuspendFunction(builder, it) }
 
         builder.append("\n\n")
         KotlinJvmJniPrinter(idl, builder, parentClass = null, instanceMethods = false)
@@ -65,10 +82,18 @@ class KotlinAndroidPrinter(
     private fun printFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
         append('\n')
         printFunctionHeader(builder, function, isActual = expectActual)
-        append(" = \n\tJNI.")
-        append(function.name)
-        append("(")
-        function.args.joinTo(this) { it.name }
-        append(")\n")
+        append(" = \n\t")
+        append(jniCall(function, "JNI.${function.name}"))
+        append("\n")
+    }
+
+    private fun printBatchFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append('\n')
+        printBatchHeader(builder, function, isActual = expectActual)
+        append(" {\n\t")
+        append(batchRequire(function))
+        append("\n\tJNI.")
+        append(batchName(function))
+        function.batchArrays().joinTo(this, prefix = "(", postfix = ", count)\n}\n") { it.name }
     }
 }
\ No newline at end of file
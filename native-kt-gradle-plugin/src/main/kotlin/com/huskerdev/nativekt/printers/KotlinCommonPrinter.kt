@@ -1,12 +1,15 @@
 package com.huskerdev.nativekt.printers
 
 import com.huskerdev.nativekt.utils.asyncFunctionName
+import com.huskerdev.nativekt.utils.asyncOperators
+import com.huskerdev.nativekt.utils.batchOperators
 import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.printBatchHeader
+import com.huskerdev.nativekt.utils.printCallbackTypealias
 import com.huskerdev.nativekt.utils.printFunctionHeader
+import com.huskerdev.nativekt.utils.printSuspendFunction
 import com.huskerdev.nativekt.utils.syncFunctionName
-import com.huskerdev.nativekt.utils.toKotlinType
 import com.huskerdev.webidl.resolver.IdlResolver
-import com.huskerdev.webidl.resolver.ResolvedIdlCallbackFunction
 import java.io.File
 
 class KotlinCommonPrinter(
@@ -93,9 +96,11 @@ class KotlinCommonPrinter(
                 
             """.trimIndent())
 
-            idl.callbacks.values.forEach { printCallback(builder, it) }
+            idl.callbacks.values.forEach { printCallbackTypealias(builder, it) }
         }
 
+        KotlinStructPrinter(idl, builder)
+
         builder.append("""
             
             /* ================== *\
@@ -108,23 +113,14 @@ class KotlinCommonPrinter(
             builder.append("\n")
             printFunctionHeader(builder, it, isExpect = true)
         }
+        idl.batchOperators().forEach {
+            builder.append("\n\n/**\n * Invokes `${it.name}` for the first [count] elements of arrays in a single native call\n */\n")
+            printBatchHeader(builder, it, isExpect = true)
+        }
+        if(useCoroutines)
+            idl.asyncOperators().forEach { printSuspendFunction(builder, it) }
 
         target.parentFile.mkdirs()
         target.writeText(builder.toString())
     }
-
-    private fun printCallback(builder: StringBuilder, callbackFunction: ResolvedIdlCallbackFunction) = builder.apply {
-        // typealias TestCallback = (status: Int) -> Unit
-
-        append("\ntypealias ")
-        append(callbackFunction.name)
-        append(" = (")
-
-        callbackFunction.args.joinTo(builder) {
-            "${it.name}: ${it.type.toKotlinType()}"
-        }
-        append(") -> ")
-        append(callbackFunction.type.toKotlinType())
-        append("\n")
-    }
 }
\ No newline at end of file
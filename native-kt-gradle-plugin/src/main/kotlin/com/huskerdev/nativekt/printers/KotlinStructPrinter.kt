@@ -0,0 +1,115 @@
+package com.huskerdev.nativekt.printers
+
+import com.huskerdev.nativekt.utils.NATIVE_BUFFER
+import com.huskerdev.nativekt.utils.StructField
+import com.huskerdev.nativekt.utils.StructLayout
+import com.huskerdev.nativekt.utils.builtinKind
+import com.huskerdev.nativekt.utils.isStruct
+import com.huskerdev.nativekt.utils.layout
+import com.huskerdev.nativekt.utils.structName
+import com.huskerdev.nativekt.utils.structs
+import com.huskerdev.webidl.resolver.IdlResolver
+import com.huskerdev.webidl.resolver.WebIDLBuiltinKind
+
+/**
+ * Prints Kotlin views of C structs.
+ *
+ * Struct is a flyweight over [NATIVE_BUFFER] with offset,
+ * so batches of structs can be read from a single buffer without copying.
+ */
+class KotlinStructPrinter(
+    idl: IdlResolver,
+    builder: StringBuilder
+) {
+    init {
+        if(idl.structs().isNotEmpty()) {
+            builder.append("""
+
+                /* ================== *\
+                         Structs
+                \* ================== */
+
+            """.trimIndent())
+
+            idl.structs().forEach { printStruct(builder, it.layout()) }
+        }
+    }
+
+    private fun printStruct(builder: StringBuilder, struct: StructLayout) = builder.apply {
+        append($$"""
+
+            /**
+             * View of the C struct `$${struct.name}` in native memory.
+             *
+             * Fields are read and written directly in [buffer].
+             */
+            class $${struct.name}(
+                val buffer: $$NATIVE_BUFFER,
+                val offset: Int = 0
+            ): AutoCloseable {
+                companion object {
+                    const val SIZE = $${struct.size}
+                }
+
+                /**
+                 * Allocates a new buffer for a single struct
+                 */
+                constructor(): this($$NATIVE_BUFFER(SIZE))
+
+        """.trimIndent())
+
+        struct.fields.forEach { printField(builder, it) }
+
+        append("""
+
+                /**
+                 * Releases [buffer]
+                 */
+                override fun close() = buffer.close()
+            }
+
+        """.trimIndent())
+    }
+
+    private fun printField(builder: StringBuilder, field: StructField) = builder.apply {
+        val at = "offset + ${field.offset}"
+
+        if(field.type.isStruct()) {
+            append("\n\tval ${field.name}: ${field.type.structName()}\n")
+            append("\t\tget() = ${field.type.structName()}(buffer, $at)\n")
+            return@apply
+        }
+
+        val (type, getter, setter) = when(field.type.builtinKind()) {
+            WebIDLBuiltinKind.BOOLEAN -> Triple("Boolean",
+                "buffer[$at] != 0.toByte()",
+                "buffer[$at] = if(value) 1.toByte() else 0.toByte()")
+            WebIDLBuiltinKind.BYTE,
+            WebIDLBuiltinKind.UNSIGNED_BYTE -> Triple("Byte",
+                "buffer[$at]",
+                "buffer[$at] = value")
+            WebIDLBuiltinKind.CHAR -> Triple("Char",
+                "buffer.getShort($at).toInt().toChar()",
+                "buffer.setShort($at, value.code.toShort())")
+            WebIDLBuiltinKind.SHORT,
+            WebIDLBuiltinKind.UNSIGNED_SHORT -> accessors("Short", at)
+            WebIDLBuiltinKind.INT,
+            WebIDLBuiltinKind.UNSIGNED_INT -> accessors("Int", at)
+            WebIDLBuiltinKind.LONG,
+            WebIDLBuiltinKind.UNSIGNED_LONG -> accessors("Long", at)
+            WebIDLBuiltinKind.FLOAT,
+            WebIDLBuiltinKind.UNRESTRICTED_FLOAT -> accessors("Float", at)
+            WebIDLBuiltinKind.DOUBLE,
+            WebIDLBuiltinKind.UNRESTRICTED_DOUBLE -> accessors("Double", at)
+            else -> throw UnsupportedOperationException(field.type.toString())
+        }
+
+        append("\n\tvar ${field.name}: $type\n")
+        append("\t\tget() = $getter\n")
+        append("\t\tset(value) { $setter }\n")
+    }
+
+    private fun accessors(type: String, at: String) = Triple(type,
+        "buffer.get$type($at)",
+        "buffer.set$type($at, value)")
+}
@@ -1,7 +1,9 @@
 package com.huskerdev.nativekt.printers
 
 import com.huskerdev.nativekt.utils.asyncFunctionName
+import com.huskerdev.nativekt.utils.batchOperators
 import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.printBatchHeader
 import com.huskerdev.nativekt.utils.printFunctionHeader
 import com.huskerdev.nativekt.utils.syncFunctionName
 import com.huskerdev.webidl.resolver.IdlResolver
@@ -31,7 +33,12 @@ class KotlinStubPrinter(
 
         idl.globalOperators().forEach {
             builder.append("\n")
-            printFunctionHeader(builder, it)
+            printFunctionHeader(builder, it, isActual = true)
+            builder.append("{\n\t// TODO\n}\n")
+        }
+        idl.batchOperators().forEach {
+            builder.append("\n")
+            printBatchHeader(builder, it, isActual = true)
             builder.append("{\n\t// TODO\n}\n")
         }
 
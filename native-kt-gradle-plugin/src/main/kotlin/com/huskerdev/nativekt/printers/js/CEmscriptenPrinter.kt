@@ -1,6 +1,13 @@
 package com.huskerdev.nativekt.printers.js
 
+import com.huskerdev.nativekt.utils.batchArrays
+import com.huskerdev.nativekt.utils.batchLoop
+import com.huskerdev.nativekt.utils.batchName
+import com.huskerdev.nativekt.utils.batchOperators
 import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.isPointer
+import com.huskerdev.nativekt.utils.isStruct
+import com.huskerdev.nativekt.utils.isView
 import com.huskerdev.nativekt.utils.toCType
 import com.huskerdev.webidl.resolver.*
 import java.io.File
@@ -14,6 +21,7 @@ class CEmscriptenPrinter(
         builder.append("""
             #include "api.h"
             #include <stdlib.h>
+            #include <string.h>
             
             int64_t* __emWrapLong(int64_t value) {
                 int64_t* ptr = (int64_t*)malloc(sizeof(int64_t));
@@ -30,30 +38,54 @@ class CEmscriptenPrinter(
         """.trimIndent())
 
         idl.globalOperators().forEach { printFunction(builder, it) }
+        idl.batchOperators().forEach { printBatchFunction(builder, it) }
 
         target.writeText(builder.toString())
     }
 
     private fun printFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        // Structs are passed by pointer, and returned through '__result'
+        val returnsStruct = function.type.isStruct()
+
         append("\n")
-        append(function.type.toCType(longPtr = true))
+        append(if(returnsStruct) "void" else function.type.toCType(longPtr = true))
         append(" _")
         append(function.name)
         append("(")
-        function.args.joinTo(this) {
-            "${it.type.toCType(longPtr = true)} ${it.name}"
+        val args = function.args.map {
+            "${it.type.toCType(longPtr = true, array = it.isPointer() || it.type.isStruct())} ${it.name}"
         }
+        if(returnsStruct)
+            (args + "${function.type.toCType()}* __result").joinTo(this)
+        else args.joinTo(this)
         append(") {\n\t")
 
-        if(function.type !is ResolvedIdlType.Void)
+        if(returnsStruct)
+            append("*__result = ")
+        else if(function.type !is ResolvedIdlType.Void)
             append("return ")
 
         // == Function call ==
-        val call = "${function.name}(${function.args.joinToString { castToNative(it.type, it.name) }})"
-        append(castToJS(function.type, call))
+        val call = "${function.name}(${function.args.joinToString {
+            if(it.isPointer()) it.name
+            else if(it.isView()) "${it.name}, (int32_t)strlen(${it.name})"
+            else if(it.type.isStruct()) "*${it.name}"
+            else castToNative(it.type, it.name)
+        }})"
+        append(if(returnsStruct) call else castToJS(function.type, call))
         append(";\n}\n")
     }
 
+    private fun printBatchFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append("\nvoid _")
+        append(batchName(function))
+        append("(")
+        function.batchArrays().joinTo(this, postfix = ", ") { "${it.type.toCType(array = true)} ${it.name}" }
+        append("int32_t count) {\n\t")
+        append(batchLoop(function))
+        append("\n}\n")
+    }
+
     private fun castToNative(type: ResolvedIdlType, content: String): String = when(type) {
         is ResolvedIdlType.Void -> content
         is ResolvedIdlType.Default -> when(val decl = type.declaration) {
@@ -1,15 +1,29 @@
 package com.huskerdev.nativekt.printers.js
 
+import com.huskerdev.nativekt.printers.KotlinStructPrinter
 import com.huskerdev.nativekt.utils.asyncFunctionName
+import com.huskerdev.nativekt.utils.asyncOperators
+import com.huskerdev.nativekt.utils.batchArrays
+import com.huskerdev.nativekt.utils.batchName
+import com.huskerdev.nativekt.utils.batchOperators
+import com.huskerdev.nativekt.utils.batchRequire
 import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.isArray
+import com.huskerdev.nativekt.utils.isBuffer
+import com.huskerdev.nativekt.utils.isStruct
 import com.huskerdev.nativekt.utils.isDealloc
 import com.huskerdev.nativekt.utils.isString
+import com.huskerdev.nativekt.utils.printBatchHeader
+import com.huskerdev.nativekt.utils.printCallbackTypealias
 import com.huskerdev.nativekt.utils.printFunctionHeader
+import com.huskerdev.nativekt.utils.printSuspendFunction
+import com.huskerdev.nativekt.utils.structName
 import com.huskerdev.nativekt.utils.syncFunctionName
 import com.huskerdev.nativekt.utils.toEmscriptenDesc
 import com.huskerdev.webidl.resolver.BuiltinIdlDeclaration
 import com.huskerdev.webidl.resolver.IdlResolver
 import com.huskerdev.webidl.resolver.ResolvedIdlCallbackFunction
+import com.huskerdev.webidl.resolver.ResolvedIdlDictionary
 import com.huskerdev.webidl.resolver.ResolvedIdlOperation
 import com.huskerdev.webidl.resolver.ResolvedIdlType
 import com.huskerdev.webidl.resolver.WebIDLBuiltinKind
@@ -108,7 +122,15 @@ class KotlinJsPrinter(
             idl.callbacks.values.forEach { callback -> printCallbackWrap(builder, callback) }
         }
 
+        if(!expectActual) {
+            KotlinStructPrinter(idl, builder)
+            idl.callbacks.values.forEach { printCallbackTypealias(builder, it) }
+        }
+
         idl.globalOperators().forEach { printFunction(builder, it) }
+        idl.batchOperators().forEach { printBatchFunction(builder, it) }
+        if(!expectActual && useCoroutines)
+            idl.asyncOperators().forEach { printSuspendFunction(builder, it) }
 
         target.parentFile.mkdirs()
         target.writeText(builder.toString())
@@ -154,17 +176,24 @@ class KotlinJsPrinter(
         printFunctionHeader(builder, function, isActual = expectActual, forcePrintVoid = true)
         append(" = ")
 
-        val useArena = function.args.any { it.type.isString() || it.isDealloc() }
+        val useArena = function.args.any { it.type.isString() || it.isDealloc() || it.isArray() }
 
         if(useArena)
             append("EmArena.use(_module) { arena ->")
         append("\n\t")
 
-        val args = function.args.joinToString {
-            castToNative(it.type, it.name, it.isDealloc(), useArena)
+        val args = function.args.map {
+            if(it.isArray()) "arena.allocArray(${it.name})"
+            else if(it.isBuffer()) "${it.name}.pointer(_module)"
+            else castToNative(it.type, it.name, it.isDealloc(), useArena)
         }
         val func = "_module.__${function.name}"
-        append(castToJS(function.type, "$func($args)", function.isDealloc(), useArena))
+
+        // Returned struct is written to the last argument
+        if(function.type.isStruct())
+            append("${function.type.structName()}().also { $func(${(args + structPointer("it")).joinToString()}) }")
+        else
+            append(castToJS(function.type, "$func(${args.joinToString()})", function.isDealloc(), useArena))
 
         if(useArena)
             append("\n}")
@@ -172,6 +201,18 @@ class KotlinJsPrinter(
         append("\n")
     }
 
+    private fun printBatchFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append('\n')
+        printBatchHeader(builder, function, isActual = expectActual)
+        append(" {\n\t")
+        append(batchRequire(function))
+        append("\n\tEmArena.use(_module) { arena ->\n\t\t")
+
+        val args = function.batchArrays().map { "arena.allocArray(${it.name})" } + "count"
+        append("_module.__${batchName(function)}(${args.joinToString()})")
+        append("\n\t}\n}\n")
+    }
+
     private fun castToNative(type: ResolvedIdlType, content: String, dealloc: Boolean, useArena: Boolean): String = when(type) {
         is ResolvedIdlType.Void -> content
         is ResolvedIdlType.Default -> when(val decl = type.declaration) {
@@ -186,6 +227,7 @@ class KotlinJsPrinter(
             is ResolvedIdlCallbackFunction ->
                 if(dealloc) "arena.callback($content.wrap${decl.name}())"
                 else "$content.wrap${decl.name}()"
+            is ResolvedIdlDictionary -> structPointer(content)
             else -> throw UnsupportedOperationException(type.toString())
         }
         is ResolvedIdlType.Union -> throw UnsupportedOperationException(type.toString())
@@ -210,4 +252,7 @@ class KotlinJsPrinter(
         }
         else -> throw UnsupportedOperationException(type.toString())
     }
-}
\ No newline at end of file
+
+    private fun structPointer(name: String) =
+        "($name.buffer.pointer(_module) + $name.offset)"
+}
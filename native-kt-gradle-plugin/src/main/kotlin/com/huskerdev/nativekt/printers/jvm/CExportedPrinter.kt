@@ -1,6 +1,13 @@
 package com.huskerdev.nativekt.printers.jvm
 
+import com.huskerdev.nativekt.utils.batchArrays
+import com.huskerdev.nativekt.utils.batchLoop
+import com.huskerdev.nativekt.utils.batchName
+import com.huskerdev.nativekt.utils.batchOperators
 import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.isPointer
+import com.huskerdev.nativekt.utils.isStruct
+import com.huskerdev.nativekt.utils.isView
 import com.huskerdev.nativekt.utils.toCType
 import com.huskerdev.webidl.resolver.IdlResolver
 import com.huskerdev.webidl.resolver.ResolvedIdlOperation
@@ -21,33 +28,63 @@ class CExportedPrinter(
         """.trimIndent())
 
         idl.globalOperators().forEach { printFunction(builder, it) }
+        idl.batchOperators().forEach { printBatchFunction(builder, it) }
 
         target.writeText(builder.toString())
     }
 
     private fun printFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        // Structs are passed by pointer, and returned through '__result'
+        val returnsStruct = function.type.isStruct()
+
         append("\nJNIEXPORT ")
-        append(function.type.toCType())
+        append(if(returnsStruct) "void" else function.type.toCType())
         append(" EXPORTED_")
         append(classPath.replace(".", "_"))
         append("_")
         append(function.name)
         append("(")
-        function.args.joinTo(this) {
-            "${it.type.toCType()} __arg_${it.name}"
+
+        // Views have length argument, all bindings pass the length of the converted string
+        val args = function.args.map {
+            if(it.isView()) "${it.type.toCType()} __arg_${it.name}, int32_t __arg_${it.name}_length"
+            else "${it.type.toCType(array = it.isPointer() || it.type.isStruct())} __arg_${it.name}"
         }
+        if(returnsStruct)
+            (args + "${function.type.toCType()}* __result").joinTo(this)
+        else args.joinTo(this)
         append(") {\n")
 
         // == Function call ==
         append("\t")
-        if(function.type !is ResolvedIdlType.Void)
+        if(returnsStruct)
+            append("*__result = ")
+        else if(function.type !is ResolvedIdlType.Void)
             append("return ")
 
         append(function.name)
         append("(")
-        function.args.joinTo(builder) { "__arg_${it.name}" }
+        function.args.joinTo(builder) {
+            if(it.isView()) "__arg_${it.name}, __arg_${it.name}_length"
+            else if(it.type.isStruct() && !it.isPointer()) "*__arg_${it.name}"
+            else "__arg_${it.name}"
+        }
         append(");\n}\n")
     }
 
+    private fun printBatchFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append("\nJNIEXPORT void EXPORTED_")
+        append(classPath.replace(".", "_"))
+        append("_")
+        append(batchName(function))
+        append("(")
+        function.batchArrays().joinTo(this, postfix = ", ") {
+            "${it.type.toCType(array = true)} __arg_${it.name}"
+        }
+        append("int32_t __count) {\n\t")
+        append(batchLoop(function, arrayName = { "__arg_$it" }, count = "__count"))
+        append("\n}\n")
+    }
+
 
 }
\ No newline at end of file
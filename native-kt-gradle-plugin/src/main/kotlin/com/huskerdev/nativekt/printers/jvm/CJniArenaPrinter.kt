@@ -91,6 +91,45 @@ class CJniArenaPrinter(
                 );
             }
             
+            // Arrays
+            
+            #define ARENA_ARRAY(jtype, Name) \
+                void ArenaNode__free##Name##Array(Arena* arena, ArenaNode* node){ \
+                    JNIEnv *env = arena->env; \
+                    (*env)->Release##Name##ArrayElements(env, node->obj, (jtype*)node->ptr, 0); \
+                } \
+                jtype* Arena__unwrap##Name##Array(Arena* arena, jobject array) { \
+                    JNIEnv *env = arena->env; \
+                    return (jtype*) Arena__push(arena, \
+                        array, \
+                        (void*)(*env)->Get##Name##ArrayElements(env, array, NULL), \
+                        ArenaNode__free##Name##Array \
+                    ); \
+                }
+            
+            ARENA_ARRAY(jbyte, Byte)
+            ARENA_ARRAY(jshort, Short)
+            ARENA_ARRAY(jint, Int)
+            ARENA_ARRAY(jlong, Long)
+            ARENA_ARRAY(jfloat, Float)
+            ARENA_ARRAY(jdouble, Double)
+            
+            // Array critical
+            
+            void ArenaNode__freeArrayCritical(Arena* arena, ArenaNode* node){
+                JNIEnv *env = arena->env;
+                (*env)->ReleasePrimitiveArrayCritical(env, node->obj, node->ptr, 0);
+            }
+            
+            void* Arena__unwrapArrayCritical(Arena* arena, jobject array) {
+                JNIEnv *env = arena->env;
+                return Arena__push(arena,
+                    array,
+                    (*env)->GetPrimitiveArrayCritical(env, array, NULL),
+                    ArenaNode__freeArrayCritical
+                );
+            }
+            
             // new/free
             
             void Arena__free(Arena* arena) {
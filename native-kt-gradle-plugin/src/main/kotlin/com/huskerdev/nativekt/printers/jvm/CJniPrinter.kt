@@ -14,10 +14,12 @@ class CJniPrinter(
         val builder = StringBuilder()
         builder.append("""
             #include "jni_arena.h"
+            #include <string.h>
             
         """.trimIndent())
 
         idl.globalOperators().forEach { printFunction(builder, it) }
+        idl.batchOperators().forEach { printBatchFunction(builder, it) }
 
         printRegisterFunction(builder)
 
@@ -38,13 +40,22 @@ class CJniPrinter(
 
         // {"run", "()V", (void *)&Java_natives_glfwBindings_GlfwBindingsJNI_glfwInit},
         val operators = idl.globalOperators()
+        val batchOperators = idl.batchOperators()
         operators.forEachIndexed { index, function ->
             append("\t\t{\"")
             append(function.name)
             append("\", \"(")
-            function.args.joinTo(builder, "") { it.type.toJavaDesc() }
-            append(")")
-            append(function.type.toJavaDesc())
+            function.args.joinTo(builder, "") {
+                if(it.isBuffer()) "Ljava/nio/ByteBuffer;"
+                else if(it.type.isStruct()) "Ljava/nio/ByteBuffer;I"
+                else it.type.toJavaDesc(it.isArray())
+            }
+            if(function.type.isStruct())
+                append("Ljava/nio/ByteBuffer;I)V")
+            else {
+                append(")")
+                append(function.type.toJavaDesc())
+            }
             append("\", (void*)&Java_")
             append(classPath.replace(".", "_"))
             append("_")
@@ -52,7 +63,23 @@ class CJniPrinter(
             append("_")
             append(function.name)
             append("}")
-            if(index != operators.lastIndex)
+            if(index != operators.lastIndex || batchOperators.isNotEmpty())
+                append(",")
+            append("\n")
+        }
+        batchOperators.forEachIndexed { index, function ->
+            append("\t\t{\"")
+            append(batchName(function))
+            append("\", \"(")
+            function.batchArrays().joinTo(builder, "") { it.type.toJavaDesc(array = true) }
+            append("I)V\", (void*)&Java_")
+            append(classPath.replace(".", "_"))
+            append("_")
+            append(name)
+            append("_")
+            append(batchName(function))
+            append("}")
+            if(index != batchOperators.lastIndex)
                 append(",")
             append("\n")
         }
@@ -62,14 +89,17 @@ class CJniPrinter(
         // Get env
         append("""
             
-                return JNI_Init(vm, methods, ${idl.globalOperators().size});
+                return JNI_Init(vm, methods, ${operators.size + batchOperators.size});
             }
         """.trimIndent())
     }
 
     private fun printFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        // Structs are passed as direct buffer with offset, and returned through '__result'
+        val returnsStruct = function.type.isStruct()
+
         append("\nstatic ")
-        append(function.type.toJNIType())
+        append(if(returnsStruct) "void" else function.type.toJNIType())
         append(" Java_")
         append(classPath.replace(".", "_"))
         append("_")
@@ -78,24 +108,38 @@ class CJniPrinter(
         append(function.name)
         append("(JNIEnv *env, jclass __cls")
 
-        if(function.args.isNotEmpty())
+        if(function.args.isNotEmpty() || returnsStruct)
             append(", ")
 
-        function.args.joinTo(this) {
-            "${it.type.toJNIType()} __arg_${it.name}"
+        val args = function.args.map {
+            if(it.isBuffer()) "jobject __arg_${it.name}"
+            else if(it.type.isStruct()) "jobject __arg_${it.name}, jint __arg_${it.name}_offset"
+            else "${it.type.toJNIType(it.isArray())} __arg_${it.name}"
         }
+        if(returnsStruct)
+            (args + "jobject __result, jint __result_offset").joinTo(this)
+        else args.joinTo(this)
 
         append(") {\n")
 
-        val useArena = function.args.any { it.type.isString() || it.isDealloc() }
+        val useArena = function.args.any { it.type.isString() || it.isDealloc() || it.isArray() }
 
         if(useArena) {
             append("\tArena arena;\n")
             append("\tArena__init(&arena, env);\n")
         }
 
+        // Views are converted before the call, as their length is measured from the result
+        function.args.filter { it.isView() }.forEach {
+            append("\tconst char* __view_${it.name} = ")
+            append(castJavaToJNI(it.type, "__arg_${it.name}", function.isCritical(), it.isDealloc(), useArena))
+            append(";\n")
+        }
+
         append("\t")
-        if(function.type !is ResolvedIdlType.Void) {
+        if(returnsStruct)
+            append("*${structFromBuffer(function.type, "__result")} = ")
+        else if(function.type !is ResolvedIdlType.Void) {
             if(useArena) {
                 append(function.type.toJNIType())
                 append(" __result = ")
@@ -103,20 +147,56 @@ class CJniPrinter(
         }
 
         // == Function call ==
-        val args = function.args.joinToString { castJavaToJNI(it.type, "__arg_${it.name}", function.isCritical(), it.isDealloc(), useArena) }
-        val call = "${function.name}($args)"
-        append(castJniToJava(function.type, call, function.isDealloc(), useArena))
+        val callArgs = function.args.joinToString {
+            if(it.isView())
+                "__view_${it.name}, (int32_t)strlen(__view_${it.name})"
+            else if(it.type.isStruct() && !it.isBuffer())
+                "${if(it.isPointer()) "" else "*"}${structFromBuffer(it.type, "__arg_${it.name}")}"
+            else castJavaToJNI(it.type, "__arg_${it.name}", function.isCritical(), it.isDealloc(), useArena, it.isArray(), it.isBuffer())
+        }
+        val call = "${function.name}($callArgs)"
+        append(if(returnsStruct) call else castJniToJava(function.type, call, function.isDealloc(), useArena))
         append(";\n")
 
         if(useArena) {
             append("\tArena__free(&arena);\n")
-            if(function.type !is ResolvedIdlType.Void)
+            if(function.type !is ResolvedIdlType.Void && !returnsStruct)
                 append("\treturn __result;\n")
         }
 
         append("}\n")
     }
 
+    private fun printBatchFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        val arrays = function.batchArrays()
+
+        append("\nstatic void Java_")
+        append(classPath.replace(".", "_"))
+        append("_")
+        append(name)
+        append("_")
+        append(batchName(function))
+        append("(JNIEnv *env, jclass __cls, ")
+        arrays.joinTo(this, postfix = ", ") { "${it.type.toJNIType(array = true)} __arg_${it.name}" }
+        append("jint __count) {\n")
+        append("\tArena arena;\n")
+        append("\tArena__init(&arena, env);\n")
+
+        arrays.forEach {
+            append("\t${it.type.toCType(array = true)} ${it.name} = ")
+            append(castJavaToJNI(it.type, "__arg_${it.name}", function.isCritical(), dealloc = false, useArena = true, array = true))
+            append(";\n")
+        }
+
+        append("\t")
+        append(batchLoop(function, count = "__count"))
+        append("\n\tArena__free(&arena);\n")
+        append("}\n")
+    }
+
+    private fun structFromBuffer(type: ResolvedIdlType, name: String) =
+        "(${type.toCType()}*)((char*)(*env)->GetDirectBufferAddress(env, $name) + ${name}_offset)"
+
 
 
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import com.huskerdev.nativekt.utils.castJavaToJNI
 import com.huskerdev.nativekt.utils.castJniToJava
 import com.huskerdev.nativekt.utils.isDealloc
 import com.huskerdev.nativekt.utils.toCType
+import com.huskerdev.nativekt.utils.toJNIType
 import com.huskerdev.nativekt.utils.toJavaDesc
 import com.huskerdev.webidl.resolver.BuiltinIdlDeclaration
 import com.huskerdev.webidl.resolver.IdlResolver
@@ -16,7 +17,8 @@ class CJniUtilsPrinter(
     val idl: IdlResolver,
     target: File,
     val classPath: String,
-    val name: String = "JNI"
+    val name: String = "JNI",
+    val keepThreadsAttached: Boolean = false
 ) {
     init {
         val builder = StringBuilder()
@@ -76,17 +78,11 @@ class CJniUtilsPrinter(
                     void *m;
                 } JNI_Callback;
                 
-                static jint JVM_attach(JNIEnv **env) {
-                    jint status = (*jvm)->GetEnv(jvm, (void**)env, JNI_VERSION_1_6);
-                    if (status == JNI_EDETACHED)
-                        (*jvm)->AttachCurrentThread(jvm, (void**)env, NULL);
-                    return status;
-                }
-
-                static inline void JVM_detach(jint status) {
-                    if (status == JNI_EDETACHED)
-                        (*jvm)->DetachCurrentThread(jvm);
-                }
+            """.trimIndent())
+            builder.append("\n\n")
+            printThreadAttachment(builder)
+            builder.append("""
+                
                 
                 void JNI_CALLBACK_free(JNI_Callback* callback) {
                     JNIEnv *env;
@@ -98,6 +94,15 @@ class CJniUtilsPrinter(
                     JVM_detach(status);
                 }
                 
+                // Exception of a callback can't be thrown to native code, so it is printed
+                bool JNI_clearException(JNIEnv *env) {
+                    if(!(*env)->ExceptionCheck(env))
+                        return false;
+                    (*env)->ExceptionDescribe(env);
+                    (*env)->ExceptionClear(env);
+                    return true;
+                }
+                
                 jobject JNI_toJvmCallback(JNIEnv *env, JNI_Callback* callback, bool dealloc) {
                     jobject result = (*env)->NewLocalRef(env, (jobject)callback->m);
                     if(dealloc) JNI_CALLBACK_free(callback);
@@ -123,6 +128,66 @@ class CJniUtilsPrinter(
         target.writeText(builder.toString())
     }
 
+    private fun printThreadAttachment(builder: StringBuilder) = builder.apply {
+        val perCall = """
+            static jint JVM_attach(JNIEnv **env) {
+                jint status = (*jvm)->GetEnv(jvm, (void**)env, JNI_VERSION_1_6);
+                if (status == JNI_EDETACHED)
+                    (*jvm)->AttachCurrentThread(jvm, (void**)env, NULL);
+                return status;
+            }
+            
+            static inline void JVM_detach(jint status) {
+                if (status == JNI_EDETACHED)
+                    (*jvm)->DetachCurrentThread(jvm);
+            }
+        """.trimIndent()
+
+        if(!keepThreadsAttached) {
+            append(perCall)
+            append("\n")
+            return@apply
+        }
+
+        // Native thread is attached on the first callback and detached only when it exits,
+        // so callbacks from native thread pools don't pay for attach/detach on every call.
+        // Threads are attached as daemons to not block JVM shutdown.
+        append("""
+            #ifndef _WIN32
+            #include <pthread.h>
+            
+            static pthread_key_t JVM_threadKey;
+            static pthread_once_t JVM_threadKeyOnce = PTHREAD_ONCE_INIT;
+            
+            static void JVM_threadDestructor(void *value) {
+                (*jvm)->DetachCurrentThread(jvm);
+            }
+            
+            static void JVM_createThreadKey() {
+                pthread_key_create(&JVM_threadKey, JVM_threadDestructor);
+            }
+            
+            static jint JVM_attach(JNIEnv **env) {
+                jint status = (*jvm)->GetEnv(jvm, (void**)env, JNI_VERSION_1_6);
+                if (status == JNI_EDETACHED) {
+                    (*jvm)->AttachCurrentThreadAsDaemon(jvm, (void**)env, NULL);
+                    pthread_once(&JVM_threadKeyOnce, JVM_createThreadKey);
+                    // Destructor is called only for non-NULL values
+                    pthread_setspecific(JVM_threadKey, (void*)1);
+                }
+                return status;
+            }
+            
+            static inline void JVM_detach(jint status) {
+            }
+            
+            #else
+            
+        """.trimIndent())
+        append(perCall)
+        append("\n\n#endif\n")
+    }
+
     private fun printCallbackInvoke(builder: StringBuilder, callback: ResolvedIdlCallbackFunction) = builder.apply {
         val args = listOf("${callback.name}* _callback") +
                 callback.args.map { "${it.type.toCType()} ${it.name}" }
@@ -135,6 +200,7 @@ class CJniUtilsPrinter(
             ${callback.type.toCType()} JNI_CALLBACK_${callback.name}_invoke(${args.joinToString()}) {
                 JNIEnv *env;
                 jint __status = JVM_attach(&env);
+                (*env)->PushLocalFrame(env, ${callback.args.size + 1});
                 
         """.trimIndent())
 
@@ -162,15 +228,24 @@ class CJniUtilsPrinter(
 
         val call = "(*env)->$funcName(env, jniClass, callback${callback.name}, ${jvmArgs.joinToString()})"
 
+        // Result of failed call is not converted, as it may be NULL
+        append("\t")
         if(callback.type !is ResolvedIdlType.Void) {
+            append(callback.type.toJNIType())
+            append(" __value = ")
+            append(call)
+            append(";\n\t")
             append(callback.type.toCType())
-            append(" __result = ")
-            append(castJavaToJNI(callback.type, call, critical = false, dealloc = false, useArena = false))
-        } else
+            append(" __result = JNI_clearException(env) ? 0 : ")
+            append(castJavaToJNI(callback.type, "__value", critical = false, dealloc = false, useArena = false))
+        } else {
             append(call)
-
+            append(";\n\tJNI_clearException(env)")
+        }
         append(";\n")
 
+        // Thread may not return to Java for a long time, so local references are released here
+        append("\t(*env)->PopLocalFrame(env, NULL);\n")
         append("\tJVM_detach(__status);\n")
 
         if(callback.type !is ResolvedIdlType.Void)
@@ -11,6 +11,10 @@ class CJvmciPrinter(
         val fullPath = (classPath.split(".") + name).joinToString("_")
 
         target.writeText("""
+            #ifndef _WIN32
+                #define _GNU_SOURCE
+            #endif
+            
             #include <jni.h>
 
             #ifdef _WIN32
@@ -27,11 +31,56 @@ class CJvmciPrinter(
                 jlong result = (jlong) GetProcAddress(GetModuleHandle(libName), funcName);
                 (*env)->ReleaseStringUTFChars(env, _libName, libName);
             #else
-                jlong result = (jlong) dlsym(RTLD_DEFAULT, funcName);
+                // Library is loaded by JVM with RTLD_LOCAL, so symbols are not visible with RTLD_DEFAULT on Linux
+                Dl_info info;
+                dladdr((void*)&Java_${fullPath}_getFunctionAddress, &info);
+                void* handle = dlopen(info.dli_fname, RTLD_LAZY | RTLD_NOLOAD);
+                jlong result = (jlong) dlsym(handle, funcName);
+                dlclose(handle);
             #endif
                 (*env)->ReleaseStringUTFChars(env, _funcName, funcName);
                 return result;
             }
+            
+            JNIEXPORT jlong JNICALL Java_${fullPath}_getJvmSymbol(JNIEnv *env, jclass cls, jstring _name) {
+                const char* name = (*env)->GetStringUTFChars(env, _name, NULL);
+                // Module of JVM is found by address of any JNI function
+            #ifdef _WIN32
+                HMODULE module;
+                GetModuleHandleEx(GET_MODULE_HANDLE_EX_FLAG_FROM_ADDRESS | GET_MODULE_HANDLE_EX_FLAG_UNCHANGED_REFCOUNT, (LPCSTR)(*env)->GetVersion, &module);
+                jlong result = (jlong) GetProcAddress(module, name);
+            #else
+                Dl_info info;
+                dladdr((void*)(*env)->GetVersion, &info);
+                void* handle = dlopen(info.dli_fname, RTLD_LAZY | RTLD_NOLOAD);
+                jlong result = (jlong) dlsym(handle, name);
+                dlclose(handle);
+            #endif
+                (*env)->ReleaseStringUTFChars(env, _name, name);
+                return result;
+            }
+            
+            static jclass threadClass;
+            static jmethodID onSpinWait;
+            
+            /*
+             * Called by JVMCI stub in native state, when thread can not return to Java (safepoint, suspension),
+             * or its stack guard was disabled by overflow in native code.
+             * Any call of Java method waits for them, like the transition of JNI, and re-guards the stack.
+             */
+            static void nativekt_block(JNIEnv *env) {
+                (*env)->CallStaticVoidMethod(env, threadClass, onSpinWait);
+            }
+            
+            JNIEXPORT jlong JNICALL Java_${fullPath}_getBlockAddress(JNIEnv *env, jclass cls) {
+                if(threadClass == NULL) {
+                    jclass thread = (*env)->FindClass(env, "java/lang/Thread");
+                    onSpinWait = (*env)->GetStaticMethodID(env, thread, "onSpinWait", "()V");
+                    threadClass = (jclass)(*env)->NewGlobalRef(env, thread);
+                    (*env)->DeleteLocalRef(env, thread);
+                }
+                return (jlong) &nativekt_block;
+            }
         """.trimIndent())
     }
 }
\ No newline at end of file
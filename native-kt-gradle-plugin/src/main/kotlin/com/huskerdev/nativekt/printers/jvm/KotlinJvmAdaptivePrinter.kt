@@ -0,0 +1,116 @@
+package com.huskerdev.nativekt.printers.jvm
+
+import com.huskerdev.nativekt.utils.batchArrays
+import com.huskerdev.nativekt.utils.batchName
+import com.huskerdev.nativekt.utils.batchOperators
+import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.printBatchHeader
+import com.huskerdev.nativekt.utils.printFunctionHeader
+import com.huskerdev.webidl.resolver.IdlResolver
+import com.huskerdev.webidl.resolver.ResolvedIdlOperation
+
+/**
+ * Invoker, that calls every function by JNI or Foreign API invoker,
+ * depending on which one is faster for it (see `InvokerSelector` of runtime).
+ */
+class KotlinJvmAdaptivePrinter(
+    idl: IdlResolver,
+    builder: StringBuilder,
+    val classPath: String,
+    name: String,
+    val parentClass: String
+) {
+    init {
+        builder.append($$"""
+            private inline fun <R> InvokerSelector.call(invoker: MethodHandle, block: ($$parentClass) -> R): R {
+                // Call site returns constant after selection
+                val target = invoker.invokeExact() as $$parentClass?
+                if(target != null)
+                    return block(target)
+
+                val index = next()
+                val start = System.nanoTime()
+                val result = block(get(index) as $$parentClass)
+                record(index, System.nanoTime() - start)
+                return result
+            }
+
+            private class $$name(
+                jni: $$parentClass,
+                foreign: $$parentClass
+            ): $$parentClass {
+
+        """.trimIndent())
+
+        // Handles of call sites are static, so they are constants for JIT
+        builder.append("\tcompanion object {\n")
+        idl.globalOperators().forEach {
+            printCallSite(builder, it.name)
+        }
+        idl.batchOperators().forEach {
+            printCallSite(builder, batchName(it))
+        }
+        builder.append("\t}\n\n")
+
+        idl.globalOperators().forEach {
+            printSelector(builder, it.name)
+        }
+        idl.batchOperators().forEach {
+            printSelector(builder, batchName(it))
+        }
+        idl.globalOperators().forEach {
+            printFunctionCall(builder, it)
+        }
+        idl.batchOperators().forEach {
+            printBatchCall(builder, it)
+        }
+        builder.append("}")
+    }
+
+    private fun printCallSite(builder: StringBuilder, functionName: String) = builder.apply {
+        append("\t\tprivate val site_")
+        append(functionName)
+        append(" = InvokerSelector.callSite(")
+        append(parentClass)
+        append("::class.java)\n")
+        append("\t\tprivate val invoker_")
+        append(functionName)
+        append(" = site_")
+        append(functionName)
+        append(".dynamicInvoker()\n")
+    }
+
+    private fun printSelector(builder: StringBuilder, functionName: String) = builder.apply {
+        append("\tprivate val selector_")
+        append(functionName)
+        append(" = InvokerSelector(\"")
+        append(classPath)
+        append(".")
+        append(functionName)
+        append("\", jni, foreign, site_")
+        append(functionName)
+        append(")\n")
+    }
+
+    private fun printFunctionCall(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append("\n\t")
+        printFunctionHeader(builder, function,
+            isOverride = true,
+            name = "_${function.name}",
+            forcePrintVoid = true
+        )
+        append(" =\n\t\tselector_${function.name}.call(invoker_${function.name}) { it._${function.name}")
+        function.args.joinTo(this, prefix = "(", postfix = ") }\n") { it.name }
+    }
+
+    private fun printBatchCall(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append("\n\t")
+        printBatchHeader(builder, function,
+            isOverride = true,
+            name = "_${batchName(function)}",
+            forcePrintVoid = true
+        )
+        append(" =\n\t\tselector_${batchName(function)}.call(invoker_${batchName(function)}) { it._${batchName(function)}")
+        function.batchArrays().joinTo(this, prefix = "(", postfix = ", count) }\n") { it.name }
+    }
+}
@@ -8,44 +8,73 @@ class KotlinJvmCIPrinter(
     builder: StringBuilder,
     val classPath: String,
     name: String = "JVMCI",
-    parentClass: String
+    parentClass: String,
+    val lazy: Boolean = false
 ) {
     init {
         builder.apply {
+            // Non-critical functions are called with thread state transition, when it is supported
             val operators = idl.globalOperators()
-                .filter { it.isCritical() }
+                .filter { it.isCritical() || it.isTransitionCompatible() }
+            val transitions = operators.filter { !it.isCritical() }
 
             append($$"""
                 private class $$name(
                 	fileName: String,
-                	parent: $$parentClass
+                	private val parent: $$parentClass
                 ): $$parentClass by parent {
                     companion object {
                         @JvmStatic external fun getFunctionAddress(libName: String, funcName: String): Long
+                        @JvmStatic external fun getJvmSymbol(name: String): Long
+                        @JvmStatic external fun getBlockAddress(): Long
                         
-                        private fun linkFunction(lib: String, name: String, vararg types: Class<*>) {
-                            JVMCIUtils.linkNativeCall(
-                                $$name::class.java.getDeclaredMethod(name, *types),
-                                getFunctionAddress(lib, "EXPORTED_$${classPath.replace(".", "_")}_$name")
-                            )
+                        private fun linkFunction(cls: Class<*>, lib: String, name: String, critical: Boolean, vararg types: Class<*>) {
+                            val method = cls.getDeclaredMethod(name, *types)
+                            val address = getFunctionAddress(lib, "EXPORTED_$${classPath.replace(".", "_")}_$name")
+                            if(critical)
+                                JVMCIUtils.linkNativeCall(method, address)
+                            else
+                                JVMCIUtils.linkTransitionCall(method, address, getBlockAddress())
                         }
                         
             """.trimIndent())
 
-            operators.forEach {
-                append("\n\t\t@JvmStatic ")
-                printFunctionHeader(builder, it, isExternal = true, stringAsBytes = true)
-            }
-            append("\n\t}\n\n")
-            append($$"""
-                init {
-            """.replaceIndent("\t"))
+            if(transitions.isNotEmpty())
+                append("\n\t\tprivate val transitions = JVMCIUtils.initTransitions { getJvmSymbol(it) }\n")
 
-            operators.forEach {
-                printFunctionBinding(builder, it)
-            }
+            if(lazy) {
+                // Every function is linked on the first call, when its holder is initialized
+                append("\n\t\tprivate var libName = \"\"")
+                append("\n\t}\n")
+                operators.forEach {
+                    printFunctionHolder(builder, it)
+                }
+                append("\n\tinit {\n\t\tlibName = fileName\n\t}\n")
+            } else {
+                operators.forEach {
+                    append("\n\t\t@JvmStatic ")
+                    printExternalHeader(builder, it)
+                }
+                append("\n\t}\n\n")
+                append($$"""
+                    init {
+                """.replaceIndent("\t"))
 
-            append("\n\t}\n")
+                operators.filter { it.isCritical() }.forEach {
+                    append("\n\t\t")
+                    printFunctionBinding(builder, it, "$$name::class.java", "fileName")
+                }
+                if(transitions.isNotEmpty()) {
+                    append("\n\t\tif(transitions) {")
+                    transitions.forEach {
+                        append("\n\t\t\t")
+                        printFunctionBinding(builder, it, "$$name::class.java", "fileName")
+                    }
+                    append("\n\t\t}")
+                }
+
+                append("\n\t}\n")
+            }
 
             operators.forEach {
                 printFunctionCall(builder, it)
@@ -55,13 +84,28 @@ class KotlinJvmCIPrinter(
         }
     }
 
-    private fun printFunctionBinding(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
-        val args = listOf("\"${function.name}\"") +
-                function.args.map {
-                    "${it.type.toKotlinType(stringAsBytes = true)}::class.java"
-                }
+    private fun printFunctionHolder(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        val holder = holderName(function)
+        append("\n\tprivate object $holder {\n\t\tinit {\n\t\t\t")
+        printFunctionBinding(builder, function, "$holder::class.java", "libName")
+        append("\n\t\t}\n\t\t@JvmStatic ")
+        printExternalHeader(builder, function)
+        append("\n\t}\n")
+    }
+
+    private fun holderName(function: ResolvedIdlOperation) =
+        "Native_${function.name}"
 
-        append("\n\t\tlinkFunction(fileName, ${args.joinToString()})")
+    private fun printFunctionBinding(builder: StringBuilder, function: ResolvedIdlOperation, cls: String, lib: String) = builder.apply {
+        val args = listOf(cls, lib, "\"${function.name}\"", function.isCritical().toString()) +
+                function.args.flatMap {
+                    if(it.isView()) listOf("ByteArray::class.java", "Int::class.java")
+                    else if(it.isBuffer() || it.type.isStruct()) listOf("Long::class.java")
+                    else listOf("${it.type.toKotlinType(stringAsBytes = true, array = it.isArray())}::class.java")
+                } +
+                (if(function.type.isStruct()) listOf("Long::class.java") else emptyList())
+
+        append("linkFunction(${args.joinToString()})")
     }
 
     private fun printFunctionCall(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
@@ -73,13 +117,61 @@ class KotlinJvmCIPrinter(
         )
         append(" =\n\t\t")
 
-        val args = function.args.joinToString {
-            if(it.type.isString())
+        // Views are passed as byte arrays, that are shared with compact strings when possible
+        val args = function.args.map {
+            if(it.isView())
+                "__${it.name}, __${it.name}.size"
+            else if(it.type.isString())
                 "${it.name}.toByteArray()"
+            else if(it.isBuffer())
+                "${it.name}.address"
+            else if(it.type.isStruct())
+                "${it.name}.buffer.address + ${it.name}.offset"
             else it.name
         }
-        append("${function.name}(${args})")
+        val target = if(lazy) "${holderName(function)}.${function.name}" else function.name
+        val call = if(function.type.isStruct())
+            "${function.type.structName()}().also { $target(${(args + "it.buffer.address + it.offset").joinToString()}) }"
+        else
+            "$target(${args.joinToString()})"
+        if(function.isCritical())
+            append(letViews(function, { "StringView.of($it)" }, call))
+        else {
+            // Buffers are freed by GC, so they must be reachable until the call returns
+            val fences = function.args.filter { it.isBuffer() || it.type.isStruct() }
+                .joinToString("; ") { "java.lang.ref.Reference.reachabilityFence(${it.name})" }
+            append("if(transitions) ")
+            if(fences.isEmpty()) append(call)
+            else append("$call.also { _ -> $fences }")
+            append(" else parent._${function.name}")
+            function.args.joinTo(this, prefix = "(", postfix = ")") { it.name }
+        }
         append("\n")
     }
 
+    /**
+     * Buffers and structs are passed as raw addresses,
+     * returned struct is written to the last argument.
+     */
+    private fun printExternalHeader(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append("external fun ")
+        append(function.name)
+        append("(")
+
+        val args = function.args.map {
+            if(it.isView()) "${it.name}: ByteArray, ${it.name}_length: Int"
+            else if(it.isBuffer() || it.type.isStruct()) "${it.name}: Long"
+            else "${it.name}: ${it.type.toKotlinType(stringAsBytes = true, array = it.isArray())}"
+        }
+        if(function.type.isStruct())
+            (args + "__result: Long").joinTo(this)
+        else args.joinTo(this)
+        append(")")
+
+        if(function.type !is ResolvedIdlType.Void && !function.type.isStruct()) {
+            append(": ")
+            append(function.type.toKotlinType(stringAsBytes = true))
+        }
+    }
+
 }
\ No newline at end of file
@@ -10,54 +10,133 @@ class KotlinJvmForeignPrinter(
     val classPath: String,
     val name: String = "Foreign",
     parentClass: String? = null,
-    val indent: String = ""
+    val indent: String = "",
+    val lazy: Boolean = false
 ) {
     init {
         builder.append("${indent}private class ")
         builder.append(name)
-        builder.append("(prefix: String = \"EXPORTED_")
-        builder.append(classPath.replace(".", "_"))
-        builder.append("_\")")
         if(parentClass != null)
             builder.append(": $parentClass")
         builder.append(" {\n\n")
 
-        if(idl.callbacks.isNotEmpty()) {
+        // Handles are static final fields, so JIT treats them as constants and inlines invokeExact
+        if(idl.callbacks.isNotEmpty() || !lazy) {
             builder.append("\tcompanion object {\n")
 
-            idl.callbacks.values.forEach { printCallbackInvoke(builder, it) }
-            idl.callbacks.values.forEach { printCallbackMethodHandle(builder, it) }
-            idl.callbacks.values.forEach { printCallbackDesc(builder, it) }
-            builder.append("\n")
-            idl.callbacks.values.forEach { printCallbackWrap(builder, it) }
+            if(idl.callbacks.isNotEmpty()) {
+                idl.callbacks.values.forEach { printCallbackInvoke(builder, it) }
+                idl.callbacks.values.forEach { printCallbackMethodHandle(builder, it) }
+                idl.callbacks.values.forEach { printCallbackDesc(builder, it) }
+                builder.append("\n")
+                idl.callbacks.values.forEach { printCallbackStub(builder, it) }
+                builder.append("\n")
+                idl.callbacks.values.forEach { printCallbackWrap(builder, it) }
+            }
+
+            if(!lazy) {
+                builder.append("\n")
+                printHandles(builder, idl)
+            }
 
             builder.append("\t}\n\n")
         }
 
-        idl.globalOperators().forEach {
-            printFunctionHandle(builder, it)
-        }
+        if(lazy)
+            printHandles(builder, idl)
         idl.globalOperators().forEach {
             printFunctionCall(builder, it)
         }
+        idl.batchOperators().forEach {
+            printBatchCall(builder, it)
+        }
         builder.append("${indent}}")
     }
 
-    private fun printFunctionHandle(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
-        append("${indent}\tprivate val handle")
-        append(function.name.capitalized())
-        append($$" = ForeignUtils.lookup(\"${prefix}")
-        append(function.name)
-        append("\", ")
-        append(function.isCritical())
-        append(", ")
+    private fun printHandles(builder: StringBuilder, idl: IdlResolver) {
+        idl.globalOperators().forEach {
+            printFunctionHandle(builder, it)
+        }
+        idl.batchOperators().forEach {
+            printBatchHandle(builder, it)
+        }
+    }
 
-        val args = arrayListOf(function.type.toForeignType())
-        args += function.args.map {
-            it.type.toForeignType()
+    private fun printFunctionHandle(builder: StringBuilder, function: ResolvedIdlOperation) {
+        // Structs are passed by pointer, and returned through the last argument
+        val args = arrayListOf(if(function.type.isStruct()) "null" else function.type.toForeignType())
+        args += function.args.flatMap {
+            if(it.isView()) listOf(it.type.toForeignType(), "ForeignUtils.C_INT")
+            else listOf(it.type.toForeignType(it.isPointer() || it.type.isStruct()))
         }
+        if(function.type.isStruct())
+            args += "ForeignUtils.C_ADDRESS"
+
+        printHandle(builder, function.name, function.isCritical(), args)
+    }
+
+    private fun printBatchHandle(builder: StringBuilder, function: ResolvedIdlOperation) {
+        val args = listOf("null") +
+                function.batchArrays().map { "ForeignUtils.C_ADDRESS" } +
+                "ForeignUtils.C_INT"
+
+        printHandle(builder, batchName(function), function.isCritical(), args)
+    }
+
+    /**
+     * Handle is a static field of the companion, or, in lazy mode, of its own holder,
+     * so it is looked up on the first call, and then is constant for JIT.
+     */
+    private fun printHandle(builder: StringBuilder, functionName: String, critical: Boolean, args: List<String>) = builder.apply {
+        if(lazy) {
+            append("${indent}\tprivate object Handle")
+            append(functionName.capitalized())
+            append(" {\n${indent}\t\t@JvmField val handle: MethodHandle")
+        } else {
+            append("${indent}\t\t@JvmField val handle")
+            append(functionName.capitalized())
+            append(": MethodHandle")
+        }
+        append(" = ForeignUtils.lookup(\"EXPORTED_")
+        append(classPath.replace(".", "_"))
+        append("_")
+        append(functionName)
+        append("\", ")
+        append(critical)
+        append(", ")
         args.joinTo(builder)
         append(")\n")
+        if(lazy)
+            append("${indent}\t}\n")
+    }
+
+    private fun handle(functionName: String) =
+        if(lazy) "Handle${functionName.capitalized()}.handle"
+        else "handle${functionName.capitalized()}"
+
+    private fun printBatchCall(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append("\n${indent}\t")
+        printBatchHeader(builder, function,
+            isOverride = true,
+            name = "_${batchName(function)}",
+            forcePrintVoid = true
+        )
+        append(" = ")
+
+        // Critical calls pass heap arrays directly, others copy them to native memory
+        val useArena = !function.isCritical()
+        if(useArena)
+            append("ForeignArena().use { arena ->\n\t\t")
+        else append("\n${indent}\t\t")
+
+        val args = function.batchArrays().map {
+            castToNative(it.type, it.name, function.isCritical(), dealloc = false, useArena, array = true)
+        } + "count"
+        append("(${handle(batchName(function))}.invokeExact(${args.joinToString()}) as Unit)")
+
+        if(useArena)
+            append("\n\t}")
+        append("\n")
     }
 
     private fun printFunctionCall(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
@@ -69,17 +148,37 @@ class KotlinJvmForeignPrinter(
         )
         append(" = ")
 
-        val useArena = !function.isCritical() && (function.args.any { it.type.isString() } || function.args.any { it.isDealloc() })
+        val useArena = !function.isCritical() && function.args.any { it.type.isString() || it.isDealloc() || it.isArray() }
 
         if(useArena)
             append("ForeignArena().use { arena ->\n\t\t")
         else append("\n${indent}\t\t")
 
-        val type = function.type.toKotlinForeignType()
+        // Each string in critical call is encoded to its own per-thread slot
+        // Views are encoded once, their segments end with '\0', so the length is byteSize - 1
+        var stringSlot = 0
+        val views = hashMapOf<String, String>()
+        val args = function.args.map {
+            if(it.isView()) {
+                views[it.name] = castToNative(it.type, it.name, function.isCritical(), it.isDealloc(), useArena, slot = stringSlot++)
+                "__${it.name}, (__${it.name}.byteSize() - 1).toInt()"
+            }
+            else if(it.isBuffer()) "MemorySegment.ofAddress(${it.name}.address)"
+            else if(it.type.isStruct()) "MemorySegment.ofAddress(${it.name}.buffer.address + ${it.name}.offset)"
+            else castToNative(it.type, it.name, function.isCritical(), it.isDealloc(), useArena, it.isArray(),
+                slot = if(it.type.isString()) stringSlot++ else 0)
+        }
 
-        val args = function.args.joinToString { castToNative(it.type, it.name, function.isCritical(), it.isDealloc(), useArena) }
-        val call = "(handle${function.name.capitalized()}.invokeExact($args) as $type)"
-        append(castFromNative(function.type, call, function.isDealloc(), useArena))
+        if(function.type.isStruct()) {
+            val resultArgs = args + "MemorySegment.ofAddress(it.buffer.address + it.offset)"
+            append("${function.type.structName()}().also { ")
+            append(letViews(function, { views[it]!! }, "(${handle(function.name)}.invokeExact(${resultArgs.joinToString()}) as Unit)"))
+            append(" }")
+        } else {
+            val type = function.type.toKotlinForeignType()
+            val call = letViews(function, { views[it]!! }, "(${handle(function.name)}.invokeExact(${args.joinToString()}) as $type)")
+            append(castFromNative(function.type, call, function.isDealloc(), useArena))
+        }
 
         if(useArena)
             append("\n\t}")
@@ -105,7 +204,7 @@ class KotlinJvmForeignPrinter(
 
         // body
         val call = StringBuilder().apply {
-            append("(ForeignUtils.callbacks[_callback.address()] as (")
+            append("(ForeignUtils.callbackTarget(_callback) as (")
             lambdaArgTypes.joinTo(this)
             append(") -> ")
             append(callback.type.toKotlinType())
@@ -155,15 +254,23 @@ class KotlinJvmForeignPrinter(
         append(")")
     }
 
+    private fun printCallbackStub(builder: StringBuilder, callback: ResolvedIdlCallbackFunction) = builder.apply {
+        append("\n\t\tprivate val upcallStub")
+        append(callback.name)
+        append(" = ForeignUtils.upcallStub(methodHandle")
+        append(callback.name)
+        append(", methodDesc")
+        append(callback.name)
+        append(")")
+    }
+
     private fun printCallbackWrap(builder: StringBuilder, callback: ResolvedIdlCallbackFunction) = builder.apply {
         append("\n\t\tfun ")
         append(callback.name)
         append(".wrap")
         append(callback.name)
         append("(): MemorySegment =\n\t\t\t")
-        append("ForeignUtils.createCallback(this, methodHandle")
-        append(callback.name)
-        append(", methodDesc")
+        append("ForeignUtils.createCallback(this, upcallStub")
         append(callback.name)
         append(")\n")
     }
@@ -185,12 +292,15 @@ class KotlinJvmForeignPrinter(
         else -> throw UnsupportedOperationException(type.toString())
     }
 
-    private fun castToNative(type: ResolvedIdlType, content: String, critical: Boolean, dealloc: Boolean, useArena: Boolean): String = when(type) {
+    private fun castToNative(type: ResolvedIdlType, content: String, critical: Boolean, dealloc: Boolean, useArena: Boolean, array: Boolean = false, slot: Int = 0): String = if(array) {
+        if(critical) "MemorySegment.ofArray($content)"
+        else "arena.array($content)"
+    } else when(type) {
         is ResolvedIdlType.Void -> content
         is ResolvedIdlType.Default -> when(type.declaration) {
             is BuiltinIdlDeclaration -> when((type.declaration as BuiltinIdlDeclaration).kind) {
                 WebIDLBuiltinKind.STRING ->
-                    if(critical) "ForeignUtils.heapStr($content)"
+                    if(critical) "ForeignUtils.heapStr($content, $slot)"
                     else if(useArena) "arena.cstr($content)"
                     else "ForeignUtils.cstr($content)"
                 else -> content
@@ -204,7 +314,7 @@ class KotlinJvmForeignPrinter(
     }
 
 
-    fun ResolvedIdlType.toForeignType(): String = when(this) {
+    fun ResolvedIdlType.toForeignType(array: Boolean = false): String = if(array) "ForeignUtils.C_ADDRESS" else when(this) {
         is ResolvedIdlType.Union -> throw UnsupportedOperationException("Union type are not unsupported")
         is ResolvedIdlType.Void -> "null"
         is ResolvedIdlType.Default -> buildString {
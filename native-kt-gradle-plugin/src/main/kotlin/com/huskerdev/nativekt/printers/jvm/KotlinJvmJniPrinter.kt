@@ -1,12 +1,36 @@
 package com.huskerdev.nativekt.printers.jvm
 
+import com.huskerdev.nativekt.utils.batchArrays
+import com.huskerdev.nativekt.utils.batchName
+import com.huskerdev.nativekt.utils.batchOperators
 import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.isBuffer
+import com.huskerdev.nativekt.utils.isArray
 import com.huskerdev.nativekt.utils.isCallback
+import com.huskerdev.nativekt.utils.isStruct
+import com.huskerdev.nativekt.utils.printBatchHeader
 import com.huskerdev.nativekt.utils.printFunctionHeader
+import com.huskerdev.nativekt.utils.structName
 import com.huskerdev.nativekt.utils.toKotlinType
 import com.huskerdev.webidl.resolver.IdlResolver
+import com.huskerdev.webidl.resolver.ResolvedIdlOperation
 import com.huskerdev.webidl.resolver.ResolvedIdlType
 
+/**
+ * Call of the JNI function with structs and buffers unwrapped to direct buffers.
+ * Returned struct is allocated before the call, and filled by native side.
+ */
+fun jniCall(function: ResolvedIdlOperation, target: String): String {
+    val args = function.args.flatMap {
+        if(it.isBuffer()) listOf("${it.name}.buffer")
+        else if(it.type.isStruct()) listOf("${it.name}.buffer.buffer", "${it.name}.offset")
+        else listOf(it.name)
+    }
+    return if(function.type.isStruct())
+        "${function.type.structName()}().also { $target(${(args + listOf("it.buffer.buffer", "it.offset")).joinToString()}) }"
+    else "$target(${args.joinToString()})"
+}
+
 class KotlinJvmJniPrinter(
     idl: IdlResolver,
     builder: StringBuilder,
@@ -32,11 +56,12 @@ class KotlinJvmJniPrinter(
 
         idl.globalOperators().forEach { function ->
             builder.append("${indent}\t\t@JvmStatic ")
-            printFunctionHeader(
-                builder, function,
-                isExternal = true,
-                callbackAsAny = true
-            )
+            printExternalHeader(builder, function)
+            builder.append("\n")
+        }
+        idl.batchOperators().forEach { function ->
+            builder.append("${indent}\t\t@JvmStatic ")
+            printBatchHeader(builder, function, isExternal = true)
             builder.append("\n")
         }
 
@@ -75,17 +100,47 @@ class KotlinJvmJniPrinter(
                     forcePrintVoid = true
                 )
                 builder.append(" = \n${indent}\t\t")
-                builder.append(function.name)
-                builder.append("(")
-                function.args.joinTo(builder) { it.name }
-                builder.append(")")
+                builder.append(jniCall(function, function.name))
                 if(function.type.isCallback()) {
                     builder.append(" as ")
                     builder.append((function.type as ResolvedIdlType.Default).declaration.name)
                 }
                 builder.append("\n")
             }
+            idl.batchOperators().forEach { function ->
+                builder.append("\n${indent}\t")
+                printBatchHeader(
+                    builder, function,
+                    isOverride = parentClass != null,
+                    name = "_${batchName(function)}",
+                    forcePrintVoid = true
+                )
+                builder.append(" = \n${indent}\t\t")
+                builder.append(batchName(function))
+                function.batchArrays().joinTo(builder, prefix = "(", postfix = ", count)\n") { it.name }
+            }
         }
         builder.append("${indent}}")
     }
+
+    private fun printExternalHeader(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append("external fun ")
+        append(function.name)
+        append("(")
+
+        val args = function.args.flatMap {
+            if(it.isBuffer()) listOf("${it.name}: java.nio.ByteBuffer")
+            else if(it.type.isStruct()) listOf("${it.name}: java.nio.ByteBuffer", "${it.name}Offset: Int")
+            else listOf("${it.name}: ${it.type.toKotlinType(callbackAsAny = true, array = it.isArray())}")
+        }
+        if(function.type.isStruct())
+            (args + listOf("__result: java.nio.ByteBuffer", "__resultOffset: Int")).joinTo(this)
+        else args.joinTo(this)
+        append(")")
+
+        if(function.type !is ResolvedIdlType.Void && !function.type.isStruct()) {
+            append(": ")
+            append(function.type.toKotlinType(callbackAsAny = true))
+        }
+    }
 }
\ No newline at end of file
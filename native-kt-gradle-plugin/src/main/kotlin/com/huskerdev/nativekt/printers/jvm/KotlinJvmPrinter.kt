@@ -1,9 +1,20 @@
 package com.huskerdev.nativekt.printers.jvm
 
+import com.huskerdev.nativekt.printers.KotlinStructPrinter
 import com.huskerdev.nativekt.utils.asyncFunctionName
+import com.huskerdev.nativekt.utils.asyncOperators
+import com.huskerdev.nativekt.utils.batchArrays
+import com.huskerdev.nativekt.utils.batchName
+import com.huskerdev.nativekt.utils.batchOperators
+import com.huskerdev.nativekt.utils.batchRequire
 import com.huskerdev.nativekt.utils.functionHeader
 import com.huskerdev.nativekt.utils.globalOperators
+import com.huskerdev.nativekt.utils.isBlocking
+import com.huskerdev.nativekt.utils.offloadedName
+import com.huskerdev.nativekt.utils.printBatchHeader
+import com.huskerdev.nativekt.utils.printCallbackTypealias
 import com.huskerdev.nativekt.utils.printFunctionHeader
+import com.huskerdev.nativekt.utils.printSuspendFunction
 import com.huskerdev.nativekt.utils.syncFunctionName
 import com.huskerdev.webidl.resolver.IdlResolver
 import com.huskerdev.webidl.resolver.ResolvedIdlOperation
@@ -20,22 +31,28 @@ class KotlinJvmPrinter(
     val expectActual: Boolean,
     useForeignApi: Boolean,
     useJVMCI: Boolean,
-    useUniversalMacOSLib: Boolean
+    useUniversalMacOSLib: Boolean,
+    useLazyBinding: Boolean = false,
+    blockingThreads: Int = 0
 ) {
     init {
         val builder = StringBuilder()
         val actual = if (expectActual) "actual " else ""
         val nativeInvoker = "${moduleName.capitalized()}NativeInvoker"
         val implName = "${moduleName}Impl"
+        val setterName = "set${moduleName.capitalized()}Impl"
 
         fun invokerChooser(indent: String) = if(useForeignApi) """
-            $implName = when(NativeKtUtils.getInvoker()) {
-                NativeKtUtils.Invoker.FOREIGN -> ${moduleName.capitalized()}Foreign()
-                NativeKtUtils.Invoker.JNI     -> ${moduleName.capitalized()}JNI()
+            val invoker = when(NativeKtUtils.getInvoker()) {
+                NativeKtUtils.Invoker.FOREIGN  -> ${moduleName.capitalized()}Foreign()
+                NativeKtUtils.Invoker.JNI      -> ${moduleName.capitalized()}JNI()
+                NativeKtUtils.Invoker.ADAPTIVE -> ${moduleName.capitalized()}Adaptive(${moduleName.capitalized()}JNI(), ${moduleName.capitalized()}Foreign())
             }
+            $setterName(invoker)
             """.replaceIndent(indent)
         else """
-            $implName = ${moduleName.capitalized()}JNI()
+            val invoker = ${moduleName.capitalized()}JNI()
+            $setterName(invoker)
             """.replaceIndent(indent)
 
         builder.append("""
@@ -52,12 +69,16 @@ class KotlinJvmPrinter(
                 
                 import com.huskerdev.nativekt.foreign.*
                 import java.lang.foreign.*
-                import java.lang.invoke.*
                 
             """.trimIndent())
 
+        val blockingOperators = idl.globalOperators().filter { it.isBlocking() }
+        if(blockingOperators.isNotEmpty() && useCoroutines)
+            builder.append("\nimport kotlin.coroutines.*\n")
+
         builder.append($$"""
             import com.huskerdev.nativekt.*
+            import java.lang.invoke.*
             
             
             private var isLibTestLoaded_ = false
@@ -79,8 +100,10 @@ class KotlinJvmPrinter(
         if(useJVMCI) {
             builder.append("""
                 
-                if(NativeKtUtils.isJvmciAvailable()) 
-                    $implName = ${moduleName.capitalized()}JVMCI(fileName, $implName!!)
+                if(NativeKtUtils.isJvmciAvailable()) {
+                    // Calls are handled by parent until stubs are installed
+                    JVMCIUtils.install { $setterName(${moduleName.capitalized()}JVMCI(fileName, invoker)) }
+                }
             """.replaceIndent("\t"))
         }
         builder.append("""
@@ -100,14 +123,47 @@ class KotlinJvmPrinter(
                 ${syncFunctionName(moduleName)}()
         """.trimIndent())
 
+        if(!expectActual) {
+            KotlinStructPrinter(idl, builder)
+            idl.callbacks.values.forEach { printCallbackTypealias(builder, it) }
+        }
+
         // Functions
         builder.append("\n\n// === Functions ===\n")
-        idl.globalOperators().forEach { printFunctionProxy(builder, it, implName) }
+        idl.globalOperators().forEach { printFunctionProxy(builder, it, implName, nativeInvoker) }
+        idl.batchOperators().forEach { printBatchProxy(builder, it, implName, nativeInvoker) }
+        if(!expectActual && useCoroutines)
+            idl.asyncOperators().forEach { printSuspendFunction(builder, it) }
+
+        if(blockingOperators.isNotEmpty()) {
+            builder.append("\n\nprivate val blockingPool = BlockingPool.get(\"$moduleName\", $blockingThreads)\n")
+            if(useCoroutines) builder.append("""
+                
+                private suspend fun <T> BlockingPool.await(block: () -> T): T = kotlinx.coroutines.suspendCancellableCoroutine { continuation ->
+                    val future = call({ block() }) { result, error ->
+                        if(error != null) continuation.resumeWithException(error)
+                        else continuation.resume(result)
+                    }
+                    // Queued call is dropped, but the call that is already executed can not be stopped
+                    continuation.invokeOnCancellation { future.cancel(false) }
+                }
+                
+            """.trimIndent())
+            blockingOperators.forEach { printOffloadedProxy(builder, it, useCoroutines) }
+        }
 
         // Implementation
         builder.append("\n\n// === Implementation ===\n\n")
         builder.append("""
-            private var $implName: $nativeInvoker? = null
+            // Current invoker is a constant for JIT, so calls are inlined without null check and virtual call.
+            // Replacing of the invoker deoptimizes dependent code
+            private val ${implName}Site = MutableCallSite(MethodHandles.constant($nativeInvoker::class.java, null))
+            private val $implName: MethodHandle = ${implName}Site.dynamicInvoker()
+            
+            private fun $setterName(invoker: $nativeInvoker) {
+                ${implName}Site.target = MethodHandles.constant($nativeInvoker::class.java, invoker)
+                MutableCallSite.syncAll(arrayOf(${implName}Site))
+            }
             
             private sealed interface $nativeInvoker {
                 
@@ -116,6 +172,10 @@ class KotlinJvmPrinter(
         idl.globalOperators().joinTo(builder, "\n\t") {
             functionHeader(it, name = "_${it.name}")
         }
+        idl.batchOperators().forEach {
+            builder.append("\n\t")
+            printBatchHeader(builder, it, name = "_${batchName(it)}")
+        }
         builder.append("\n}")
 
         // JNI
@@ -134,6 +194,15 @@ class KotlinJvmPrinter(
                 classPath = classPath,
                 name = "${moduleName.capitalized()}Foreign",
                 parentClass = nativeInvoker,
+                lazy = useLazyBinding
+            )
+
+            builder.append("\n\n")
+            KotlinJvmAdaptivePrinter(
+                idl, builder,
+                classPath = classPath,
+                name = "${moduleName.capitalized()}Adaptive",
+                parentClass = nativeInvoker
             )
         }
 
@@ -145,6 +214,7 @@ class KotlinJvmPrinter(
                 classPath = classPath,
                 name = "${moduleName.capitalized()}JVMCI",
                 parentClass = nativeInvoker,
+                lazy = useLazyBinding
             )
         }
 
@@ -153,11 +223,37 @@ class KotlinJvmPrinter(
         target.writeText(builder.toString())
     }
 
-    private fun printFunctionProxy(builder: StringBuilder, function: ResolvedIdlOperation, implName: String) = builder.apply {
+    private fun printFunctionProxy(builder: StringBuilder, function: ResolvedIdlOperation, implName: String, nativeInvoker: String) = builder.apply {
         append('\n')
         printFunctionHeader(builder, function, isActual = expectActual, forcePrintVoid = true)
-        append(" = \n\t$implName!!._")
+        append(" = \n\t($implName.invokeExact() as $nativeInvoker)._")
         append(function.name)
         function.args.joinTo(this, prefix = "(", postfix = ")\n") { it.name }
     }
+
+    /**
+     * Native call is executed in a pool of platform threads,
+     * while the caller is parked or suspended
+     */
+    private fun printOffloadedProxy(builder: StringBuilder, function: ResolvedIdlOperation, useCoroutines: Boolean) = builder.apply {
+        append('\n')
+        if(useCoroutines)
+            append("suspend ")
+        printFunctionHeader(builder, function, name = offloadedName(function), forcePrintVoid = true)
+        append(" = \n\tblockingPool.")
+        append(if(useCoroutines) "await" else "call")
+        append(" { ")
+        append(function.name)
+        function.args.joinTo(this, prefix = "(", postfix = ") }\n") { it.name }
+    }
+
+    private fun printBatchProxy(builder: StringBuilder, function: ResolvedIdlOperation, implName: String, nativeInvoker: String) = builder.apply {
+        append('\n')
+        printBatchHeader(builder, function, isActual = expectActual)
+        append(" {\n\t")
+        append(batchRequire(function))
+        append("\n\t($implName.invokeExact() as $nativeInvoker)._")
+        append(batchName(function))
+        function.batchArrays().joinTo(this, prefix = "(", postfix = ", count)\n}\n") { it.name }
+    }
 }
\ No newline at end of file
@@ -2,6 +2,11 @@ package com.huskerdev.nativekt.printers.kn
 
 import java.io.File
 
+/**
+ * Prints cinterop definition.
+ *
+ * Header is referenced by name, and is found through `includeDirs` of the cinterop.
+ */
 class DefPrinter(
     target: File,
     headerFile: File,
@@ -12,7 +17,7 @@ class DefPrinter(
         target.parentFile.mkdirs()
 
         target.writeText("""
-            headers = ${headerFile.absolutePath.replace("\\", "/")}
+            headers = ${headerFile.name}
             package = cinterop.$classPath
         """.trimIndent())
     }
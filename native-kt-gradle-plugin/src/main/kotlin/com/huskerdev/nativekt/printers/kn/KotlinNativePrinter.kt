@@ -1,5 +1,6 @@
 package com.huskerdev.nativekt.printers.kn
 
+import com.huskerdev.nativekt.printers.KotlinStructPrinter
 import com.huskerdev.nativekt.utils.*
 import com.huskerdev.webidl.resolver.*
 import java.io.File
@@ -36,9 +37,17 @@ class KotlinNativePrinter(
         if(useCoroutines)
             builder.append("${actual}suspend fun ${asyncFunctionName(moduleName)}() = Unit\n")
 
+        if(!expectActual) {
+            KotlinStructPrinter(idl, builder)
+            idl.callbacks.values.forEach { printCallbackTypealias(builder, it) }
+        }
+
         idl.callbacks.values.forEach { printCallbackWrap(builder, it) }
 
         idl.globalOperators().forEach { printFunction(builder, it) }
+        idl.batchOperators().forEach { printBatchFunction(builder, it) }
+        if(!expectActual && useCoroutines)
+            idl.asyncOperators().forEach { printSuspendFunction(builder, it) }
 
         target.parentFile.mkdirs()
         target.writeText(builder.toString())
@@ -93,11 +102,16 @@ class KotlinNativePrinter(
             append("NativeArena.use { arena ->")
         append("\n\t")
 
+        // Views are encoded once, their size includes null-terminator
         val args = function.args.joinToString { arg ->
-            castToNative(arg.type, arg.name, arg.isDealloc(), useArena)
+            if(arg.isView()) "__${arg.name}, __${arg.name}.size - 1"
+            else if(arg.isArray()) "${arg.name}.refTo(0)"
+            else if(arg.isBuffer()) "${arg.name}.pointer.reinterpret()"
+            else if(arg.isStructPointer()) structPointer(arg.name, arg.type.structName())
+            else castToNative(arg.type, arg.name, arg.isDealloc(), useArena)
         }
 
-        val call = "$cinteropPath.${function.name}($args)"
+        val call = letViews(function, { "$it.utf8" }, "$cinteropPath.${function.name}($args)")
         append(castFromNative(function.type, call, function.isDealloc(), useArena))
 
         if(useArena)
@@ -106,6 +120,25 @@ class KotlinNativePrinter(
         append("\n")
     }
 
+    /**
+     * Kotlin/Native calls C functions without transition,
+     * so batch is a plain loop
+     */
+    private fun printBatchFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+        append('\n')
+        printBatchHeader(builder, function, isActual = expectActual)
+        append(" {\n\t")
+        append(batchRequire(function))
+        append("\n\tfor(i in 0 until count)\n\t\t")
+
+        val call = "$cinteropPath.${function.name}(${function.args.joinToString { "${it.name}[i]" }})"
+        if(function.type is ResolvedIdlType.Void)
+            append(call)
+        else
+            append("results[i] = $call")
+        append("\n}\n")
+    }
+
     private fun castFromNative(type: ResolvedIdlType, content: String, dealloc: Boolean, useArena: Boolean): String = when(type) {
         is ResolvedIdlType.Void -> content
         is ResolvedIdlType.Default -> when(val decl = type.declaration) {
@@ -119,6 +152,7 @@ class KotlinNativePrinter(
             is ResolvedIdlCallbackFunction ->
                 if(useArena) "arena.unwrapCallback<${decl.name}>($content!!.reinterpret(), $dealloc)"
                 else "unwrapCallback<${decl.name}>($content!!.reinterpret(), $dealloc)"
+            is ResolvedIdlDictionary -> "${decl.name}().also { $content.place(${structPointer("it", decl.name)}) }"
             else -> throw UnsupportedOperationException(type.toString())
         }
         else -> throw UnsupportedOperationException(type.toString())
@@ -137,8 +171,12 @@ class KotlinNativePrinter(
             is ResolvedIdlCallbackFunction ->
                 if(dealloc) "arena.callback($content.wrap${decl.name}())"
                 else "$content.wrap${decl.name}()"
+            is ResolvedIdlDictionary -> "${structPointer(content, decl.name)}.pointed.readValue()"
             else -> throw UnsupportedOperationException(type.toString())
         }
         else -> throw UnsupportedOperationException(type.toString())
     }
-}
\ No newline at end of file
+
+    private fun structPointer(name: String, struct: String) =
+        "($name.buffer.pointer + $name.offset)!!.reinterpret<$cinteropPath.$struct>()"
+}
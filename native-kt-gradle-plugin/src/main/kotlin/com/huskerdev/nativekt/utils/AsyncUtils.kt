@@ -0,0 +1,95 @@
+package com.huskerdev.nativekt.utils
+
+import com.huskerdev.webidl.parser.IdlAttributedHolder
+import com.huskerdev.webidl.parser.IdlExtendedAttribute
+import com.huskerdev.webidl.resolver.IdlResolver
+import com.huskerdev.webidl.resolver.ResolvedIdlCallbackFunction
+import com.huskerdev.webidl.resolver.ResolvedIdlOperation
+import com.huskerdev.webidl.resolver.ResolvedIdlType
+
+/**
+ * Function completes later, possibly from another thread.
+ *
+ * The last argument is a completion callback, that is owned by native code,
+ * and is signaled with `COMPLETE(completion, ...)`.
+ * Completion is an ordinary callback, so it is delivered the same way on every target.
+ */
+fun ResolvedIdlOperation.isAsync(): Boolean =
+    this.attributes.any {
+        it is IdlExtendedAttribute.NoArgs && it.name == "Async"
+    }
+
+/**
+ * Argument of completion callback, that contains error message, or empty string on success
+ */
+fun IdlAttributedHolder.isError(): Boolean =
+    this.attributes.any {
+        it is IdlExtendedAttribute.NoArgs && it.name == "Error"
+    }
+
+fun IdlResolver.asyncOperators() =
+    globalOperators().filter { it.isAsync() }
+
+/**
+ * Completion callback of `[Async]` function.
+ *
+ * Supported forms are `void()`, `void(T result)`, `void([Error] string error)` and `void(T result, [Error] string error)`.
+ */
+fun ResolvedIdlOperation.asyncCompletion(): ResolvedIdlCallbackFunction {
+    val last = args.lastOrNull()
+    val completion = (last?.type as? ResolvedIdlType.Default)?.declaration as? ResolvedIdlCallbackFunction
+
+    if(type !is ResolvedIdlType.Void || completion == null || last.isDealloc())
+        throw UnsupportedOperationException("[Async] function '$name' must return void and take a completion callback without [Dealloc] as the last argument")
+
+    val values = completion.args.filter { !it.isError() }
+    val errors = completion.args.filter { it.isError() }
+    if(completion.type !is ResolvedIdlType.Void || values.size > 1 || errors.size > 1 ||
+        errors.any { !it.type.isString() || it != completion.args.last() })
+        throw UnsupportedOperationException("Completion '${completion.name}' of [Async] function '$name' must return void, " +
+                "and take only a result and [Error] string as the last argument")
+
+    return completion
+}
+
+/**
+ * `suspend` variant of [function], that is resumed by its completion.
+ * Resumed coroutine is dispatched by its own dispatcher, so the completing thread is not blocked.
+ *
+ * When coroutine is cancelled, native operation is not interrupted, and its result is ignored.
+ * Completion doesn't keep the cancelled coroutine, even if native code never signals it.
+ */
+fun printSuspendFunction(builder: StringBuilder, function: ResolvedIdlOperation) = builder.apply {
+    val completion = function.asyncCompletion()
+    val args = function.args.dropLast(1)
+    val result = completion.args.firstOrNull { !it.isError() }
+    val error = completion.args.firstOrNull { it.isError() }
+    val resultType = result?.type?.toKotlinType() ?: "Unit"
+
+    append("\n\n/**\n * Suspends until native code completes `${function.name}`")
+    if(error != null)
+        append("\n *\n * @throws com.huskerdev.nativekt.NativeException when it is completed with an error\n")
+    append("\n */\n")
+    append("suspend fun ")
+    append(function.name)
+    args.joinTo(this, prefix = "(", postfix = "): ") {
+        "${it.name}: ${if(it.isBuffer()) NATIVE_BUFFER else it.type.toKotlinType(array = it.isArray())}"
+    }
+    append(resultType)
+    append(" =\n\tkotlinx.coroutines.suspendCancellableCoroutine { continuation ->\n")
+    append("\t\t// Native code can hold the completion after cancellation\n")
+    append("\t\tvar target: kotlinx.coroutines.CancellableContinuation<$resultType>? = continuation\n")
+    append("\t\tcontinuation.invokeOnCancellation { target = null }\n\n\t\t")
+    append(function.name)
+    args.joinTo(this, prefix = "(", postfix = ")") { it.name }
+    completion.args.joinTo(this, prefix = " { ", postfix = " ->\n") { it.name }
+    append("\t\t\tval current = target ?: return@")
+    append(function.name)
+    append("\n\t\t\ttarget = null\n\t\t\t")
+    if(error != null) {
+        append("if(${error.name}.isNotEmpty())\n\t\t\t\t")
+        append("current.resumeWith(Result.failure(com.huskerdev.nativekt.NativeException(${error.name})))\n\t\t\telse ")
+    }
+    append("current.resumeWith(Result.success(${result?.name ?: "Unit"}))\n")
+    append("\t\t}\n\t}\n")
+}
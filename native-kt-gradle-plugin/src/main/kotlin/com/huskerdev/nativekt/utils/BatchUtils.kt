@@ -0,0 +1,93 @@
+package com.huskerdev.nativekt.utils
+
+import com.huskerdev.webidl.parser.IdlExtendedAttribute
+import com.huskerdev.webidl.resolver.IdlResolver
+import com.huskerdev.webidl.resolver.ResolvedIdlOperation
+import com.huskerdev.webidl.resolver.ResolvedIdlType
+
+/**
+ * Array of the batch function.
+ * Every argument of original function becomes an array, and returned values are written to `results`.
+ */
+class BatchArray(
+    val name: String,
+    val type: ResolvedIdlType
+)
+
+/**
+ * Function has an additional `[name]Batch` variant,
+ * that invokes it for every element of input arrays with a single native call.
+ */
+fun ResolvedIdlOperation.isBatch(): Boolean =
+    this.attributes.any {
+        it is IdlExtendedAttribute.NoArgs && it.name == "Batch"
+    }
+
+fun IdlResolver.batchOperators() =
+    globalOperators().filter { it.isBatch() }
+
+fun batchName(function: ResolvedIdlOperation) =
+    "${function.name}Batch"
+
+fun ResolvedIdlOperation.batchArrays(): List<BatchArray> {
+    val arrays = args.map {
+        if(it.isPointer() || it.isDealloc())
+            throw UnsupportedOperationException("[Batch] function '$name' can have only primitive arguments")
+        BatchArray(it.name, it.type)
+    } + (if(type is ResolvedIdlType.Void) emptyList() else listOf(BatchArray("results", type)))
+
+    arrays.forEach {
+        if(!it.type.isPrimitive())
+            throw UnsupportedOperationException("[Batch] function '$name' can have only primitive arguments and return type")
+    }
+    return arrays
+}
+
+fun printBatchHeader(
+    builder: StringBuilder,
+    function: ResolvedIdlOperation,
+    isOverride: Boolean = false,
+    isActual: Boolean = false,
+    isExternal: Boolean = false,
+    isExpect: Boolean = false,
+    name: String = batchName(function),
+    forcePrintVoid: Boolean = false
+) = builder.apply {
+    if(isActual) append("actual ")
+    if(isExpect) append("expect ")
+    if(isExternal) append("external ")
+    if(isOverride) append("override ")
+
+    append("fun ")
+    append(name)
+    append("(")
+    function.batchArrays().forEach {
+        append(it.name)
+        append(": ")
+        append(it.type.toKotlinArrayType())
+        append(", ")
+    }
+    append("count: Int)")
+    if(forcePrintVoid)
+        append(": Unit")
+}
+
+/**
+ * Kotlin check, that prevents native code from writing outside of arrays
+ */
+fun batchRequire(function: ResolvedIdlOperation): String =
+    "require(count >= 0${function.batchArrays().joinToString("") { " && count <= ${it.name}.size" }}) " +
+            "{ \"count is out of arrays bounds\" }"
+
+/**
+ * C loop over arrays, named by [arrayName]
+ */
+fun batchLoop(
+    function: ResolvedIdlOperation,
+    arrayName: (String) -> String = { it },
+    count: String = "count"
+): String {
+    val call = "${function.name}(${function.args.joinToString { "${arrayName(it.name)}[__i]" }})"
+    val body = if(function.type is ResolvedIdlType.Void) call else "${arrayName("results")}[__i] = $call"
+    return "for(int32_t __i = 0; __i < $count; __i++)\n\t\t$body;"
+}
@@ -3,40 +3,192 @@ package com.huskerdev.nativekt.utils
 import com.huskerdev.nativekt.plugin.CMakeBuildType
 import org.apache.tools.ant.taskdefs.condition.Os
 import org.gradle.api.Project
+import org.gradle.api.provider.Provider
+import org.gradle.process.ExecOperations
 import java.io.File
 
+private const val CONFIGURE_STAMP = "native-kt-configure.txt"
+
+/**
+ * Placeholder of the directory with static libraries in linker arguments
+ */
+internal const val LINK_DIR = "\${LINK_DIR}"
+
+internal const val LINKER_OPTS_FILE = "linker-opts.txt"
+
+/**
+ * Writes `optimization.cmake` with LTO and PGO options to the generated project.
+ * It should be included before the native module, so options are applied to both of them.
+ */
+internal fun writeCmakeOptimization(cmakeDir: File) =
+    File(cmakeDir, "optimization.cmake").writeText($$"""
+        # Link-time optimization of native module and bindings
+        if(NATIVE_KT_LTO)
+            include(CheckIPOSupported)
+            check_ipo_supported()
+            set(CMAKE_INTERPROCEDURAL_OPTIMIZATION ON)
+        endif()
+
+        # Profile-guided optimization
+        if(NATIVE_KT_PROFILE_GENERATE)
+            add_compile_options("-fprofile-generate=${NATIVE_KT_PROFILE_GENERATE}")
+            add_link_options("-fprofile-generate=${NATIVE_KT_PROFILE_GENERATE}")
+        elseif(NATIVE_KT_PROFILE_USE)
+            add_compile_options("-fprofile-use=${NATIVE_KT_PROFILE_USE}" -Wno-profile-instr-unprofiled -Wno-profile-instr-out-of-date)
+        endif()
+    """.trimIndent())
+
+/**
+ * Configures CMake build.
+ *
+ * Skipped, when [buildDir] was already configured with the same command -
+ * in that case CMake checks changes of CMakeLists.txt by itself during the build.
+ */
 internal fun cmakeGen(
-    project: Project,
+    exec: ExecOperations,
     dir: File,
     buildDir: File,
     buildType: CMakeBuildType,
+    generator: String,
     args: Set<String> = emptySet()
 ){
     buildDir.mkdirs()
     val command = arrayListOf(
         "cmake \"${dir}\"",
         "-B \"$buildDir\"",
-        "-G \"${cmakeGenerator}\"",
+        "-G \"${generator}\"",
         "-DCMAKE_BUILD_TYPE=${buildType.cmakeName}"
     )
-    command += args
+    command += args.sorted()
+    val commandLine = command.joinToString(" ")
+
+    val stamp = File(buildDir, CONFIGURE_STAMP)
+    val cache = File(buildDir, "CMakeCache.txt")
+    if(cache.exists() && stamp.exists() && stamp.readText() == commandLine)
+        return
 
-    project.exec(command.joinToString(" "), buildDir)
+    // CMake can't change generator of existing build
+    if(cache.exists()) {
+        cache.delete()
+        File(buildDir, "CMakeFiles").deleteRecursively()
+    }
+    stamp.delete()
+
+    exec.exec(commandLine, buildDir)
+    stamp.writeText(commandLine)
 }
 
 internal fun cmakeBuild(
-    project: Project,
+    exec: ExecOperations,
+    buildDir: File,
+    parallelJobs: Int
+) = exec.exec("cmake --build \"$buildDir\" --parallel $parallelJobs", buildDir)
+
+/**
+ * Reads libraries, that are linked to the [target] (should be `SHARED`, as CMake generates link arguments only for them)
+ */
+internal fun cmakeLinkerOpts(
+    exec: ExecOperations,
     buildDir: File,
-) = project.exec("cmake --build \"$buildDir\"", buildDir)
+    target: String,
+    generator: String
+): List<String> {
+    val args = arrayListOf<String>()
+
+    val linkLibs = File(
+        buildDir,
+        "CMakeFiles/$target.dir/linkLibs.rsp"
+    )
+    val link = File(
+        buildDir,
+        "CMakeFiles/$target.dir/link.txt"
+    )
 
-private val cmakeGenerator: String = when {
+    if(linkLibs.exists()) {
+        args += linkLibs.readText()
+            .splitRespectingQuotes()
+            .map {
+                if(!it.startsWith("-l") && !File(it).isAbsolute)
+                    File(buildDir, it).absolutePath
+                else it
+            }
+            .filter { it !in setOf("-lpthread") }
+    } else {
+        // Ninja doesn't write link.txt, but can print the command
+        val linkCommand = if(link.exists())
+            link.readText()
+        else if(generator == "Ninja")
+            exec.exec("ninja -C \"$buildDir\" -t commands $target", silent = true).lines().last()
+        else ""
+
+        val parts = linkCommand
+            .splitRespectingQuotes()
+
+        var i = 0
+        while(i < parts.size) {
+            val part = parts[i]
+            if(part.endsWith(".a")) {
+                val path = if(!File(part).isAbsolute)
+                    File(buildDir, part).absolutePath
+                else part
+                args += path
+            }
+            if(part == "-framework") {
+                args += part
+                args += parts[++i]
+            }
+            i++
+        }
+    }
+    return args
+}
+
+private fun String.splitRespectingQuotes(): List<String> =
+    """[^\s"']+|"([^"]*)"|'([^']*)'""".toRegex()
+        .findAll(this)
+        .map { it.value.trim('"', '\'') }
+        .toList()
+
+/**
+ * Ninja is used when it is enabled and found in PATH
+ */
+internal fun cmakeGenerator(useNinja: Boolean): String = when {
+    useNinja && isInPath("ninja") -> "Ninja"
     Os.isFamily(Os.FAMILY_WINDOWS) -> "MinGW Makefiles"
     else -> "Unix Makefiles"
 }
 
+private fun isInPath(executable: String): Boolean {
+    val names = if(Os.isFamily(Os.FAMILY_WINDOWS))
+        listOf("$executable.exe", "$executable.bat")
+    else listOf(executable)
+
+    return System.getenv("PATH").orEmpty()
+        .split(File.pathSeparator)
+        .any { dir -> names.any { File(dir, it).canExecute() } }
+}
+
+/**
+ * Version of the compiler, used as a part of the build cache key.
+ * Toolchains without `clang` in PATH (MSVC, gcc) get `unknown`
+ */
+internal fun Project.clangVersion(): Provider<String> {
+    val version = providers.exec {
+        commandLine("clang", "--version")
+        isIgnoreExitValue = true
+    }.standardOutput.asText
+
+    // Process can't be started, when clang is not found
+    return providers.provider {
+        runCatching { version.get() }.getOrNull()
+            ?.lineSequence()?.firstOrNull { it.isNotBlank() }
+            ?: "unknown"
+    }
+}
+
 val libExtension = when {
     Os.isFamily(Os.FAMILY_WINDOWS) -> "dll"
     Os.isFamily(Os.FAMILY_MAC) -> "dylib"
     Os.isFamily(Os.FAMILY_UNIX) -> "so"
     else -> throw UnsupportedOperationException()
-}
\ No newline at end of file
+}
@@ -8,6 +8,8 @@ import com.huskerdev.webidl.jvm.iterator
 import com.huskerdev.webidl.resolver.WebIDLBuiltinKind
 import org.apache.tools.ant.taskdefs.condition.Os
 import org.gradle.api.Project
+import org.gradle.process.ExecOperations
+import java.io.ByteArrayOutputStream
 import java.io.File
 import kotlin.text.trim
 
@@ -18,8 +20,11 @@ fun NativeModule.dir(project: Project): File =
 fun NativeModule.idlFile(project: Project): File =
     File(dir(project), "api.ndl")
 
-fun NativeModule.idl(project: Project) = WebIDL.resolve(
-    iterable = idlFile(project).reader().iterator(),
+fun NativeModule.idl(project: Project) =
+    parseIdl(idlFile(project))
+
+fun parseIdl(file: File) = WebIDL.resolve(
+    iterable = file.reader().iterator(),
     env = object: WebIDLEnv {
         override val builtinTypes = hashMapOf(
             "void" to WebIDLBuiltinKind.VOID,
@@ -36,9 +41,14 @@ fun NativeModule.idl(project: Project) = WebIDL.resolve(
     }
 )
 
-fun Project.exec(command: String, workingDir: File? = null, silent: Boolean = false): String {
-    return project.providers.exec {
+fun ExecOperations.exec(command: String, workingDir: File? = null, silent: Boolean = false): String {
+    val standardOutput = ByteArrayOutputStream()
+    val standardError = ByteArrayOutputStream()
+
+    val result = exec {
         isIgnoreExitValue = true
+        this.standardOutput = standardOutput
+        this.errorOutput = standardError
         if(workingDir != null)
             this.workingDir = workingDir
 
@@ -46,14 +56,14 @@ fun Project.exec(command: String, workingDir: File? = null, silent: Boolean = fa
             commandLine("/bin/bash", "-c", command)
         else
             commandLine("cmd.exe", "/c", command)
-    }.run {
-        val output = standardOutput.asText.get()
-        if(!silent)
-            println(output)
-        if(result.get().exitValue != 0)
-            throw Exception("Failed to execute command (code=${result.get().exitValue}): \n$command\nError:\n${standardError.asText.get()}")
-        output.trim()
     }
+
+    val output = standardOutput.toString()
+    if(!silent)
+        println(output)
+    if(result.exitValue != 0)
+        throw Exception("Failed to execute command (code=${result.exitValue}): \n$command\nError:\n$standardError")
+    return output.trim()
 }
 
 fun currentTargetType(): TargetType = when {
@@ -10,6 +10,8 @@ import com.huskerdev.webidl.resolver.ResolvedIdlType
 import com.huskerdev.webidl.resolver.WebIDLBuiltinKind
 import org.gradle.internal.extensions.stdlib.capitalized
 
+const val NATIVE_BUFFER = "com.huskerdev.nativekt.NativeBuffer"
+
 fun asyncFunctionName(moduleName: String) =
     "loadLib${moduleName.capitalized()}"
 
@@ -24,8 +26,9 @@ fun ResolvedIdlType.toKotlinForeignType(): String {
 
 fun ResolvedIdlType.toKotlinType(
     stringAsBytes: Boolean = false,
-    callbackAsAny: Boolean = false
-): String = when(this) {
+    callbackAsAny: Boolean = false,
+    array: Boolean = false
+): String = if(array) toKotlinArrayType() else when(this) {
     is ResolvedIdlType.Void -> "Unit"
     is ResolvedIdlType.Default -> when(declaration) {
         is BuiltinIdlDeclaration -> when((declaration as BuiltinIdlDeclaration).kind) {
@@ -52,10 +55,32 @@ fun ResolvedIdlType.toKotlinType(
     else -> throw UnsupportedOperationException(toString())
 }
 
+fun ResolvedIdlType.toKotlinArrayType(): String = when(builtinKind()) {
+    WebIDLBuiltinKind.BYTE,
+    WebIDLBuiltinKind.UNSIGNED_BYTE -> "ByteArray"
+    WebIDLBuiltinKind.SHORT,
+    WebIDLBuiltinKind.UNSIGNED_SHORT -> "ShortArray"
+    WebIDLBuiltinKind.INT,
+    WebIDLBuiltinKind.UNSIGNED_INT -> "IntArray"
+    WebIDLBuiltinKind.LONG,
+    WebIDLBuiltinKind.UNSIGNED_LONG -> "LongArray"
+    WebIDLBuiltinKind.FLOAT,
+    WebIDLBuiltinKind.UNRESTRICTED_FLOAT -> "FloatArray"
+    WebIDLBuiltinKind.DOUBLE,
+    WebIDLBuiltinKind.UNRESTRICTED_DOUBLE -> "DoubleArray"
+    else -> throw UnsupportedOperationException("Arrays of '$this' are not supported")
+}
+
+private fun ResolvedIdlType.arrayElement(): ResolvedIdlType = also {
+    if(!it.isPrimitive())
+        throw UnsupportedOperationException("Arrays of '$it' are not supported")
+}
+
 fun ResolvedIdlType.toCType(
     longPtr: Boolean = false,
-    constChar: Boolean = true
-): String = when(this) {
+    constChar: Boolean = true,
+    array: Boolean = false
+): String = if(array) "${(if(isStruct()) this else arrayElement()).toCType()}*" else when(this) {
     is ResolvedIdlType.Void -> "void"
     is ResolvedIdlType.Default -> when(declaration) {
         is BuiltinIdlDeclaration -> when((declaration as BuiltinIdlDeclaration).kind) {
@@ -83,7 +108,9 @@ fun ResolvedIdlType.toCType(
 }
 
 
-fun ResolvedIdlType.toJNIType(): String = when(this) {
+fun ResolvedIdlType.toJNIType(
+    array: Boolean = false
+): String = if(array) "${arrayElement().toJNIType()}Array" else when(this) {
     is ResolvedIdlType.Void -> "void"
     is ResolvedIdlType.Default -> when(declaration) {
         is BuiltinIdlDeclaration -> when((declaration as BuiltinIdlDeclaration).kind) {
@@ -109,7 +136,9 @@ fun ResolvedIdlType.toJNIType(): String = when(this) {
     else -> throw UnsupportedOperationException(toString())
 }
 
-fun ResolvedIdlType.toJavaDesc(): String = when(this) {
+fun ResolvedIdlType.toJavaDesc(
+    array: Boolean = false
+): String = if(array) "[${arrayElement().toJavaDesc()}" else when(this) {
     is ResolvedIdlType.Void -> "V"
     is ResolvedIdlType.Default -> when(declaration) {
         is BuiltinIdlDeclaration -> when((declaration as BuiltinIdlDeclaration).kind) {
@@ -178,7 +207,13 @@ fun castJniToJava(type: ResolvedIdlType, content: String, dealloc: Boolean, useA
     }
 }
 
-fun castJavaToJNI(type: ResolvedIdlType, content: String, critical: Boolean, dealloc: Boolean, useArena: Boolean): String {
+fun castJavaToJNI(type: ResolvedIdlType, content: String, critical: Boolean, dealloc: Boolean, useArena: Boolean, array: Boolean = false, buffer: Boolean = false): String {
+    if(buffer)
+        return "(${type.toCType()}*)(*env)->GetDirectBufferAddress(env, $content)"
+    if(array) {
+        return if(critical) "(${type.toCType()}*)Arena__unwrapArrayCritical(&arena, $content)"
+        else "(${type.toCType()}*)Arena__unwrap${type.toKotlinArrayType()}(&arena, $content)"
+    }
     return when(type) {
         is ResolvedIdlType.Default -> when(val decl = type.declaration) {
             is BuiltinIdlDeclaration -> when(decl.kind) {
@@ -196,12 +231,34 @@ fun castJavaToJNI(type: ResolvedIdlType, content: String, critical: Boolean, dea
     }
 }
 
+fun ResolvedIdlType.builtinKind(): WebIDLBuiltinKind? =
+    ((this as? ResolvedIdlType.Default)?.declaration as? BuiltinIdlDeclaration)?.kind
+
 fun ResolvedIdlType.isString(): Boolean {
     if (this !is ResolvedIdlType.Default ||
         declaration !is BuiltinIdlDeclaration) return false
     return (declaration as BuiltinIdlDeclaration).kind == WebIDLBuiltinKind.STRING
 }
 
+/**
+ * Numeric type, that has a primitive array in Kotlin
+ */
+fun ResolvedIdlType.isPrimitive(): Boolean = when(builtinKind()) {
+    WebIDLBuiltinKind.BYTE,
+    WebIDLBuiltinKind.UNSIGNED_BYTE,
+    WebIDLBuiltinKind.SHORT,
+    WebIDLBuiltinKind.UNSIGNED_SHORT,
+    WebIDLBuiltinKind.INT,
+    WebIDLBuiltinKind.UNSIGNED_INT,
+    WebIDLBuiltinKind.LONG,
+    WebIDLBuiltinKind.UNSIGNED_LONG,
+    WebIDLBuiltinKind.FLOAT,
+    WebIDLBuiltinKind.UNRESTRICTED_FLOAT,
+    WebIDLBuiltinKind.DOUBLE,
+    WebIDLBuiltinKind.UNRESTRICTED_DOUBLE -> true
+    else -> false
+}
+
 fun ResolvedIdlType.isCallback(): Boolean =
     this is ResolvedIdlType.Default && declaration is ResolvedIdlCallbackFunction
 
@@ -210,11 +267,85 @@ fun ResolvedIdlOperation.isCritical(): Boolean =
         it is IdlExtendedAttribute.NoArgs && it.name == "Critical"
     }
 
+/**
+ * Non-critical function, that can be called by JVMCI with thread state transition.
+ * GC can move objects during such a call, so it can't use pointers to Java heap (strings, arrays) or callbacks
+ */
+fun ResolvedIdlOperation.isTransitionCompatible(): Boolean =
+    !isCritical() && !type.isString() && !type.isCallback() &&
+    args.none { it.isArray() || it.type.isString() || it.type.isCallback() }
+
+/**
+ * Function can block for a long time, so it has an additional `[name]Offloaded` variant on JVM,
+ * that is executed in a pool of platform threads, and doesn't pin the carrier of virtual thread
+ */
+fun ResolvedIdlOperation.isBlocking(): Boolean =
+    this.attributes.any {
+        it is IdlExtendedAttribute.NoArgs && it.name == "Blocking"
+    }
+
+fun offloadedName(function: ResolvedIdlOperation) =
+    "${function.name}Offloaded"
+
 fun IdlAttributedHolder.isDealloc(): Boolean =
     this.attributes.any {
         it is IdlExtendedAttribute.NoArgs && it.name == "Dealloc"
     }
 
+fun IdlAttributedHolder.isArray(): Boolean =
+    this.attributes.any {
+        it is IdlExtendedAttribute.NoArgs && it.name == "Array"
+    }
+
+fun IdlAttributedHolder.isBuffer(): Boolean =
+    this.attributes.any {
+        it is IdlExtendedAttribute.NoArgs && it.name == "Buffer"
+    }
+
+fun IdlAttributedHolder.isStructPointer(): Boolean =
+    this.attributes.any {
+        it is IdlExtendedAttribute.NoArgs && it.name == "Pointer"
+    }
+
+/**
+ * String is passed to C as a pointer with length in bytes (`const char* s, int32_t s_length`),
+ * so JVMCI can pass ASCII compact strings without copying
+ */
+fun IdlAttributedHolder.isView(): Boolean =
+    this.attributes.any {
+        it is IdlExtendedAttribute.NoArgs && it.name == "View"
+    }
+
+/**
+ * Evaluates every `[View]` argument of [function] once as `__<name>`,
+ * so its pointer and length are taken from the same value in [call]
+ */
+fun letViews(function: ResolvedIdlOperation, view: (String) -> String, call: String): String =
+    function.args.filter { it.isView() }.foldRight(call) { arg, result ->
+        "${view(arg.name)}.let { __${arg.name} -> $result }"
+    }
+
+/**
+ * Argument is passed to C as a pointer to the first element
+ */
+fun IdlAttributedHolder.isPointer(): Boolean =
+    isArray() || isBuffer() || isStructPointer()
+
+fun printCallbackTypealias(builder: StringBuilder, callbackFunction: ResolvedIdlCallbackFunction) = builder.apply {
+    // typealias TestCallback = (status: Int) -> Unit
+
+    append("\ntypealias ")
+    append(callbackFunction.name)
+    append(" = (")
+
+    callbackFunction.args.joinTo(builder) {
+        "${it.name}: ${it.type.toKotlinType()}"
+    }
+    append(") -> ")
+    append(callbackFunction.type.toKotlinType())
+    append("\n")
+}
+
 fun IdlResolver.globalOperators() =
     namespaces.values.flatMap { it.operations }
 
@@ -256,7 +387,10 @@ fun printFunctionHeader(
     function.args.forEachIndexed { index, arg ->
         append(arg.name)
         append(": ")
-        append(arg.type.toKotlinType(stringAsBytes, callbackAsAny))
+        append(
+            if(arg.isBuffer()) NATIVE_BUFFER
+            else arg.type.toKotlinType(stringAsBytes, callbackAsAny, arg.isArray())
+        )
 
         if(index != function.args.lastIndex)
             append(", ")
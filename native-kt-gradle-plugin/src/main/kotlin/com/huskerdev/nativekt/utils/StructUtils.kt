@@ -0,0 +1,85 @@
+package com.huskerdev.nativekt.utils
+
+import com.huskerdev.webidl.resolver.BuiltinIdlDeclaration
+import com.huskerdev.webidl.resolver.IdlResolver
+import com.huskerdev.webidl.resolver.ResolvedIdlDictionary
+import com.huskerdev.webidl.resolver.ResolvedIdlType
+import com.huskerdev.webidl.resolver.WebIDLBuiltinKind
+
+/**
+ * Field of the C struct, generated from IDL `dictionary`
+ */
+class StructField(
+    val name: String,
+    val type: ResolvedIdlType,
+    val offset: Int,
+    val size: Int,
+    val alignment: Int
+)
+
+/**
+ * Memory layout of the C struct.
+ *
+ * Offsets follow natural alignment, and 8-byte fields are explicitly aligned in the header,
+ * so the layout is the same on 32-bit targets.
+ */
+class StructLayout(
+    val name: String,
+    val fields: List<StructField>,
+    val size: Int,
+    val alignment: Int
+)
+
+fun IdlResolver.structs(): Collection<ResolvedIdlDictionary> =
+    dictionaries.values
+
+fun ResolvedIdlType.isStruct(): Boolean =
+    this is ResolvedIdlType.Default && declaration is ResolvedIdlDictionary
+
+fun ResolvedIdlType.structName(): String =
+    ((this as ResolvedIdlType.Default).declaration as ResolvedIdlDictionary).name
+
+fun ResolvedIdlDictionary.layout(): StructLayout {
+    val fields = arrayListOf<StructField>()
+    var offset = 0
+    var alignment = 1
+
+    members.forEach { member ->
+        val (size, fieldAlignment) = member.type.sizeAndAlignment(name, member.name)
+        offset = align(offset, fieldAlignment)
+        fields += StructField(member.name, member.type, offset, size, fieldAlignment)
+        offset += size
+        alignment = maxOf(alignment, fieldAlignment)
+    }
+    return StructLayout(name, fields, align(offset, alignment), alignment)
+}
+
+private fun ResolvedIdlType.sizeAndAlignment(struct: String, field: String): Pair<Int, Int> {
+    if(this is ResolvedIdlType.Default) {
+        when(val decl = declaration) {
+            is ResolvedIdlDictionary -> return decl.layout().run { size to alignment }
+            is BuiltinIdlDeclaration -> when(decl.kind) {
+                WebIDLBuiltinKind.BOOLEAN,
+                WebIDLBuiltinKind.BYTE,
+                WebIDLBuiltinKind.UNSIGNED_BYTE -> return 1 to 1
+                WebIDLBuiltinKind.CHAR,
+                WebIDLBuiltinKind.SHORT,
+                WebIDLBuiltinKind.UNSIGNED_SHORT -> return 2 to 2
+                WebIDLBuiltinKind.INT,
+                WebIDLBuiltinKind.UNSIGNED_INT,
+                WebIDLBuiltinKind.FLOAT,
+                WebIDLBuiltinKind.UNRESTRICTED_FLOAT -> return 4 to 4
+                WebIDLBuiltinKind.LONG,
+                WebIDLBuiltinKind.UNSIGNED_LONG,
+                WebIDLBuiltinKind.DOUBLE,
+                WebIDLBuiltinKind.UNRESTRICTED_DOUBLE -> return 8 to 8
+                else -> {}
+            }
+            else -> {}
+        }
+    }
+    throw UnsupportedOperationException("Type of '$struct.$field' is not supported in structs, only primitives and other structs are allowed")
+}
+
+private fun align(offset: Int, alignment: Int) =
+    (offset + alignment - 1) / alignment * alignment
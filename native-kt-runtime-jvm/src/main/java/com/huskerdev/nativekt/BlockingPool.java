@@ -0,0 +1,155 @@
+package com.huskerdev.nativekt;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Pool of platform threads, that execute <code>[Blocking]</code> functions of a module.
+ * <p>
+ * Long native call pins the carrier of virtual thread, so it is moved to this pool,
+ * while the caller is parked (or coroutine is suspended) until the result is ready.
+ * <br>
+ * Count of threads can be changed with <code>-Dnativekt.jvm.blockingThreads.[module]=N</code>,
+ * count of available processors is used when it is not positive
+ */
+public class BlockingPool {
+
+    private static final Map<String, BlockingPool> pools = new ConcurrentHashMap<>();
+
+    private final int threads;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong busyTime = new AtomicLong();
+    private final long createdTime = System.nanoTime();
+
+    private BlockingPool(String module, int threads) {
+        int count = Integer.getInteger("nativekt.jvm.blockingThreads." + module, threads);
+        this.threads = count > 0 ? count : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(this.threads, this.threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "native-kt " + module + " blocking #" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param module Name of the module
+     * @param threads Count of threads (0 - count of available processors). Used only when the pool is created
+     * @return Pool of the module, that is created once
+     */
+    public static BlockingPool get(String module, int threads) {
+        return pools.computeIfAbsent(module, name -> new BlockingPool(name, threads));
+    }
+
+    /**
+     * @return Pools of all modules by their names
+     */
+    public static Map<String, BlockingPool> getPools() {
+        return Collections.unmodifiableMap(new TreeMap<>(pools));
+    }
+
+    /**
+     * Executes the call in the pool, and waits for its result.
+     * Virtual thread is parked while waiting, so its carrier is not pinned.
+     *
+     * @throws InterruptedException when the waiting thread is interrupted.
+     *         Queued call is cancelled, but the call that is already executed can not be stopped
+     */
+    public <T> T call(Supplier<T> call) throws InterruptedException {
+        Future<T> future = executor.submit(() -> measure(call));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if(cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Executes the call in the pool, and passes its result or exception to the callback
+     *
+     * @return Future of the call, that can be cancelled while it is queued.
+     *         Callback is not called for the cancelled call
+     */
+    public <T> Future<?> call(Supplier<T> call, BiConsumer<T, Throwable> callback) {
+        return executor.submit(() -> {
+            T result;
+            try {
+                result = measure(call);
+            } catch (Throwable e) {
+                callback.accept(null, e);
+                return;
+            }
+            callback.accept(result, null);
+        });
+    }
+
+    private <T> T measure(Supplier<T> call) {
+        active.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            busyTime.addAndGet(System.nanoTime() - start);
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return Count of calls, that are waiting for a free thread
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return Count of threads, that are executing calls now
+     */
+    public int getActiveThreads() {
+        return active.get();
+    }
+
+    public int getMaxThreads() {
+        return threads;
+    }
+
+    public long getCompletedCalls() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * @return Total time of all calls in nanoseconds
+     */
+    public long getBusyTime() {
+        return busyTime.get();
+    }
+
+    /**
+     * @return Part of the pool capacity, that was used since its creation (from 0 to 1)
+     */
+    public double getUtilization() {
+        long elapsed = System.nanoTime() - createdTime;
+        return elapsed == 0 ? 0 : (double) busyTime.get() / ((double) elapsed * threads);
+    }
+}
@@ -0,0 +1,138 @@
+package com.huskerdev.nativekt;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Selects invoker (JNI or Foreign API) of a single function in adaptive mode (<code>-Dnativekt.jvm.forceInvoker=adaptive</code>).
+ * <p>
+ * First calls of the function are alternated between invokers and measured, then the fastest one is used for all next calls.
+ * Real calls are measured, so arguments are representative, and native code is never called with made up values.
+ * <p>
+ * Selected invoker is returned by the call site of the function, that returns <code>null</code> while the function is measured.
+ * After selection, the call site is rebound to a constant, so JIT can inline the selected invoker.
+ * <ul>
+ *     <li><code>-Dnativekt.jvm.adaptiveCalls=N</code> - count of measured calls (20000 by default), the same count is used for warm-up</li>
+ *     <li><code>-Dnativekt.jvm.invoker.[classPath].[function]=jni|foreign</code> - pins the invoker of the function</li>
+ * </ul>
+ */
+public class InvokerSelector {
+
+    private static final Map<String, InvokerSelector> selectors = new ConcurrentHashMap<>();
+
+    private static final int calls = Integer.getInteger("nativekt.jvm.adaptiveCalls", 20000);
+
+    private final Object[] candidates;
+    private final MutableCallSite site;
+    private final LongAdder[] time = { new LongAdder(), new LongAdder() };
+    private final LongAdder[] measured = { new LongAdder(), new LongAdder() };
+    private final LongAdder warmup = new LongAdder();
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private volatile NativeKtUtils.Invoker selectedType;
+    private volatile Object selected;
+
+    /**
+     * Creates a call site, that can be passed to the selector.
+     * Handle of the site should be stored in a static final field, so it is a constant for JIT.
+     *
+     * @param type Type of invokers
+     */
+    public static MutableCallSite callSite(Class<?> type) {
+        return new MutableCallSite(MethodHandles.constant(type, null));
+    }
+
+    /**
+     * @param name Full name of the function (<code>classPath.function</code>)
+     * @param site Call site from {@link #callSite(Class)}, that is rebound to the selected invoker
+     */
+    public InvokerSelector(String name, Object jni, Object foreign, MutableCallSite site) {
+        this.candidates = new Object[] { jni, foreign };
+        this.site = site;
+
+        String pinned = System.getProperty("nativekt.jvm.invoker." + name);
+        if(pinned != null) {
+            if(pinned.equals("jni"))
+                select(0);
+            else if(pinned.equals("foreign"))
+                select(1);
+            else throw new UnsupportedOperationException("Unknown native invoker: " + pinned);
+        }
+        selectors.put(name, this);
+    }
+
+    /**
+     * @return Selected invoker, or null while the function is measured
+     */
+    public Object getSelected() {
+        return selected;
+    }
+
+    /**
+     * @return Index of invoker for the next measured call
+     */
+    public int next() {
+        return counter.getAndIncrement() & 1;
+    }
+
+    public Object get(int index) {
+        return candidates[index];
+    }
+
+    /**
+     * Records duration of the call, that was made by {@link #get(int)} invoker.
+     * <br>
+     * Can be called concurrently, calls that are recorded during selection are ignored
+     */
+    public void record(int index, long nanos) {
+        if(selected != null)
+            return;
+        // Warm-up, while both paths are compiled by JIT
+        if(warmup.sum() < calls) {
+            warmup.increment();
+            return;
+        }
+
+        time[index].add(nanos);
+        measured[index].increment();
+
+        long count = measured[index].sum();
+        long otherCount = measured[1 - index].sum();
+        if(count >= calls / 2 && otherCount >= calls / 2) {
+            // Compared by average duration, because counts may differ by races
+            select(time[0].sum() * measured[1].sum() <= time[1].sum() * measured[0].sum() ? 0 : 1);
+        }
+    }
+
+    private synchronized void select(int index) {
+        if(selected != null)
+            return;
+        selectedType = index == 0 ? NativeKtUtils.Invoker.JNI : NativeKtUtils.Invoker.FOREIGN;
+        selected = candidates[index];
+
+        site.setTarget(MethodHandles.constant(site.type().returnType(), selected));
+        MutableCallSite.syncAll(new MutableCallSite[] { site });
+    }
+
+    /**
+     * Functions, that are called by JVMCI, don't use this selection, so they are listed only when pinned.
+     *
+     * @return Selected invokers of functions by their full names (<code>classPath.function</code>).
+     *         Functions, that are still measured, are not included
+     */
+    public static Map<String, NativeKtUtils.Invoker> getSelectedInvokers() {
+        Map<String, NativeKtUtils.Invoker> result = new TreeMap<>();
+        selectors.forEach((name, selector) -> {
+            NativeKtUtils.Invoker type = selector.selectedType;
+            if(type != null)
+                result.put(name, type);
+        });
+        return Collections.unmodifiableMap(result);
+    }
+}
@@ -0,0 +1,57 @@
+package com.huskerdev.nativekt;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Off-heap memory used by <code>NativeBuffer</code>.
+ * <p>
+ * Memory is allocated as direct {@link ByteBuffer}, so it can be accessed from JNI (<code>GetDirectBufferAddress</code>),
+ * Foreign API and JVMCI (by raw address) without copying.
+ */
+public class NativeBufferUtils {
+
+    private static final Unsafe unsafe;
+    private static final long addressOffset;
+
+    static {
+        try {
+            Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafe = (Unsafe) unsafeField.get(null);
+            addressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * @param size Size in bytes
+     * @return Direct buffer with native byte order
+     */
+    public static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @param buffer Direct buffer
+     * @return Address of the first byte
+     */
+    public static long address(ByteBuffer buffer) {
+        return unsafe.getLong(buffer, addressOffset);
+    }
+
+    /**
+     * Releases memory immediately, without waiting for GC.
+     * Buffer must not be used after this call.
+     *
+     * @param buffer Direct buffer, returned by {@link #allocate(int)}
+     */
+    public static void free(ByteBuffer buffer) {
+        unsafe.invokeCleaner(buffer);
+    }
+}
@@ -7,11 +7,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Helper class for native-kt.
@@ -68,9 +78,25 @@ public class NativeKtUtils {
         }
     }
 
+    /**
+     * Features of x86-64 micro-architecture levels (as named in /proc/cpuinfo).
+     * Index is level - 2.
+     */
+    private static final String[][] X64_LEVEL_FEATURES = {
+            { "cx16", "lahf_lm", "popcnt", "sse4_1", "sse4_2", "ssse3" },
+            { "avx", "avx2", "bmi1", "bmi2", "f16c", "fma", "abm", "movbe", "xsave" },
+            { "avx512f", "avx512bw", "avx512cd", "avx512dq", "avx512vl" }
+    };
+
+    private static int x64Level = 0;
+
     public enum Invoker {
         JNI,
-        FOREIGN
+        FOREIGN,
+        /**
+         * Every function uses the fastest of JNI and Foreign API invokers, see {@link InvokerSelector}
+         */
+        ADAPTIVE
     }
 
     /***
@@ -114,8 +140,12 @@ public class NativeKtUtils {
         String forced = System.getProperty("nativekt.jvm.forceInvoker");
         if(forced != null) {
             for(Invoker invoker : Invoker.values()) {
-                if (invoker.name().toLowerCase(Locale.US).equals(forced))
-                    return invoker;
+                if (!invoker.name().toLowerCase(Locale.US).equals(forced))
+                    continue;
+                // Adaptive mode has nothing to select from without Foreign API
+                if (invoker == Invoker.ADAPTIVE && !isForeignAvailable())
+                    return Invoker.JNI;
+                return invoker;
             }
             throw new UnsupportedOperationException("Unknown native invoker: " + forced);
         }
@@ -126,6 +156,61 @@ public class NativeKtUtils {
     }
 
     /**
+     * Detects x86-64 micro-architecture level of CPU (1 - baseline, 2 - v2, 3 - v3 with AVX2, 4 - v4 with AVX-512).
+     * Features are read from /proc/cpuinfo on Linux and from sysctl on macOS, other systems use baseline.
+     * <br>
+     * Can be forced with <code>-Dnativekt.jvm.x64Level=N</code>
+     *
+     * @return Level of the current CPU
+     */
+    public static synchronized int getX64Level() {
+        if(x64Level != 0)
+            return x64Level;
+
+        String forced = System.getProperty("nativekt.jvm.x64Level");
+        if(forced != null)
+            return x64Level = Integer.parseInt(forced);
+
+        Set<String> features = new HashSet<>();
+        try {
+            if(OS.current() == OS.LINUX) {
+                for(String line : Files.readAllLines(Paths.get("/proc/cpuinfo"))) {
+                    if(line.startsWith("flags")) {
+                        features.addAll(Arrays.asList(line.substring(line.indexOf(':') + 1).trim().split("\\s+")));
+                        break;
+                    }
+                }
+            } else if(OS.current() == OS.MACOS) {
+                Process process = new ProcessBuilder("sysctl", "-n",
+                        "machdep.cpu.features", "machdep.cpu.leaf7_features", "machdep.cpu.extfeatures").start();
+                try(InputStream input = process.getInputStream()) {
+                    String output = new String(input.readAllBytes()).toLowerCase(Locale.US).replace('.', '_');
+                    for(String feature : output.split("\\s+")) {
+                        // Names, that are different from Linux
+                        switch(feature) {
+                            case "lahf": feature = "lahf_lm"; break;
+                            case "lzcnt": feature = "abm"; break;
+                            case "cx16": case "cmpxchg16b": feature = "cx16"; break;
+                            case "avx1_0": feature = "avx"; break;
+                            case "osxsave": feature = "xsave"; break;
+                        }
+                        features.add(feature);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Use baseline
+        }
+
+        int level = 1;
+        while(level - 1 < X64_LEVEL_FEATURES.length && features.containsAll(Arrays.asList(X64_LEVEL_FEATURES[level - 1])))
+            level++;
+        return x64Level = level;
+    }
+
+    /**
+     * Loads the library from <code>java.library.path</code>, if it is installed there,
+     * otherwise extracts it from resources to the cache (see {@link #getCacheDir()}).
      *
      * @param baseName base library name, without prefix, extension and arch (e.g. 'some')
      * @param macosUniversal indicates if macOS lib is universal (fat)
@@ -141,30 +226,174 @@ public class NativeKtUtils {
         String arch = (macosUniversal && os == OS.MACOS) ?
                 "universal" : Arch.current().name().toLowerCase(Locale.US);
 
-        // Construct full lib file name
-        String fileName = "lib" + baseName + "-" + arch + "." + os.extension;
-
-        // Create tmp dir
-        File tempDir = Files.createTempDirectory("natives-kt").toFile();
-        File libPath = new File(tempDir, fileName);
-        libPath.deleteOnExit();
-        tempDir.deleteOnExit();
+        // Construct full lib file names, from the most suitable.
+        // The best x86-64 variant, that is supported by CPU, is preferred
+        List<String> fileNames = new ArrayList<>();
+        if(arch.equals("x64")) {
+            for(int level = getX64Level(); level >= 2; level--)
+                fileNames.add("lib" + baseName + "-x64-v" + level + "." + os.extension);
+        }
+        fileNames.add("lib" + baseName + "-" + arch + "." + os.extension);
+
+        // Use installed library
+        if(!System.getProperty("nativekt.jvm.useLibraryPath", "true").equals("false")) {
+            for(String fileName : fileNames) {
+                for(String dir : System.getProperty("java.library.path", "").split(File.pathSeparator)) {
+                    File file = new File(dir, fileName);
+                    if(!dir.isEmpty() && file.isFile()) {
+                        System.load(file.getAbsolutePath());
+                        return fileName;
+                    }
+                }
+            }
+        }
 
-        // Copy lib from resources
         ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         if(classLoader == null)
             classLoader = ClassLoader.getSystemClassLoader();
 
-        try(InputStream input = classLoader.getResourceAsStream(fileName)) {
-            if(input == null)
-                throw new NullPointerException("File '" + fileName + "' was not found in resources");
-            Files.copy(input, libPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        for(String fileName : fileNames) {
+            URL url = classLoader.getResource(fileName);
+            if(url == null)
+                continue;
+
+            File libPath;
+            try {
+                libPath = extractToCache(url, fileName);
+            } catch (IOException e) {
+                // Cache is not writable
+                libPath = extractToTempDir(url, fileName);
+            }
+
+            // Load library
+            System.load(libPath.getAbsolutePath());
+            return fileName;
+        }
+        throw new NullPointerException("File '" + fileNames.get(fileNames.size() - 1) + "' was not found in resources");
+    }
+
+    /**
+     * Directory, where libraries are extracted from resources. Can be changed with <code>-Dnativekt.jvm.cacheDir=path</code>
+     * <br>
+     * Default values:
+     * <ul>
+     *     <li>Windows - <code>%LOCALAPPDATA%/native-kt</code></li>
+     *     <li>macOS - <code>~/Library/Caches/native-kt</code></li>
+     *     <li>Linux - <code>$XDG_CACHE_HOME/native-kt</code> or <code>~/.cache/native-kt</code></li>
+     * </ul>
+     *
+     * @return Cache directory
+     */
+    public static File getCacheDir() {
+        String forced = System.getProperty("nativekt.jvm.cacheDir");
+        if(forced != null)
+            return new File(forced);
+
+        String home = System.getProperty("user.home");
+        switch(OS.current()) {
+            case WINDOWS: {
+                String localAppData = System.getenv("LOCALAPPDATA");
+                return new File(localAppData != null ? localAppData : home, "native-kt");
+            }
+            case MACOS:
+                return new File(home, "Library/Caches/native-kt");
+            default: {
+                String cacheHome = System.getenv("XDG_CACHE_HOME");
+                return new File(cacheHome != null ? cacheHome : home + "/.cache", "native-kt");
+            }
+        }
+    }
+
+    /**
+     * Extracts library to <code>[cache]/[SHA-256 of content]/[fileName]</code>, if it is not extracted yet.
+     * <br>
+     * Cached file is loaded only when its SHA-256 matches the library in resources,
+     * otherwise it is extracted again.
+     * <br>
+     * File is written to a temporary file first, and then atomically renamed,
+     * so processes never see partially written library, and can extract it concurrently.
+     * File name is kept, as JVMCI looks up the library by it on Windows.
+     */
+    private static File extractToCache(URL url, String fileName) throws IOException {
+        File cacheDir = getCacheDir();
+
+        String hash;
+        try(InputStream input = url.openStream()) {
+            hash = sha256(input);
         }
 
-        // Load library
-        System.load(libPath.getAbsolutePath());
+        File cached = new File(new File(cacheDir, hash), fileName);
+        if(isCached(cached, hash))
+            return cached;
 
-        return fileName;
+        Files.createDirectories(cached.getParentFile().toPath());
+        Path tempFile = Files.createTempFile(cacheDir.toPath(), fileName, ".tmp");
+        try {
+            try(InputStream input = url.openStream()) {
+                Files.copy(input, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // Resource could be replaced while it was read
+            try(InputStream input = Files.newInputStream(tempFile)) {
+                if(!hash.equals(sha256(input)))
+                    throw new IOException("Library '" + fileName + "' was changed during extraction");
+            }
+
+            try {
+                Files.move(tempFile, cached.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // Published by another process at the same time
+                if(!isCached(cached, hash))
+                    throw e;
+            }
+            return cached;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * @return true if the file exists, and its content has the expected SHA-256
+     */
+    private static boolean isCached(File file, String hash) throws IOException {
+        if(!file.isFile())
+            return false;
+        try(InputStream input = Files.newInputStream(file.toPath())) {
+            return hash.equals(sha256(input));
+        }
+    }
+
+    private static String sha256(InputStream input) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while((read = input.read(buffer)) != -1)
+            digest.update(buffer, 0, read);
+
+        StringBuilder builder = new StringBuilder();
+        for(byte b : digest.digest())
+            builder.append(String.format("%02x", b));
+        return builder.toString();
+    }
+
+    /**
+     * Copies library to a new temporary directory, that is deleted on exit
+     */
+    private static File extractToTempDir(URL url, String fileName) throws IOException {
+        File tempDir = Files.createTempDirectory("natives-kt").toFile();
+        File libPath = new File(tempDir, fileName);
+        libPath.deleteOnExit();
+        tempDir.deleteOnExit();
+
+        try(InputStream input = url.openStream()) {
+            Files.copy(input, libPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return libPath;
     }
 
     /**
@@ -195,6 +424,24 @@ public class NativeKtUtils {
      * @param paths Class paths to be accessible
      */
     public static void addExports(Module forModule, String ofModule, String[] paths){
+        addPackages("implAddExports", forModule, ofModule, paths);
+    }
+
+    /**
+     * Alternative to this JVM argument:<br>
+     * <code>
+     *     --add-opens java.base/java.lang=ALL-UNNAMED
+     * </code>
+     *
+     * @param forModule Target module
+     * @param ofModule Source module
+     * @param paths Class paths to be accessible by reflection
+     */
+    public static void addOpens(Module forModule, String ofModule, String[] paths){
+        addPackages("implAddOpens", forModule, ofModule, paths);
+    }
+
+    private static void addPackages(String implMethod, Module forModule, String ofModule, String[] paths){
         try {
             Module moduleOpt = ModuleLayer.boot().findModule(ofModule)
                 .orElseThrow(() -> new NullPointerException("Module '" + ofModule + "' is not presented"));
@@ -208,7 +455,7 @@ public class NativeKtUtils {
             long firstFieldOffset = (long) unsafeClass.getDeclaredMethod("objectFieldOffset", Field.class)
                     .invoke(unsafe, OffsetProvider.class.getDeclaredField("first"));
 
-            Method addOpensMethodImpl = Module.class.getDeclaredMethod("implAddExports", String.class, Module.class);
+            Method addOpensMethodImpl = Module.class.getDeclaredMethod(implMethod, String.class, Module.class);
 
             unsafeClass.getDeclaredMethod("putBoolean", Object.class, long.class, boolean.class)
                     .invoke(unsafe, addOpensMethodImpl, firstFieldOffset, true);
@@ -217,7 +464,7 @@ public class NativeKtUtils {
                 addOpensMethodImpl.invoke(moduleOpt, pkg, forModule);
 
         } catch (Throwable e) {
-            throw new UnsupportedOperationException("Could not add exports of '" + ofModule + "' to '" + forModule + "'", e);
+            throw new UnsupportedOperationException("Could not add packages of '" + ofModule + "' to '" + forModule + "'", e);
         }
     }
 
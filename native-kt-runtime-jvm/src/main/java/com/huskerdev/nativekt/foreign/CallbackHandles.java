@@ -0,0 +1,93 @@
+package com.huskerdev.nativekt.foreign;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free table of Kotlin callback objects.
+ * <p>
+ * Each object gets an integer handle, that is stored in the <code>m</code> field of the native callback struct,
+ * so upcall finds its target by a plain array read, without hashing and boxing.
+ * <p>
+ * Storage is split into fixed-size segments, which are never moved,
+ * and released handles are reused through a Treiber stack.
+ */
+class CallbackHandles {
+
+    private static final int SEGMENT_BITS = 10;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    private static class Segment {
+        final AtomicReferenceArray<Object> values = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        final AtomicIntegerArray next = new AtomicIntegerArray(SEGMENT_SIZE);
+    }
+
+    private final AtomicReferenceArray<Segment> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+    private final AtomicInteger nextFresh = new AtomicInteger();
+
+    /**
+     * Top of the released handles stack:
+     * higher 32 bits - modification counter (to avoid ABA), lower 32 bits - handle + 1 (0 if empty)
+     */
+    private final AtomicLong freeTop = new AtomicLong();
+
+    public int register(Object object) {
+        int handle = popFree();
+        if(handle == -1) {
+            handle = nextFresh.getAndIncrement();
+            if(handle >= MAX_SEGMENTS * SEGMENT_SIZE)
+                throw new IllegalStateException("Too many callbacks are allocated");
+        }
+        segment(handle).values.set(handle & SEGMENT_MASK, object);
+        return handle;
+    }
+
+    public Object get(int handle) {
+        Segment segment = segments.get(handle >>> SEGMENT_BITS);
+        return segment == null ? null : segment.values.get(handle & SEGMENT_MASK);
+    }
+
+    public void release(int handle) {
+        Segment segment = segments.get(handle >>> SEGMENT_BITS);
+        if(segment == null || segment.values.getAndSet(handle & SEGMENT_MASK, null) == null)
+            return;
+
+        long top;
+        do {
+            top = freeTop.get();
+            segment.next.set(handle & SEGMENT_MASK, (int) top);
+        } while(!freeTop.compareAndSet(top, stamp(top, handle + 1)));
+    }
+
+    private int popFree() {
+        while(true) {
+            long top = freeTop.get();
+            int index = (int) top;
+            if(index == 0)
+                return -1;
+
+            int handle = index - 1;
+            int next = segments.get(handle >>> SEGMENT_BITS).next.get(handle & SEGMENT_MASK);
+            if(freeTop.compareAndSet(top, stamp(top, next)))
+                return handle;
+        }
+    }
+
+    private Segment segment(int handle) {
+        int index = handle >>> SEGMENT_BITS;
+        Segment segment = segments.get(index);
+        if(segment == null) {
+            segments.compareAndSet(index, null, new Segment());
+            segment = segments.get(index);
+        }
+        return segment;
+    }
+
+    private static long stamp(long previous, int index) {
+        return (((previous >>> 32) + 1) << 32) | (index & 0xFFFFFFFFL);
+    }
+}
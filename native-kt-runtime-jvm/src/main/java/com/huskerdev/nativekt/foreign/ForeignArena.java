@@ -10,6 +10,8 @@ public class ForeignArena implements Closeable {
     private final Arena arena = Arena.ofConfined();
     private final ArrayList<MemorySegment> allocated = new ArrayList<>();
     private final ArrayList<MemorySegment> callbacks = new ArrayList<>();
+    private final ArrayList<MemorySegment> arrays = new ArrayList<>();
+    private final ArrayList<MemorySegment> arrayTargets = new ArrayList<>();
 
     private boolean notContains(long address) {
         for(MemorySegment segment : allocated)
@@ -24,6 +26,38 @@ public class ForeignArena implements Closeable {
         return result;
     }
 
+    private MemorySegment array(MemorySegment heap) {
+        MemorySegment result = arena.allocate(heap.byteSize(), 8);
+        result.copyFrom(heap);
+        arrays.add(result);
+        arrayTargets.add(heap);
+        return result;
+    }
+
+    public MemorySegment array(byte[] of) {
+        return array(MemorySegment.ofArray(of));
+    }
+
+    public MemorySegment array(short[] of) {
+        return array(MemorySegment.ofArray(of));
+    }
+
+    public MemorySegment array(int[] of) {
+        return array(MemorySegment.ofArray(of));
+    }
+
+    public MemorySegment array(long[] of) {
+        return array(MemorySegment.ofArray(of));
+    }
+
+    public MemorySegment array(float[] of) {
+        return array(MemorySegment.ofArray(of));
+    }
+
+    public MemorySegment array(double[] of) {
+        return array(MemorySegment.ofArray(of));
+    }
+
     public MemorySegment callback(MemorySegment callback) {
         allocated.add(callback);
         callbacks.add(callback);
@@ -39,15 +73,22 @@ public class ForeignArena implements Closeable {
 
     @SuppressWarnings("unchecked")
     public <T> T asCallback(MemorySegment segment, boolean dealloc) throws Throwable {
-        Object result = ForeignUtils.callbacks.get(segment.address());
-        if(dealloc && notContains(segment.address()))
-            ForeignUtils.freeHandle.invoke(segment);
+        Object result = ForeignUtils.callbackTarget(segment);
+        if(dealloc && notContains(segment.address())) {
+            if(result != null)
+                ForeignUtils.callbackFree(segment);
+            else
+                ForeignUtils.freeHandle.invoke(segment);
+        }
         return (T) result;
     }
 
     public void close() {
         for(MemorySegment callback : callbacks)
             ForeignUtils.callbackFree(callback);
+        // Native side may modify arrays, so copy them back
+        for(int i = 0; i < arrays.size(); i++)
+            arrayTargets.get(i).copyFrom(arrays.get(i));
         arena.close();
     }
 }
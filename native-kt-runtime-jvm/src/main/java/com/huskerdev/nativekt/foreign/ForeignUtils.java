@@ -5,20 +5,20 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.invoke.VarHandle;
-import java.util.HashMap;
 
 @SuppressWarnings("unused")
 public class ForeignUtils {
 
     private static final Linker linker = Linker.nativeLinker();
 
-    public static final HashMap<Long, Object> callbacks = new HashMap<>();
+    private static final CallbackHandles callbacks = new CallbackHandles();
 
     private static final StructLayout callbackStructLayout = MemoryLayout.structLayout(
             ValueLayout.ADDRESS.withName("m"),
             ValueLayout.ADDRESS.withName("invoke"),
             ValueLayout.ADDRESS.withName("free")
     );
+    private static final VarHandle callbackMVarHandle = callbackStructLayout.varHandle(MemoryLayout.PathElement.groupElement("m"));
     private static final VarHandle callbackInvokeVarHandle = callbackStructLayout.varHandle(MemoryLayout.PathElement.groupElement("invoke"));
     private static final VarHandle callbackFreeVarHandle = callbackStructLayout.varHandle(MemoryLayout.PathElement.groupElement("free"));
 
@@ -39,9 +39,94 @@ public class ForeignUtils {
             FunctionDescriptor.ofVoid(ValueLayout.ADDRESS)
     );
 
+    private static final MethodHandle mallocHandle = linker.downcallHandle(
+            linker.defaultLookup().find("malloc").orElseThrow(),
+            FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.JAVA_LONG)
+    );
+
+    /**
+     * Per-thread buffers for encoded strings.
+     * Slot is the index of string argument in a call, so arguments of the same call don't overlap.
+     */
+    private static final ThreadLocal<MemorySegment[]> stringSlots = ThreadLocal.withInitial(() -> new MemorySegment[4]);
+
+    /**
+     * Larger buffers are not kept by threads, so a single long string doesn't stay in memory
+     */
+    private static final int MAX_SLOT_SIZE = 64 * 1024;
+
+
+    /**
+     * Encodes string into the per-thread buffer without allocations (after the buffer is warmed up).
+     * Result is valid only until the next call with the same slot in the current thread,
+     * so it can be used only for critical calls.
+     * <br>
+     * Strings longer than {@link #MAX_SLOT_SIZE} are encoded into a new array.
+     */
+    public static MemorySegment heapStr(String str, int slot) {
+        // UTF-8 uses up to 3 bytes per UTF-16 char, plus null-terminator
+        long capacity = str.length() * 3L + 1;
+
+        MemorySegment buffer;
+        if(capacity > MAX_SLOT_SIZE)
+            buffer = MemorySegment.ofArray(new byte[(int) capacity]);
+        else {
+            MemorySegment[] slots = stringSlots.get();
+            if(slot >= slots.length) {
+                slots = java.util.Arrays.copyOf(slots, slot + 1);
+                stringSlots.set(slots);
+            }
+            buffer = slots[slot];
+            if(buffer == null || buffer.byteSize() < capacity)
+                buffer = slots[slot] = MemorySegment.ofArray(new byte[(int) Math.max(capacity, 64)]);
+        }
+
+        long length = encodeUTF8(str, buffer);
+        buffer.set(ValueLayout.JAVA_BYTE, length, (byte) 0);
+        return buffer.asSlice(0, length + 1);
+    }
+
+    /**
+     * Encodes string to UTF-8 (surrogate pairs are merged, unpaired surrogates are replaced with '?').
+     * Buffer must have at least <code>str.length() * 3</code> bytes.
+     * @return encoded length
+     */
+    static long encodeUTF8(String str, MemorySegment buffer) {
+        int length = str.length();
+        long pos = 0;
+        int i = 0;
+
+        // ASCII fast path
+        for(; i < length; i++) {
+            char c = str.charAt(i);
+            if(c >= 0x80)
+                break;
+            buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) c);
+        }
 
-    public static MemorySegment heapStr(String str) {
-        return MemorySegment.ofArray(str.getBytes());
+        for(; i < length; i++) {
+            char c = str.charAt(i);
+            if(c < 0x80) {
+                buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) c);
+            } else if(c < 0x800) {
+                buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) (0xC0 | (c >> 6)));
+                buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) (0x80 | (c & 0x3F)));
+            } else if(Character.isSurrogate(c)) {
+                if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, str.charAt(++i));
+                    buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) (0xF0 | (cp >> 18)));
+                    buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) (0x80 | (cp & 0x3F)));
+                } else
+                    buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) '?');
+            } else {
+                buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) (0xE0 | (c >> 12)));
+                buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.set(ValueLayout.JAVA_BYTE, pos++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return pos;
     }
 
     public static MethodHandle lookup(String name, boolean isCritical, ValueLayout retType, ValueLayout... argTypes) {
@@ -57,26 +142,25 @@ public class ForeignUtils {
             return linker.downcallHandle(address, function);
     }
 
-    public static MemorySegment createCallback(
-            Object callback,
-            MethodHandle invokeHandle,
-            FunctionDescriptor invokeDesc
-    ){
-        Arena arena = Arena.global();
-        MemorySegment struct = arena.allocate(callbackStructLayout);
-        callbacks.put(struct.address(), callback);
-
-        callbackInvokeVarHandle.set(struct, 0L, linker.upcallStub(
-                invokeHandle,
-                invokeDesc,
-                arena
-        ));
+    /**
+     * Creates an invoke function for the callback type.
+     * <p>
+     * Target object is found by the callback struct, so a single stub is shared by all callbacks of the same type.
+     */
+    public static MemorySegment upcallStub(MethodHandle invokeHandle, FunctionDescriptor invokeDesc) {
+        return linker.upcallStub(invokeHandle, invokeDesc, Arena.global());
+    }
+
+    public static MemorySegment createCallback(Object callback, MemorySegment invokeStub) {
+        MemorySegment struct = malloc(callbackStructLayout.byteSize());
+        callbackMVarHandle.set(struct, 0L, MemorySegment.ofAddress(callbacks.register(callback)));
+        callbackInvokeVarHandle.set(struct, 0L, invokeStub);
         callbackFreeVarHandle.set(struct, 0L, callbackFree);
         return struct;
     }
 
     public static void callbackFree(MemorySegment callback) {
-        callbacks.remove(callback.address());
+        callbacks.release(callbackHandle(callback));
         try {
             freeHandle.invoke(callback);
         } catch (Throwable e) {
@@ -84,8 +168,45 @@ public class ForeignUtils {
         }
     }
 
+    /**
+     * Allocates string with <code>malloc</code>, so native code owns it and releases with <code>free</code>.
+     * Used for strings returned from callbacks, the same as <code>strdup</code> in JNI and Kotlin/Native.
+     */
     public static MemorySegment cstr(String of) {
-        return Arena.global().allocateFrom(of);
+        // Encoded directly, so per-thread buffers are not used by upcalls
+        MemorySegment result = malloc(of.length() * 3L + 1);
+        long length = encodeUTF8(of, result);
+        result.set(ValueLayout.JAVA_BYTE, length, (byte) 0);
+        return result;
+    }
+
+    private static MemorySegment malloc(long size) {
+        try {
+            MemorySegment result = (MemorySegment) mallocHandle.invokeExact(size);
+            if(result.address() == 0)
+                throw new OutOfMemoryError("Failed to allocate " + size + " bytes of native memory");
+            return result.reinterpret(size);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int callbackHandle(MemorySegment callback) {
+        MemorySegment struct = callback.reinterpret(callbackStructLayout.byteSize());
+        return (int) ((MemorySegment) callbackMVarHandle.get(struct, 0L)).address();
+    }
+
+    /**
+     * Finds Kotlin object of the callback, created by {@link #createCallback}.
+     * Returns <code>null</code> for callbacks created in native code.
+     */
+    public static Object callbackTarget(MemorySegment callback) {
+        MemorySegment struct = callback.reinterpret(callbackStructLayout.byteSize());
+        if(((MemorySegment) callbackFreeVarHandle.get(struct, 0L)).address() != callbackFree.address())
+            return null;
+        return callbacks.get((int) ((MemorySegment) callbackMVarHandle.get(struct, 0L)).address());
     }
 
     public static String asString(MemorySegment segment, boolean dealloc) throws Throwable {
@@ -97,9 +218,13 @@ public class ForeignUtils {
 
     @SuppressWarnings("unchecked")
     public static <T> T asCallback(MemorySegment segment, boolean dealloc) throws Throwable{
-        Object result = callbacks.get(segment.address());
-        if(dealloc)
-            freeHandle.invoke(segment);
+        Object result = callbackTarget(segment);
+        if(dealloc) {
+            if(result != null)
+                callbackFree(segment);
+            else
+                freeHandle.invoke(segment);
+        }
         return (T) result;
     }
 
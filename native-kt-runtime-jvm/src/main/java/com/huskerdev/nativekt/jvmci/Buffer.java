@@ -33,6 +33,13 @@ public class Buffer {
         data.putLong(b);
     }
 
+    /**
+     * Overwrites already emitted int, e.g. displacement of a forward jump
+     */
+    public void patchInt(int position, int b) {
+        data.putInt(position, b);
+    }
+
     public int position() {
         return data.position();
     }
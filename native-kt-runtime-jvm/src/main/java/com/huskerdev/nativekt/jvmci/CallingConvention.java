@@ -1,44 +1,108 @@
 package com.huskerdev.nativekt.jvmci;
 
 import com.huskerdev.nativekt.NativeKtUtils;
+import com.huskerdev.nativekt.jvmci.conventions.AMD64SysVCallingConvention;
 import com.huskerdev.nativekt.jvmci.conventions.AMD64WindowsCallingConvention;
 import com.huskerdev.nativekt.jvmci.conventions.ARM64CallingConvention;
+import jdk.vm.ci.code.BytecodeFrame;
+import jdk.vm.ci.code.DebugInfo;
+import jdk.vm.ci.code.Location;
+import jdk.vm.ci.code.StackSlot;
+import jdk.vm.ci.code.VirtualObject;
+import jdk.vm.ci.code.site.Infopoint;
+import jdk.vm.ci.code.site.InfopointReason;
 import jdk.vm.ci.hotspot.*;
 import jdk.vm.ci.meta.JavaKind;
+import jdk.vm.ci.meta.JavaValue;
 import jdk.vm.ci.meta.MetaAccessProvider;
+import jdk.vm.ci.meta.PlatformKind;
+import jdk.vm.ci.meta.ValueKind;
 import jdk.vm.ci.runtime.JVMCI;
 import jdk.vm.ci.runtime.JVMCIBackend;
 
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 abstract public class CallingConvention {
 
-    public static CallingConvention current() {
+    private static CallingConvention current;
+
+    /**
+     * @return Calling convention of the current platform (created once)
+     */
+    public static synchronized CallingConvention current() {
+        if(current != null)
+            return current;
+
         switch (NativeKtUtils.Arch.current()) {
-            case ARM64: return new ARM64CallingConvention();
+            case ARM64: return current = new ARM64CallingConvention();
             case X64: {
                 if(NativeKtUtils.OS.current() == NativeKtUtils.OS.WINDOWS)
-                    return new AMD64WindowsCallingConvention();
+                    return current = new AMD64WindowsCallingConvention();
+                else
+                    return current = new AMD64SysVCallingConvention();
             }
             default: throw new UnsupportedOperationException("Unsupported CPU architecture");
         }
     }
 
+    /**
+     * Generated code of a Java signature, where only the call of native function differs
+     */
+    private static class Template {
+        final byte[] code;
+        final int callOffset;
+        final int callLength;
+
+        Template(byte[] code, int callOffset, int callLength) {
+            this.code = code;
+            this.callOffset = callOffset;
+            this.callLength = callLength;
+        }
+    }
+
+    private final Map<MethodType, Template> templates = new ConcurrentHashMap<>();
+
     protected final JVMCIBackend jvmci = JVMCI.getRuntime().getHostJVMCIBackend();
     protected final MetaAccessProvider meta = jvmci.getMetaAccess();
     protected final HotSpotVMConfigAccess config = new HotSpotVMConfigAccess(HotSpotJVMCIRuntime.runtime().getConfigStore());
 
     protected final int ENTRY_BARRIER_PATCH = config.getConstant("CodeInstaller::ENTRY_BARRIER_PATCH", Integer.class);
 
+    /**
+     * Generates code of the stub. Functions with the same signature share the code,
+     * so only the call is emitted again, when its length is the same.
+     */
     public byte[] createNativeCall(Method method, long address) {
+        MethodType signature = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+
+        Template template = templates.get(signature);
+        if(template != null) {
+            Buffer call = new Buffer();
+            emitCall(call, method, address);
+            byte[] callCode = call.finish();
+
+            if(callCode.length == template.callLength) {
+                byte[] code = template.code.clone();
+                System.arraycopy(callCode, 0, code, template.callOffset, callCode.length);
+                return code;
+            }
+        }
+
         Buffer buf = new Buffer();
 
         emitPrologue(buf, method);
         emitConversion(buf, method);
+        int callOffset = buf.position();
         emitCall(buf, method, address);
+        int callLength = buf.position() - callOffset;
         emitEpilogue(buf, method);
 
-        return buf.finish();
+        byte[] code = buf.finish();
+        templates.put(signature, new Template(code, callOffset, callLength));
+        return code;
     }
 
     abstract public HotSpotCompiledNmethod createNMethod(
@@ -47,6 +111,65 @@ abstract public class CallingConvention {
             HotSpotResolvedJavaMethod resolvedMethod
     );
 
+    /**
+     * @return true, if {@link #createTransitionNMethod} is implemented for this platform
+     */
+    public boolean supportsTransitions() {
+        return false;
+    }
+
+    /**
+     * Creates stub, that switches the thread to native state for the time of the call,
+     * like a JNI wrapper does, but without <code>JNIEnv</code> and handles.
+     * <p>
+     * Safepoints and GC are not blocked by such a call, so arguments must not point to Java heap.
+     *
+     * @param address Address of the native function
+     * @param blockAddress Function <code>void(JNIEnv*)</code>, that is called in native state,
+     *                     when thread can not return to Java immediately (safepoint, suspension)
+     */
+    public HotSpotCompiledNmethod createTransitionNMethod(
+            Method method,
+            long address,
+            long blockAddress,
+            ThreadState state,
+            HotSpotResolvedJavaMethod resolvedMethod
+    ) {
+        throw new UnsupportedOperationException("Thread state transitions are not implemented for " + getClass().getSimpleName());
+    }
+
+    /**
+     * Stack walking stops at the last Java frame, that is the stub itself.
+     * It contains no oops, so its reference map is empty.
+     */
+    protected static Infopoint createCallSafepoint(int pcOffset, HotSpotResolvedJavaMethod resolvedMethod) {
+        DebugInfo debugInfo = new DebugInfo(
+                new BytecodeFrame(null, resolvedMethod, 0, false, false, new JavaValue[0], new JavaKind[0], 0, 0, 0),
+                new VirtualObject[0]
+        );
+        debugInfo.setReferenceMap(new HotSpotReferenceMap(new Location[0], new Location[0], new int[0], 8));
+        return new Infopoint(pcOffset, debugInfo, InfopointReason.SAFEPOINT);
+    }
+
+    /**
+     * Word-sized slot in the frame (relative to stack pointer).
+     * Code with safepoints must have it for the original pc in case of deoptimization.
+     */
+    protected StackSlot createStackSlot(int offset) {
+        return StackSlot.get(new WordKind(jvmci.getTarget().arch.getWordKind()), offset, false);
+    }
+
+    private static class WordKind extends ValueKind<WordKind> {
+        WordKind(PlatformKind kind) {
+            super(kind);
+        }
+
+        @Override
+        public WordKind changeType(PlatformKind kind) {
+            return new WordKind(kind);
+        }
+    }
+
     abstract protected void emitPrologue(Buffer buf, Method method);
 
     abstract protected void emitConversion(Buffer buf, Method method);
@@ -7,6 +7,9 @@ import jdk.vm.ci.meta.*;
 import jdk.vm.ci.runtime.JVMCI;
 import jdk.vm.ci.runtime.JVMCIBackend;
 import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToLongFunction;
 
 import static com.huskerdev.nativekt.NativeKtUtils.addExports;
 
@@ -27,10 +30,26 @@ public class JVMCIUtils {
         }
     }
 
+    private static JVMCIBackend backend;
+    private static ExecutorService installer;
+    private static ThreadState threadState;
+
+    private static synchronized JVMCIBackend getBackend() {
+        if(backend == null)
+            backend = JVMCI.getRuntime().getHostJVMCIBackend();
+        return backend;
+    }
+
+    /**
+     * Replaces code of the native method with a direct call of the function by [address].
+     *
+     * @param method Static native method
+     * @param address Address of the native function
+     */
     public static void linkNativeCall(Method method, long address){
         CallingConvention convention = CallingConvention.current();
 
-        JVMCIBackend jvmci = JVMCI.getRuntime().getHostJVMCIBackend();
+        JVMCIBackend jvmci = getBackend();
         HotSpotResolvedJavaMethod resolvedMethod = (HotSpotResolvedJavaMethod) jvmci.getMetaAccess().lookupJavaMethod(method);
 
         jvmci.getCodeCache().setDefaultCode(resolvedMethod, convention.createNMethod(
@@ -39,4 +58,81 @@ public class JVMCIUtils {
                 resolvedMethod
         ));
     }
+
+    /**
+     * Prepares stubs with thread state transition, that are used for non-critical functions.
+     * <br>
+     * Can be disabled with <code>-Dnativekt.jvm.disableJVMCITransitions=true</code>
+     *
+     * @param jvmSymbols Returns address of exported symbol of <code>libjvm</code>, or 0
+     * @return true, if transitions are supported by the current platform and JVM
+     */
+    public static synchronized boolean initTransitions(ToLongFunction<String> jvmSymbols) {
+        if(threadState != null)
+            return true;
+        if(System.getProperty("nativekt.jvm.disableJVMCITransitions", "false").equals("true") ||
+                !CallingConvention.current().supportsTransitions())
+            return false;
+
+        try {
+            threadState = new ThreadState(new VMStructs(jvmSymbols));
+            return true;
+        } catch (Throwable e) {
+            // JVM doesn't export required structs, or JVMCI rejects them (JVMCIError),
+            // so functions are called by parent invoker
+            return false;
+        }
+    }
+
+    /**
+     * Replaces code of the native method with a call of the function by [address],
+     * that switches the thread to native state, like JNI does.
+     * <br>
+     * {@link #initTransitions} must be called before.
+     *
+     * @param method Static native method
+     * @param address Address of the native function
+     * @param blockAddress Address of the function, that is called when thread can not return to Java immediately
+     */
+    public static void linkTransitionCall(Method method, long address, long blockAddress){
+        CallingConvention convention = CallingConvention.current();
+
+        JVMCIBackend jvmci = getBackend();
+        HotSpotResolvedJavaMethod resolvedMethod = (HotSpotResolvedJavaMethod) jvmci.getMetaAccess().lookupJavaMethod(method);
+
+        jvmci.getCodeCache().setDefaultCode(resolvedMethod, convention.createTransitionNMethod(
+                method,
+                address,
+                blockAddress,
+                threadState,
+                resolvedMethod
+        ));
+    }
+
+    /**
+     * Runs installation of JVMCI stubs.
+     * <br>
+     * With <code>-Dnativekt.jvm.jvmciBackground=true</code> it is executed in a background thread,
+     * so library loading is not blocked, and calls are handled by JNI or Foreign API until stubs are installed.
+     *
+     * @param install Creates JVMCI invoker and replaces the current one
+     */
+    public static void install(Runnable install) {
+        if(!System.getProperty("nativekt.jvm.jvmciBackground", "false").equals("true")) {
+            install.run();
+            return;
+        }
+
+        synchronized (JVMCIUtils.class) {
+            if(installer == null) {
+                installer = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "native-kt JVMCI installer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        // Exceptions are reported by the default handler of the thread
+        installer.execute(install);
+    }
 }
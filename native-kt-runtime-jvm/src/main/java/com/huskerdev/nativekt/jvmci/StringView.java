@@ -0,0 +1,90 @@
+package com.huskerdev.nativekt.jvmci;
+
+import com.huskerdev.nativekt.NativeKtUtils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 bytes of a string, that are passed to <code>[View]</code> arguments of JVMCI functions.
+ * <p>
+ * Compact string with only ASCII characters (LATIN1 coder) already stores its UTF-8 representation,
+ * so its internal array is passed to native code without copying.
+ * Other strings are encoded to a new array.
+ */
+public class StringView {
+
+    private static final byte LATIN1 = 0;
+
+    /**
+     * Strings that are shorter are scanned every time, as it is cheaper than a cache lookup
+     */
+    private static final int CACHED_LENGTH = 64;
+    private static final int CACHE_SIZE = 256;
+
+    private static final VarHandle VALUE;
+    private static final VarHandle CODER;
+
+    /**
+     * Recently checked ASCII strings, indexed by identity hash.
+     * Races can only lose an entry, so the string will be checked again
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final WeakReference<String>[] asciiCache = new WeakReference[CACHE_SIZE];
+
+    static {
+        VarHandle value = null, coder = null;
+        try {
+            if(NativeKtUtils.isAutoExportEnabled())
+                NativeKtUtils.addOpens(StringView.class.getModule(), "java.base", new String[] { "java.lang" });
+
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(String.class, MethodHandles.lookup());
+            value = lookup.findVarHandle(String.class, "value", byte[].class);
+            coder = lookup.findVarHandle(String.class, "coder", byte.class);
+        } catch (Throwable e) {
+            // Layout of String is unknown or not accessible, strings are always copied
+            value = coder = null;
+        }
+        VALUE = value;
+        CODER = coder;
+    }
+
+    /**
+     * Native code must not modify returned array, and must not use it after the call.
+     *
+     * @return UTF-8 bytes of the string (without null-terminator)
+     */
+    public static byte[] of(String string) {
+        if(CODER != null && (byte) CODER.get(string) == LATIN1) {
+            byte[] value = (byte[]) VALUE.get(string);
+            if(isAscii(string, value))
+                return value;
+        }
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean isAscii(String string, byte[] value) {
+        if(value.length < CACHED_LENGTH)
+            return isAscii(value);
+
+        int index = System.identityHashCode(string) & (CACHE_SIZE - 1);
+        WeakReference<String> cached = asciiCache[index];
+        if(cached != null && cached.get() == string)
+            return true;
+
+        if(!isAscii(value))
+            return false;
+        asciiCache[index] = new WeakReference<>(string);
+        return true;
+    }
+
+    private static boolean isAscii(byte[] value) {
+        for (byte b : value) {
+            if (b < 0)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+package com.huskerdev.nativekt.jvmci;
+
+import jdk.vm.ci.hotspot.HotSpotJVMCIRuntime;
+import jdk.vm.ci.hotspot.HotSpotVMConfigAccess;
+
+/**
+ * Offsets of <code>JavaThread</code> and related constants, that are used by stubs with thread state transition.
+ * <p>
+ * Most of them are exported by JVMCI, others are read from {@link VMStructs}.
+ */
+public class ThreadState {
+
+    public final int stateOffset;
+    public final int inNative;
+    public final int inNativeTrans;
+    public final int inJava;
+
+    public final int lastJavaSpOffset;
+    public final int lastJavaPcOffset;
+    public final int pollingWordOffset;
+    public final int jniEnvironmentOffset;
+    public final int pendingExceptionOffset;
+    public final int activeHandlesOffset;
+    public final int handleBlockTopOffset;
+    public final int suspendFlagsOffset;
+
+    /**
+     * Offset of <code>StackOverflow::_stack_guard_state</code> in <code>JavaThread</code>
+     */
+    public final int stackGuardStateOffset;
+    public final int stackGuardYellowReservedDisabled;
+
+    /**
+     * Address of <code>SharedRuntime::exception_handler_for_return_address</code>
+     */
+    public final long exceptionHandlerForReturnAddress;
+
+    ThreadState(VMStructs structs) {
+        HotSpotVMConfigAccess config = new HotSpotVMConfigAccess(HotSpotJVMCIRuntime.runtime().getConfigStore());
+
+        stateOffset = structs.getFieldOffset("JavaThread::_thread_state");
+        inNative = structs.getConstant("_thread_in_native");
+        inNativeTrans = structs.getConstant("_thread_in_native_trans");
+        inJava = structs.getConstant("_thread_in_Java");
+
+        int anchor = config.getFieldOffset("JavaThread::_anchor", Integer.class, "JavaFrameAnchor");
+        lastJavaSpOffset = anchor + config.getFieldOffset("JavaFrameAnchor::_last_Java_sp", Integer.class, "intptr_t*");
+        lastJavaPcOffset = anchor + config.getFieldOffset("JavaFrameAnchor::_last_Java_pc", Integer.class, "address");
+
+        pollingWordOffset = config.getFieldOffset("JavaThread::_poll_data", Integer.class, "SafepointMechanism::ThreadData") +
+                config.getFieldOffset("SafepointMechanism::ThreadData::_polling_word", Integer.class, "volatile uintptr_t");
+        jniEnvironmentOffset = config.getFieldOffset("JavaThread::_jni_environment", Integer.class, "JNIEnv");
+        pendingExceptionOffset = config.getFieldOffset("ThreadShadow::_pending_exception", Integer.class, "oop");
+
+        activeHandlesOffset = structs.getFieldOffset("JavaThread::_active_handles");
+        handleBlockTopOffset = structs.getFieldOffset("JNIHandleBlock::_top");
+        suspendFlagsOffset = structs.getFieldOffset("JavaThread::_suspend_flags");
+
+        // Guard state is not exported by JDK 21, but it is the first field of StackOverflow (JDK 16+),
+        // that is followed by the exported limit with pointer alignment
+        if(structs.hasField("JavaThread::_stack_overflow_state._stack_guard_state"))
+            stackGuardStateOffset = structs.getFieldOffset("JavaThread::_stack_overflow_state._stack_guard_state");
+        else stackGuardStateOffset = config.getFieldOffset("JavaThread::_stack_overflow_state._stack_overflow_limit", Integer.class, "address") - 8;
+        stackGuardYellowReservedDisabled = structs.getConstant("StackOverflow::stack_guard_yellow_reserved_disabled", 2);
+
+        exceptionHandlerForReturnAddress = config.getAddress("SharedRuntime::exception_handler_for_return_address");
+    }
+}
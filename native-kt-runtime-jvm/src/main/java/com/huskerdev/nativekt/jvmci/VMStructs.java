@@ -0,0 +1,104 @@
+package com.huskerdev.nativekt.jvmci;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Offsets and constants of HotSpot, that are not exported by JVMCI.
+ * <p>
+ * They are read from <code>gHotSpotVMStructs</code> and <code>gHotSpotVMIntConstants</code> tables of <code>libjvm</code>,
+ * the same way as Serviceability Agent does.
+ */
+public class VMStructs {
+
+    private static final Unsafe unsafe;
+
+    static {
+        try {
+            Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafe = (Unsafe) unsafeField.get(null);
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Map<String, Long> fields = new HashMap<>();
+    private final Map<String, Integer> constants = new HashMap<>();
+
+    /**
+     * @param symbols Returns address of exported symbol of <code>libjvm</code>, or 0
+     */
+    public VMStructs(ToLongFunction<String> symbols) {
+        long entry = unsafe.getAddress(symbol(symbols, "gHotSpotVMStructs"));
+        long typeNameOffset = unsafe.getLong(symbol(symbols, "gHotSpotVMStructEntryTypeNameOffset"));
+        long fieldNameOffset = unsafe.getLong(symbol(symbols, "gHotSpotVMStructEntryFieldNameOffset"));
+        long isStaticOffset = unsafe.getLong(symbol(symbols, "gHotSpotVMStructEntryIsStaticOffset"));
+        long offsetOffset = unsafe.getLong(symbol(symbols, "gHotSpotVMStructEntryOffsetOffset"));
+        long stride = unsafe.getLong(symbol(symbols, "gHotSpotVMStructEntryArrayStride"));
+
+        // Table ends with empty entry
+        for(; unsafe.getAddress(entry + typeNameOffset) != 0; entry += stride) {
+            if(unsafe.getInt(entry + isStaticOffset) != 0)
+                continue;
+            String name = readString(unsafe.getAddress(entry + typeNameOffset)) + "::" +
+                    readString(unsafe.getAddress(entry + fieldNameOffset));
+            fields.put(name, unsafe.getLong(entry + offsetOffset));
+        }
+
+        entry = unsafe.getAddress(symbol(symbols, "gHotSpotVMIntConstants"));
+        long nameOffset = unsafe.getLong(symbol(symbols, "gHotSpotVMIntConstantEntryNameOffset"));
+        long valueOffset = unsafe.getLong(symbol(symbols, "gHotSpotVMIntConstantEntryValueOffset"));
+        stride = unsafe.getLong(symbol(symbols, "gHotSpotVMIntConstantEntryArrayStride"));
+
+        for(; unsafe.getAddress(entry + nameOffset) != 0; entry += stride)
+            constants.put(readString(unsafe.getAddress(entry + nameOffset)), unsafe.getInt(entry + valueOffset));
+    }
+
+    /**
+     * @param name Field in format <code>Type::_field</code>
+     * @return Offset of non-static field
+     */
+    public int getFieldOffset(String name) {
+        Long offset = fields.get(name);
+        if(offset == null)
+            throw new UnsupportedOperationException("Field '" + name + "' is not found in VM structs");
+        return (int) (long) offset;
+    }
+
+    public boolean hasField(String name) {
+        return fields.containsKey(name);
+    }
+
+    /**
+     * @return Value of the constant, or <code>defaultValue</code> when it is not exported
+     */
+    public int getConstant(String name, int defaultValue) {
+        return constants.getOrDefault(name, defaultValue);
+    }
+
+    public int getConstant(String name) {
+        Integer value = constants.get(name);
+        if(value == null)
+            throw new UnsupportedOperationException("Constant '" + name + "' is not found in VM structs");
+        return value;
+    }
+
+    private static long symbol(ToLongFunction<String> symbols, String name) {
+        long address = symbols.applyAsLong(name);
+        if(address == 0)
+            throw new UnsupportedOperationException("Symbol '" + name + "' is not exported by JVM");
+        return address;
+    }
+
+    private static String readString(long address) {
+        StringBuilder builder = new StringBuilder();
+        for(byte b; (b = unsafe.getByte(address++)) != 0; )
+            builder.append((char) b);
+        return builder.toString();
+    }
+}
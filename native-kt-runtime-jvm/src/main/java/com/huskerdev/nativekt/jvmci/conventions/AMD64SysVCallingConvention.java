@@ -0,0 +1,597 @@
+package com.huskerdev.nativekt.jvmci.conventions;
+
+import com.huskerdev.nativekt.jvmci.Buffer;
+import com.huskerdev.nativekt.jvmci.CallingConvention;
+import com.huskerdev.nativekt.jvmci.ThreadState;
+import jdk.vm.ci.code.site.DataPatch;
+import jdk.vm.ci.code.site.Mark;
+import jdk.vm.ci.code.site.Site;
+import jdk.vm.ci.hotspot.HotSpotCompiledCode;
+import jdk.vm.ci.hotspot.HotSpotCompiledNmethod;
+import jdk.vm.ci.hotspot.HotSpotResolvedJavaMethod;
+import jdk.vm.ci.meta.Assumptions;
+import jdk.vm.ci.meta.ResolvedJavaMethod;
+import jdk.vm.ci.runtime.JVMCICompiler;
+
+import java.lang.reflect.Method;
+
+/**
+ * System V AMD64 ABI (Linux, macOS x86-64).
+ * <p>
+ * HotSpot passes integer arguments in <code>RSI, RDX, RCX, R8, R9, RDI</code>,
+ * which is the native order shifted by one register.
+ * Floating point registers (<code>XMM0-XMM7</code>) and stack slots are the same for both conventions,
+ * so only integer registers have to be rotated.
+ */
+public class AMD64SysVCallingConvention extends CallingConvention {
+
+    private static final int RAX = 0, RCX = 1, RDX = 2, RBX = 3, RSP = 4, RBP = 5, RSI = 6, RDI = 7, R8 = 8, R9 = 9, R10 = 10, R15 = 15;
+
+    private static final int[] hotspotIntReg = new int[] { RSI, RDX, RCX, R8, R9, RDI };
+    private static final int[] amd64IntReg = new int[] { RDI, RSI, RDX, RCX, R8, R9 };
+
+    private static final int FLOAT_REGISTERS = 8;
+
+    @Override
+    public HotSpotCompiledNmethod createNMethod(String name, byte[] code, HotSpotResolvedJavaMethod resolvedMethod) {
+        return new HotSpotCompiledNmethod(
+                name,
+                code,
+                code.length,
+                new Site[] { new Mark(code.length - 8, ENTRY_BARRIER_PATCH) },
+                new Assumptions.Assumption[0],
+                new ResolvedJavaMethod[0],
+                new HotSpotCompiledCode.Comment[0],
+                new byte[0],
+                1,
+                new DataPatch[0],
+                true,
+                0,
+                null,
+                resolvedMethod,
+                JVMCICompiler.INVOCATION_ENTRY_BCI,
+                1,
+                0,
+                false
+        );
+    }
+
+    @Override
+    public boolean supportsTransitions() {
+        return true;
+    }
+
+    @Override
+    public HotSpotCompiledNmethod createTransitionNMethod(
+            Method method,
+            long address,
+            long blockAddress,
+            ThreadState state,
+            HotSpotResolvedJavaMethod resolvedMethod
+    ) {
+        for(Class<?> type : method.getParameterTypes()) {
+            if(type.isArray())
+                throw new IllegalArgumentException("Arrays can not be passed with thread state transition (" + method.getName() + ")");
+        }
+
+        Buffer buf = new Buffer();
+        int frame = getTransitionFrameSize(method);
+        int returnOffset = emitTransitionCall(buf, method, address, blockAddress, state, frame);
+        emitEpilogue(buf, method);
+        byte[] code = buf.finish();
+
+        return new HotSpotCompiledNmethod(
+                method.getName(),
+                code,
+                code.length,
+                new Site[] {
+                        createCallSafepoint(returnOffset, resolvedMethod),
+                        new Mark(code.length - 8, ENTRY_BARRIER_PATCH)
+                },
+                new Assumptions.Assumption[0],
+                new ResolvedJavaMethod[0],
+                new HotSpotCompiledCode.Comment[0],
+                new byte[0],
+                1,
+                new DataPatch[0],
+                true,
+                frame,
+                createStackSlot(getStackArgsCount(method) * 8 + 16),
+                resolvedMethod,
+                JVMCICompiler.INVOCATION_ENTRY_BCI,
+                1,
+                0,
+                false
+        );
+    }
+
+    /**
+     * Frame of the transition stub: return address, saved RBP,
+     * outgoing stack arguments, spill slots for the result and deoptimization slot.
+     */
+    private int getTransitionFrameSize(Method method) {
+        return 16 + align16(getStackArgsCount(method) * 8 + 24);
+    }
+
+    /**
+     * Emits thread state transition around the native call:
+     * <pre>
+     *   set last Java frame -> _thread_in_native -> call
+     *   -> check suspend flags and stack guard -> _thread_in_native_trans -> poll -> _thread_in_Java
+     *   -> reset last Java frame -> forward pending exception or return
+     * </pre>
+     * Unlike the native wrapper of HotSpot, special conditions are not processed by the stub.
+     * Its slow path stays in native state and calls Java by JNI, that blocks on safepoint or suspension,
+     * and re-guards the stack, when it was disabled by overflow in native code.
+     * Suspend flags and stack guard are checked once, as some flags are not cleared by the slow path,
+     * while the poll is repeated after it.
+     *
+     * @return Offset of the return address of the native call
+     */
+    private int emitTransitionCall(Buffer buf, Method method, long address, long blockAddress, ThreadState state, int frame) {
+        int stackArgs = getStackArgsCount(method);
+        int spill = stackArgs * 8;
+
+        // push rbp
+        buf.emitByte(0x55);
+        // mov rbp, rsp
+        emitMov(buf, RSP, RBP);
+        emitSubRsp(buf, frame - 16);
+
+        // Stack arguments are copied from the caller frame
+        for(int i = 0; i < stackArgs; i++) {
+            emitStackToReg(buf, frame + 8 * i, RAX);
+            emitRegToStack(buf, RAX, 8 * i);
+        }
+        emitRegisterRotation(buf, method);
+
+        // lea r10, [rip + returnOffset]
+        buf.emitByte(0x4C);
+        buf.emitByte(0x8D);
+        buf.emitByte(0x15);
+        int leaDisp = buf.position();
+        buf.emitInt(0);
+
+        // Stack pointer is stored last, as it marks the anchor as valid
+        emitStoreThread(buf, R10, state.lastJavaPcOffset);
+        emitStoreThread(buf, RSP, state.lastJavaSpOffset);
+        emitThreadState(buf, state, state.inNative);
+
+        // mov rax, target; call rax
+        buf.emitByte(0x48);
+        buf.emitByte(0xB8);
+        buf.emitLong(address);
+        buf.emitByte(0xFF);
+        buf.emitByte(0xD0);
+
+        int returnOffset = buf.position();
+        buf.patchInt(leaDisp, returnOffset - (leaDisp + 4));
+
+        if(needsReturnExtension(method))
+            emitReturnExtension(buf, method.getReturnType());
+
+        // cmp dword ptr [r15 + stack_guard_state], yellow_reserved_disabled
+        emitCompareThread(buf, state.stackGuardStateOffset, state.stackGuardYellowReservedDisabled);
+        // je slow
+        buf.emitByte(0x0F);
+        buf.emitByte(0x84);
+        int guardJump = buf.position();
+        buf.emitInt(0);
+
+        // cmp dword ptr [r15 + suspend_flags], 0
+        emitCompareThread(buf, state.suspendFlagsOffset, 0);
+        // jne slow
+        buf.emitByte(0x0F);
+        buf.emitByte(0x85);
+        int suspendJump = buf.position();
+        buf.emitInt(0);
+
+        int retry = buf.position();
+        emitThreadState(buf, state, state.inNativeTrans);
+
+        // Makes the state visible before reading the poll word.
+        // lock add dword ptr [rsp], 0
+        buf.emitByte(0xF0);
+        buf.emitByte(0x83);
+        buf.emitByte(0x04);
+        buf.emitByte(0x24);
+        buf.emitByte(0x00);
+
+        // Polling word is greater than the frame pointer, when thread must stop
+        // cmp rbp, [r15 + polling_word]
+        buf.emitByte(0x49);
+        buf.emitByte(0x3B);
+        buf.emitByte(0xAF);
+        buf.emitInt(state.pollingWordOffset);
+        // ja slow
+        buf.emitByte(0x0F);
+        buf.emitByte(0x87);
+        int slowJump = buf.position();
+        buf.emitInt(0);
+
+        emitThreadState(buf, state, state.inJava);
+        emitClearThread(buf, state.lastJavaSpOffset);
+        emitClearThread(buf, state.lastJavaPcOffset);
+
+        // Local handles, that could be created by callbacks, are released like in JNI
+        // mov r10, [r15 + active_handles]
+        buf.emitByte(0x4D);
+        buf.emitByte(0x8B);
+        buf.emitByte(0x97);
+        buf.emitInt(state.activeHandlesOffset);
+        // mov dword ptr [r10 + top], 0
+        buf.emitByte(0x41);
+        buf.emitByte(0xC7);
+        buf.emitByte(0x82);
+        buf.emitInt(state.handleBlockTopOffset);
+        buf.emitInt(0);
+
+        // cmp qword ptr [r15 + pending_exception], 0
+        buf.emitByte(0x49);
+        buf.emitByte(0x83);
+        buf.emitByte(0xBF);
+        buf.emitInt(state.pendingExceptionOffset);
+        buf.emitByte(0x00);
+        // jne exception
+        buf.emitByte(0x0F);
+        buf.emitByte(0x85);
+        int exceptionJump = buf.position();
+        buf.emitInt(0);
+
+        // leave; ret
+        buf.emitByte(0xC9);
+        buf.emitByte(0xC3);
+
+        // Slow path: safepoint, suspension and stack re-guarding are processed by a JNI call,
+        // result registers are saved in the frame
+        buf.patchInt(guardJump, buf.position() - (guardJump + 4));
+        buf.patchInt(suspendJump, buf.position() - (suspendJump + 4));
+        buf.patchInt(slowJump, buf.position() - (slowJump + 4));
+        emitThreadState(buf, state, state.inNative);
+        emitRegToStack(buf, RAX, spill);
+        // movsd [rsp + spill + 8], xmm0
+        buf.emitByte(0xF2);
+        buf.emitByte(0x0F);
+        buf.emitByte(0x11);
+        buf.emitByte(0x84);
+        buf.emitByte(0x24);
+        buf.emitInt(spill + 8);
+
+        // lea rdi, [r15 + jni_environment]
+        emitLea(buf, RDI, R15, state.jniEnvironmentOffset);
+        buf.emitByte(0x48);
+        buf.emitByte(0xB8);
+        buf.emitLong(blockAddress);
+        buf.emitByte(0xFF);
+        buf.emitByte(0xD0);
+
+        emitStackToReg(buf, spill, RAX);
+        // movsd xmm0, [rsp + spill + 8]
+        buf.emitByte(0xF2);
+        buf.emitByte(0x0F);
+        buf.emitByte(0x10);
+        buf.emitByte(0x84);
+        buf.emitByte(0x24);
+        buf.emitInt(spill + 8);
+        // jmp retry
+        buf.emitByte(0xE9);
+        buf.emitInt(retry - (buf.position() + 4));
+
+        // Exception: the frame is removed, and exception is dispatched
+        // at the return address, as if it was thrown by the call of this method
+        buf.patchInt(exceptionJump, buf.position() - (exceptionJump + 4));
+        buf.emitByte(0xC9);
+        // mov rsi, [rsp]
+        emitStackToReg(buf, 0, RSI);
+        emitMov(buf, R15, RDI);
+        emitSubRsp(buf, 8);
+        buf.emitByte(0x48);
+        buf.emitByte(0xB8);
+        buf.emitLong(state.exceptionHandlerForReturnAddress);
+        buf.emitByte(0xFF);
+        buf.emitByte(0xD0);
+        emitAddRsp(buf, 8);
+        emitMov(buf, RAX, RBX);
+
+        // Handler expects exception in RAX and the throwing pc in RDX
+        // pop rdx
+        buf.emitByte(0x5A);
+        // mov rax, [r15 + pending_exception]
+        buf.emitByte(0x49);
+        buf.emitByte(0x8B);
+        buf.emitByte(0x87);
+        buf.emitInt(state.pendingExceptionOffset);
+        emitClearThread(buf, state.pendingExceptionOffset);
+        // jmp rbx
+        buf.emitByte(0xFF);
+        buf.emitByte(0xE3);
+
+        return returnOffset;
+    }
+
+    /**
+     * Native code returns small integers only in the lower bits of RAX,
+     * while Java expects the whole EAX to be sign/zero extended.
+     * Such methods can not jump directly into the native function.
+     */
+    private static boolean needsReturnExtension(Method method) {
+        Class<?> type = method.getReturnType();
+        return type == boolean.class || type == byte.class ||
+                type == short.class || type == char.class;
+    }
+
+    private static int getStackArgsCount(Method method) {
+        int count = 0;
+        for (int i = 0, floats = 0, ints = 0; i < method.getParameterCount(); i++) {
+            if(isFloatingPointType(method.getParameterTypes()[i])) {
+                if(floats++ >= FLOAT_REGISTERS)
+                    count++;
+            } else {
+                if(ints++ >= amd64IntReg.length)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    private int getFrameSize(Method method) {
+        if(!needsReturnExtension(method))
+            return 0;
+        // Stack is aligned to 16 before 'call', so return address shifts it by 8
+        return align16(getStackArgsCount(method) * 8) + 8;
+    }
+
+    @Override
+    protected void emitPrologue(Buffer buf, Method method) {
+        int frame = getFrameSize(method);
+        if(frame != 0)
+            emitSubRsp(buf, frame);
+    }
+
+    @Override
+    protected void emitConversion(Buffer buf, Method method) {
+        int frame = getFrameSize(method);
+
+        // Stack arguments (Java and native layouts are the same).
+        // Uses RAX as a temporary register, so must be done before registers rotation
+        for (int i = 0, floats = 0, ints = 0, stack = 0; i < method.getParameterCount(); i++) {
+            Class<?> type = method.getParameterTypes()[i];
+
+            boolean inStack = isFloatingPointType(type) ?
+                    floats++ >= FLOAT_REGISTERS :
+                    ints++ >= amd64IntReg.length;
+            if(!inStack)
+                continue;
+
+            // Without own frame native function is called by 'jmp', so arguments are already in place
+            int javaOffset = frame + 8 + 8 * stack;
+            int cOffset = frame == 0 ? javaOffset : 8 * stack;
+            stack++;
+
+            if(javaOffset == cOffset && !type.isArray())
+                continue;
+
+            emitStackToReg(buf, javaOffset, RAX);
+            if(type.isArray())
+                emitLea(buf, RAX, RAX, getArrayOffset(type));
+            emitRegToStack(buf, RAX, cOffset);
+        }
+
+        emitRegisterRotation(buf, method);
+    }
+
+    /**
+     * Integer registers.
+     * The 6th Java argument is passed in RDI, that is overwritten by the 1st native argument
+     */
+    private void emitRegisterRotation(Buffer buf, Method method) {
+        Class<?>[] intTypes = new Class<?>[amd64IntReg.length];
+        int ints = 0;
+        for (Class<?> type : method.getParameterTypes()) {
+            if(isFloatingPointType(type))
+                continue;
+            if(ints == intTypes.length)
+                break;
+            intTypes[ints++] = type;
+        }
+
+        if(ints == amd64IntReg.length)
+            emitMov(buf, RDI, RAX);
+
+        for (int i = 0; i < ints; i++) {
+            int src = i == amd64IntReg.length - 1 ? RAX : hotspotIntReg[i];
+            int dst = amd64IntReg[i];
+
+            if (intTypes[i].isArray())
+                emitLea(buf, dst, src, getArrayOffset(intTypes[i]));
+            else
+                emitMov(buf, src, dst);
+        }
+    }
+
+    @Override
+    protected void emitCall(Buffer buf, Method method, long address) {
+        // mov rax, target
+        buf.emitByte(0x48);
+        buf.emitByte(0xB8);
+        buf.emitLong(address);
+
+        if(getFrameSize(method) != 0) {
+            // call rax
+            buf.emitByte(0xFF);
+            buf.emitByte(0xD0);
+        } else {
+            // jmp rax
+            buf.emitByte(0xFF);
+            buf.emitByte(0xE0);
+        }
+    }
+
+    @Override
+    protected void emitEpilogue(Buffer buf, Method method) {
+        int frame = getFrameSize(method);
+        if(frame != 0) {
+            emitReturnExtension(buf, method.getReturnType());
+            emitAddRsp(buf, frame);
+            buf.emitByte(0xC3);
+        }
+
+        // align to 4
+        while(buf.position() % 4 != 0)
+            buf.emitByte(0x90);
+
+        // nmethod entry barrier simulation:
+        // cmp dword ptr [r15], 0x00000000
+        buf.emitByte(0x41);
+        buf.emitByte(0x81);
+        buf.emitByte(0x7f);
+        buf.emitByte(0);
+        buf.emitInt(0);
+    }
+
+    // ==========================================================
+    // RAW ENCODERS
+    // ==========================================================
+
+    private static void emitReturnExtension(Buffer buf, Class<?> type) {
+        if(type == boolean.class) {
+            // test al, al
+            buf.emitByte(0x84);
+            buf.emitByte(0xC0);
+            // setne al
+            buf.emitByte(0x0F);
+            buf.emitByte(0x95);
+            buf.emitByte(0xC0);
+        }
+
+        buf.emitByte(0x0F);
+        if(type == boolean.class)
+            buf.emitByte(0xB6);  // movzx eax, al
+        else if(type == byte.class)
+            buf.emitByte(0xBE);  // movsx eax, al
+        else if(type == short.class)
+            buf.emitByte(0xBF);  // movsx eax, ax
+        else
+            buf.emitByte(0xB7);  // movzx eax, ax
+        buf.emitByte(0xC0);
+    }
+
+    // mov dword ptr [r15 + offset], value
+    private static void emitThreadState(Buffer buf, ThreadState state, int value) {
+        buf.emitByte(0x41);
+        buf.emitByte(0xC7);
+        buf.emitByte(0x87);
+        buf.emitInt(state.stateOffset);
+        buf.emitInt(value);
+    }
+
+    // cmp dword ptr [r15 + offset], value
+    private static void emitCompareThread(Buffer buf, int offset, int value) {
+        buf.emitByte(0x41);
+        buf.emitByte(0x81);
+        buf.emitByte(0xBF);
+        buf.emitInt(offset);
+        buf.emitInt(value);
+    }
+
+    // mov [r15 + offset], src
+    private static void emitStoreThread(Buffer buf, int src, int offset) {
+        int rex = 0x49;  // REX.W + REX.B
+        if (src >= 8) rex |= 0x04;  // REX.R
+
+        buf.emitByte(rex);
+        buf.emitByte(0x89);
+        buf.emitByte(0x87 | ((src & 0x07) << 3));  // [r15+disp32]
+        buf.emitInt(offset);
+    }
+
+    // mov qword ptr [r15 + offset], 0
+    private static void emitClearThread(Buffer buf, int offset) {
+        buf.emitByte(0x49);
+        buf.emitByte(0xC7);
+        buf.emitByte(0x87);
+        buf.emitInt(offset);
+        buf.emitInt(0);
+    }
+
+    private static void emitMov(
+            Buffer buf,
+            int src,
+            int dst
+    ) {
+        if(src == dst)
+            return;
+
+        // REX prefix for extended registers
+        int rex = 0x48;  // REX.W
+        if (src >= 8) rex |= 0x04;  // REX.R
+        if (dst >= 8) rex |= 0x01;  // REX.B
+
+        buf.emitByte(rex);
+        buf.emitByte(0x89);
+        buf.emitByte(0xC0 | ((src & 0x07) << 3) | (dst & 0x07));
+    }
+
+    private static void emitLea(
+            Buffer buf,
+            int dst,
+            int src,
+            int imm
+    ) {
+        int rex = 0x48;  // REX.W
+        if (dst >= 8) rex |= 0x04;  // REX.R
+        if (src >= 8) rex |= 0x01;  // REX.B
+
+        buf.emitByte(rex);
+        buf.emitByte(0x8D);
+        // [src+disp32]
+        buf.emitByte(0x80 | ((dst & 0x07) << 3) | (src & 0x07));
+        if((src & 0x07) == RSP)
+            buf.emitByte(0x24);  // SIB
+        buf.emitInt(imm);
+    }
+
+    private static void emitStackToReg(
+            Buffer buf,
+            int src,
+            int dst
+    ) {
+        int rex = 0x48;  // REX.W
+        if (dst >= 8) rex |= 0x04;  // REX.R
+
+        buf.emitByte(rex);
+        buf.emitByte(0x8B);
+        buf.emitByte(0x84 | ((dst & 0x07) << 3));  // [rsp+disp32]
+        buf.emitByte(0x24);  // SIB
+        buf.emitInt(src);
+    }
+
+    private static void emitRegToStack(
+            Buffer buf,
+            int src,
+            int dst
+    ) {
+        int rex = 0x48;  // REX.W
+        if (src >= 8) rex |= 0x04;  // REX.R
+
+        buf.emitByte(rex);
+        buf.emitByte(0x89);
+        buf.emitByte(0x84 | ((src & 0x07) << 3));  // [rsp+disp32]
+        buf.emitByte(0x24);  // SIB
+        buf.emitInt(dst);
+    }
+
+    private void emitSubRsp(Buffer buf, int v) {
+        buf.emitByte(0x48);
+        buf.emitByte(0x81);
+        buf.emitByte(0xEC);
+        buf.emitInt(v);
+    }
+
+    private void emitAddRsp(Buffer buf, int v) {
+        buf.emitByte(0x48);
+        buf.emitByte(0x81);
+        buf.emitByte(0xC4);
+        buf.emitInt(v);
+    }
+}
@@ -0,0 +1,71 @@
+package com.huskerdev.nativekt
+
+/**
+ * Long-lived native memory region.
+ *
+ * Can be passed to functions with `[Buffer]` arguments as a bare pointer,
+ * so the same memory is reused between calls without copying.
+ *
+ * Memory is not managed by GC and must be released with [close].
+ *
+ * @param size Size in bytes
+ */
+expect class NativeBuffer(size: Int) : AutoCloseable {
+
+    /**
+     * Size in bytes
+     */
+    val size: Int
+
+    operator fun get(index: Int): Byte
+
+    operator fun set(index: Int, value: Byte)
+
+    /*
+     * Typed access at byte offset, in the native byte order
+     */
+
+    fun getShort(offset: Int): Short
+
+    fun setShort(offset: Int, value: Short)
+
+    fun getInt(offset: Int): Int
+
+    fun setInt(offset: Int, value: Int)
+
+    fun getLong(offset: Int): Long
+
+    fun setLong(offset: Int, value: Long)
+
+    fun getFloat(offset: Int): Float
+
+    fun setFloat(offset: Int, value: Float)
+
+    fun getDouble(offset: Int): Double
+
+    fun setDouble(offset: Int, value: Double)
+
+    /**
+     * Copies bytes from the buffer into [dst].
+     *
+     * @param offset Offset in the buffer
+     */
+    fun read(offset: Int, dst: ByteArray)
+
+    /**
+     * Copies bytes from [src] into the buffer.
+     *
+     * @param offset Offset in the buffer
+     */
+    fun write(offset: Int, src: ByteArray)
+
+    /**
+     * Releases native memory. Buffer can not be used after this call.
+     */
+    override fun close()
+}
+
+internal fun NativeBuffer.checkRange(offset: Int, length: Int) {
+    if(offset < 0 || length < 0 || offset + length > size)
+        throw IndexOutOfBoundsException("Range [$offset, ${offset + length}) is out of buffer bounds [0, $size)")
+}
@@ -0,0 +1,8 @@
+package com.huskerdev.nativekt
+
+/**
+ * Error, that is reported by native code.
+ *
+ * Thrown by `suspend` variants of `[Async]` functions, when native code completes them with an error message.
+ */
+class NativeException(message: String) : RuntimeException(message)
@@ -0,0 +1,81 @@
+package com.huskerdev.nativekt
+
+import java.nio.ByteBuffer
+
+actual class NativeBuffer actual constructor(
+    actual val size: Int
+) : AutoCloseable {
+
+    private var _buffer: ByteBuffer? = NativeBufferUtils.allocate(size)
+
+    /**
+     * Direct buffer, that is passed to JNI
+     */
+    val buffer: ByteBuffer
+        get() = _buffer ?: throw IllegalStateException("Buffer is closed")
+
+    private val _address: Long = NativeBufferUtils.address(buffer)
+
+    /**
+     * Address of the first byte, that is passed to Foreign API and JVMCI
+     */
+    val address: Long
+        get() = if(_buffer != null) _address else throw IllegalStateException("Buffer is closed")
+
+    actual operator fun get(index: Int): Byte =
+        buffer.get(index)
+
+    actual operator fun set(index: Int, value: Byte) {
+        buffer.put(index, value)
+    }
+
+    actual fun getShort(offset: Int): Short =
+        buffer.getShort(offset)
+
+    actual fun setShort(offset: Int, value: Short) {
+        buffer.putShort(offset, value)
+    }
+
+    actual fun getInt(offset: Int): Int =
+        buffer.getInt(offset)
+
+    actual fun setInt(offset: Int, value: Int) {
+        buffer.putInt(offset, value)
+    }
+
+    actual fun getLong(offset: Int): Long =
+        buffer.getLong(offset)
+
+    actual fun setLong(offset: Int, value: Long) {
+        buffer.putLong(offset, value)
+    }
+
+    actual fun getFloat(offset: Int): Float =
+        buffer.getFloat(offset)
+
+    actual fun setFloat(offset: Int, value: Float) {
+        buffer.putFloat(offset, value)
+    }
+
+    actual fun getDouble(offset: Int): Double =
+        buffer.getDouble(offset)
+
+    actual fun setDouble(offset: Int, value: Double) {
+        buffer.putDouble(offset, value)
+    }
+
+    actual fun read(offset: Int, dst: ByteArray) {
+        checkRange(offset, dst.size)
+        buffer.duplicate().position(offset).get(dst)
+    }
+
+    actual fun write(offset: Int, src: ByteArray) {
+        checkRange(offset, src.size)
+        buffer.duplicate().position(offset).put(src)
+    }
+
+    actual override fun close() {
+        NativeBufferUtils.free(_buffer ?: return)
+        _buffer = null
+    }
+}
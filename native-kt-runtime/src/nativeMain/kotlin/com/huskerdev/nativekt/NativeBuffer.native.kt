@@ -0,0 +1,118 @@
+@file:OptIn(ExperimentalForeignApi::class)
+
+package com.huskerdev.nativekt
+
+import kotlinx.cinterop.ByteVar
+import kotlinx.cinterop.CPointer
+import kotlinx.cinterop.DoubleVar
+import kotlinx.cinterop.ExperimentalForeignApi
+import kotlinx.cinterop.FloatVar
+import kotlinx.cinterop.IntVar
+import kotlinx.cinterop.LongVar
+import kotlinx.cinterop.ShortVar
+import kotlinx.cinterop.addressOf
+import kotlinx.cinterop.allocArray
+import kotlinx.cinterop.convert
+import kotlinx.cinterop.get
+import kotlinx.cinterop.nativeHeap
+import kotlinx.cinterop.plus
+import kotlinx.cinterop.pointed
+import kotlinx.cinterop.reinterpret
+import kotlinx.cinterop.set
+import kotlinx.cinterop.usePinned
+import kotlinx.cinterop.value
+import platform.posix.memcpy
+
+actual class NativeBuffer actual constructor(
+    actual val size: Int
+) : AutoCloseable {
+
+    private var _pointer: CPointer<ByteVar>? = nativeHeap.allocArray(size)
+
+    /**
+     * Pointer to the first byte, that is passed to C
+     */
+    val pointer: CPointer<ByteVar>
+        get() = _pointer ?: throw IllegalStateException("Buffer is closed")
+
+    actual operator fun get(index: Int): Byte {
+        checkRange(index, 1)
+        return pointer[index]
+    }
+
+    actual operator fun set(index: Int, value: Byte) {
+        checkRange(index, 1)
+        pointer[index] = value
+    }
+
+    actual fun getShort(offset: Int): Short {
+        checkRange(offset, 2)
+        return (pointer + offset)!!.reinterpret<ShortVar>().pointed.value
+    }
+
+    actual fun setShort(offset: Int, value: Short) {
+        checkRange(offset, 2)
+        (pointer + offset)!!.reinterpret<ShortVar>().pointed.value = value
+    }
+
+    actual fun getInt(offset: Int): Int {
+        checkRange(offset, 4)
+        return (pointer + offset)!!.reinterpret<IntVar>().pointed.value
+    }
+
+    actual fun setInt(offset: Int, value: Int) {
+        checkRange(offset, 4)
+        (pointer + offset)!!.reinterpret<IntVar>().pointed.value = value
+    }
+
+    actual fun getLong(offset: Int): Long {
+        checkRange(offset, 8)
+        return (pointer + offset)!!.reinterpret<LongVar>().pointed.value
+    }
+
+    actual fun setLong(offset: Int, value: Long) {
+        checkRange(offset, 8)
+        (pointer + offset)!!.reinterpret<LongVar>().pointed.value = value
+    }
+
+    actual fun getFloat(offset: Int): Float {
+        checkRange(offset, 4)
+        return (pointer + offset)!!.reinterpret<FloatVar>().pointed.value
+    }
+
+    actual fun setFloat(offset: Int, value: Float) {
+        checkRange(offset, 4)
+        (pointer + offset)!!.reinterpret<FloatVar>().pointed.value = value
+    }
+
+    actual fun getDouble(offset: Int): Double {
+        checkRange(offset, 8)
+        return (pointer + offset)!!.reinterpret<DoubleVar>().pointed.value
+    }
+
+    actual fun setDouble(offset: Int, value: Double) {
+        checkRange(offset, 8)
+        (pointer + offset)!!.reinterpret<DoubleVar>().pointed.value = value
+    }
+
+    actual fun read(offset: Int, dst: ByteArray) {
+        checkRange(offset, dst.size)
+        if(dst.isEmpty()) return
+        dst.usePinned {
+            memcpy(it.addressOf(0), pointer + offset, dst.size.convert())
+        }
+    }
+
+    actual fun write(offset: Int, src: ByteArray) {
+        checkRange(offset, src.size)
+        if(src.isEmpty()) return
+        src.usePinned {
+            memcpy(pointer + offset, it.addressOf(0), src.size.convert())
+        }
+    }
+
+    actual override fun close() {
+        nativeHeap.free(_pointer ?: return)
+        _pointer = null
+    }
+}
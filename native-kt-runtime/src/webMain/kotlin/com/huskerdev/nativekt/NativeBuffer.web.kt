@@ -0,0 +1,139 @@
+@file:OptIn(ExperimentalWasmJsInterop::class)
+
+package com.huskerdev.nativekt
+
+/**
+ * Each Emscripten module has its own heap, so memory is allocated
+ * in the module, where the buffer is passed first.
+ * Until then, data is stored in a regular array.
+ */
+actual class NativeBuffer actual constructor(
+    actual val size: Int
+) : AutoCloseable {
+
+    private var module: dynamic = null
+    private var ptr = 0
+    private var data: ByteArray? = ByteArray(size)
+    private var closed = false
+
+    /**
+     * Returns pointer to the first byte in [module] heap
+     */
+    fun pointer(module: dynamic): Int {
+        checkOpen()
+        if(this.module == null) {
+            ptr = (module._malloc(maxOf(size, 1)) as JsNumber).toInt()
+            this.module = module
+            // Array is dropped before, so data is written to the heap
+            val data = data!!
+            this.data = null
+            write(0, data)
+        } else if(this.module !== module)
+            throw IllegalStateException("Buffer is already used by another module")
+        return ptr
+    }
+
+    actual operator fun get(index: Int): Byte {
+        checkOpen()
+        checkRange(index, 1)
+        val data = data ?: return (module.HEAP8[ptr + index] as JsNumber).toInt().toByte()
+        return data[index]
+    }
+
+    actual operator fun set(index: Int, value: Byte) {
+        checkOpen()
+        checkRange(index, 1)
+        val data = data
+        if(data != null)
+            data[index] = value
+        else
+            module.HEAP8[ptr + index] = value
+    }
+
+    // Offsets are not always aligned for HEAP views,
+    // so values are composed from bytes (little-endian)
+
+    private fun getBits(offset: Int, bytes: Int): Long {
+        checkOpen()
+        checkRange(offset, bytes)
+        var result = 0L
+        for(i in 0 until bytes)
+            result = result or ((this[offset + i].toLong() and 0xff) shl (i * 8))
+        return result
+    }
+
+    private fun setBits(offset: Int, bytes: Int, value: Long) {
+        checkOpen()
+        checkRange(offset, bytes)
+        for(i in 0 until bytes)
+            this[offset + i] = (value shr (i * 8)).toByte()
+    }
+
+    actual fun getShort(offset: Int): Short =
+        getBits(offset, 2).toShort()
+
+    actual fun setShort(offset: Int, value: Short) =
+        setBits(offset, 2, value.toLong())
+
+    actual fun getInt(offset: Int): Int =
+        getBits(offset, 4).toInt()
+
+    actual fun setInt(offset: Int, value: Int) =
+        setBits(offset, 4, value.toLong())
+
+    actual fun getLong(offset: Int): Long =
+        getBits(offset, 8)
+
+    actual fun setLong(offset: Int, value: Long) =
+        setBits(offset, 8, value)
+
+    actual fun getFloat(offset: Int): Float =
+        Float.fromBits(getInt(offset))
+
+    actual fun setFloat(offset: Int, value: Float) =
+        setInt(offset, value.toRawBits())
+
+    actual fun getDouble(offset: Int): Double =
+        Double.fromBits(getLong(offset))
+
+    actual fun setDouble(offset: Int, value: Double) =
+        setLong(offset, value.toRawBits())
+
+    actual fun read(offset: Int, dst: ByteArray) {
+        checkOpen()
+        checkRange(offset, dst.size)
+        val data = data
+        if(data != null)
+            data.copyInto(dst, 0, offset, offset + dst.size)
+        else {
+            val heap = module.HEAP8
+            for(i in dst.indices)
+                dst[i] = (heap[ptr + offset + i] as JsNumber).toInt().toByte()
+        }
+    }
+
+    actual fun write(offset: Int, src: ByteArray) {
+        checkOpen()
+        checkRange(offset, src.size)
+        val data = data
+        if(data != null)
+            src.copyInto(data, offset)
+        else {
+            val heap = module.HEAP8
+            for(i in src.indices)
+                heap[ptr + offset + i] = src[i]
+        }
+    }
+
+    private fun checkOpen() =
+        check(!closed) { "Buffer is closed" }
+
+    actual override fun close() {
+        if(closed) return
+        closed = true
+        if(module != null)
+            module._free(ptr)
+        data = null
+        module = null
+    }
+}
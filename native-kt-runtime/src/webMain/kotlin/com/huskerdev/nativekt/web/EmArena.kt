@@ -12,9 +12,10 @@ class EmArena(
 
     private val allocated = hashSetOf<Any>()
     private val callbacks = hashSetOf<JsNumber>()
+    private val arrays = arrayListOf<() -> Unit>()
 
     fun malloc(size: Int): Any =
-        (module._malloc(size) as Any).also { allocated += this }
+        (module._malloc(size) as Any).also { allocated += it }
 
     fun allocCStr(str: String): Any {
         val len = module.lengthBytesUTF8(str) + 1
@@ -23,6 +24,57 @@ class EmArena(
         return mem
     }
 
+    fun allocArray(array: ByteArray): Any =
+        allocArray(array.size, 0, "HEAP8", { array[it] }) { i, v -> array[i] = v.toInt().toByte() }
+
+    fun allocArray(array: ShortArray): Any =
+        allocArray(array.size, 1, "HEAP16", { array[it] }) { i, v -> array[i] = v.toInt().toShort() }
+
+    fun allocArray(array: IntArray): Any =
+        allocArray(array.size, 2, "HEAP32", { array[it] }) { i, v -> array[i] = v.toInt() }
+
+    fun allocArray(array: FloatArray): Any =
+        allocArray(array.size, 2, "HEAPF32", { array[it] }) { i, v -> array[i] = v.toDouble().toFloat() }
+
+    fun allocArray(array: DoubleArray): Any =
+        allocArray(array.size, 3, "HEAPF64", { array[it] }) { i, v -> array[i] = v.toDouble() }
+
+    // Each long is stored as two 32-bit halves
+    fun allocArray(array: LongArray): Any =
+        allocArray(array.size * 2, 2, "HEAP32", {
+            val value = array[it / 2]
+            if(it % 2 == 0) (value and 0xffffffff).toInt() else (value shr 32).toInt()
+        }) { i, v ->
+            if(i % 2 == 1) {
+                val low = array[i / 2]
+                array[i / 2] = v.toInt().toLong() shl 32 or (low and 0xffffffff)
+            } else array[i / 2] = v.toInt().toLong()
+        }
+
+    private fun allocArray(
+        size: Int,
+        shift: Int,
+        heap: String,
+        get: (Int) -> Any,
+        set: (Int, JsNumber) -> Unit
+    ): Any {
+        val mem = malloc(maxOf(size shl shift, 1))
+        val offset = (mem as JsNumber).toInt() shr shift
+
+        val view = module[heap]
+        for(i in 0 until size)
+            view[offset + i] = get(i)
+
+        // Native side may modify the array, so it is copied back on close.
+        // View is requested again, because memory could grow during the call
+        arrays += {
+            val newView = module[heap]
+            for(i in 0 until size)
+                set(i, newView[offset + i] as JsNumber)
+        }
+        return mem
+    }
+
     fun unwrapCStr(ptr: Any, dealloc: Boolean): String {
         val result = module.UTF8ToString(ptr)
         if(dealloc && ptr !in allocated)
@@ -42,10 +94,9 @@ class EmArena(
         return callback
     }
 
-    override fun close() = allocated.forEach {
-        module._free(it)
-        callbacks.forEach { callback ->
-            freeCallback(module, callback)
-        }
+    override fun close() {
+        arrays.forEach { it() }
+        allocated.forEach { module._free(it) }
+        callbacks.forEach { freeCallback(module, it) }
     }
 }
\ No newline at end of file
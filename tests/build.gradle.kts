@@ -93,12 +93,38 @@ kotlin {
 native {
     ndkVersion = "29.0.14206865"
 
+    // Benchmarks and examples use eager binding, so tests cover lazy holders.
+    // Eager binding can be tested with -Pnativekt.tests.lazyBinding=false
+    useLazyBinding = providers.gradleProperty("nativekt.tests.lazyBinding").orNull?.toBoolean() ?: true
+
     create("test")
 }
 
 
 tasks.withType<Test>().configureEach {
     if (name.contains("jvm", ignoreCase = true)) {
-        jvmArgs = listOf("--enable-native-access=ALL-UNNAMED")
+        jvmArgs("--enable-native-access=ALL-UNNAMED")
+    }
+}
+
+// JVM tests are also run with every invoker, as default one depends on JDK
+fun registerJvmTest(suffix: String, configure: Test.() -> Unit) {
+    val jvmTest = tasks.named<Test>("jvmTest")
+    val task = tasks.register<Test>("jvmTest$suffix") {
+        group = "verification"
+        testClassesDirs = jvmTest.get().testClassesDirs
+        classpath = jvmTest.get().classpath
+        configure()
     }
+    tasks.named("check") { dependsOn(task) }
+}
+
+registerJvmTest("Jni") { systemProperty("nativekt.jvm.forceInvoker", "jni") }
+registerJvmTest("Foreign") { systemProperty("nativekt.jvm.forceInvoker", "foreign") }
+registerJvmTest("Adaptive") {
+    systemProperty("nativekt.jvm.forceInvoker", "adaptive")
+    // Functions are bound during tests
+    systemProperty("nativekt.jvm.adaptiveCalls", "100")
 }
+// Critical and non-critical functions are linked by JVMCI stubs
+registerJvmTest("Jvmci") { jvmArgs("-XX:+UnlockExperimentalVMOptions", "-XX:+EnableJVMCI") }
@@ -16,6 +16,22 @@
 extern "C" {
 #endif
 
+/* =================== *\
+         Structs
+\* =================== */
+
+typedef struct Vec2 {
+	float x;
+	float y;
+} Vec2;
+
+typedef struct Particle {
+	bool alive;
+	int64_t id __attribute__((aligned(8)));
+	Vec2 position;
+	int16_t flags;
+} Particle;
+
 #ifndef INVOKE
 #define INVOKE(callback, ...) callback->invoke(callback, ##__VA_ARGS__)
 #endif // INVOKE
@@ -24,10 +40,15 @@ extern "C" {
 #define FREE_CALLBACK(callback) callback->free(callback)
 #endif // FREE_CALLBACK
 
+#ifndef COMPLETE
+#define COMPLETE(completion, ...) do { INVOKE(completion, ##__VA_ARGS__); FREE_CALLBACK(completion); } while(0)
+#endif // COMPLETE
+
 typedef struct SimpleCallback SimpleCallback;
 typedef struct StringCallback StringCallback;
 typedef struct StringPingCallback StringPingCallback;
 typedef struct CallbackPingCallback CallbackPingCallback;
+typedef struct IntCompletion IntCompletion;
 
 /* =================== *\
         Callbacks
@@ -57,6 +78,12 @@ struct CallbackPingCallback {
 	void (*free)(CallbackPingCallback* _);
 };
 
+struct IntCompletion {
+	void *m;
+	void (*invoke)(IntCompletion* _, int32_t result, const char* error);
+	void (*free)(IntCompletion* _);
+};
+
 /* =================== *\
         Functions
 \* =================== */
@@ -93,6 +120,31 @@ SimpleCallback* callbackReturn(SimpleCallback* callback);
 bool callbackReturnString(StringCallback* callback);
 bool callbackPingString(StringPingCallback* callback);
 SimpleCallback* callbackPingCallback(CallbackPingCallback* callback, SimpleCallback* item);
+int32_t sumIntArray(int32_t* arr, int32_t length);
+void fillDoubleArray(double* arr, int32_t length, double value);
+float sumFloatArray(float* arr, int32_t length);
+void fillLongArray(int64_t* arr, int32_t length, int64_t value);
+bool jvmciArrays(int8_t* a1, int32_t a2, int16_t* a3, float a4, int32_t* a5, int64_t* a6, float* a7, double* a8);
+void fillBuffer(int8_t* buffer, int32_t length, int8_t value);
+int32_t sumBuffer(int32_t* buffer, int32_t length);
+float vec2Dot(Vec2 a, Vec2 b);
+Vec2 vec2Add(Vec2 a, Vec2 b);
+void vec2Scale(Vec2* vec, float factor);
+Particle createParticle(int64_t id, float x, float y);
+float sumVec2X(Vec2* vectors, int32_t length);
+int32_t batchAdd(int32_t a, int32_t b);
+float batchMul(float a, float b);
+void batchStore(int64_t value);
+int64_t batchStoredSum();
+int32_t blockingSleep(int32_t millis);
+void asyncPing(int32_t value, IntCompletion* completion);
+void asyncFail(const char* message, IntCompletion* completion);
+void asyncHold(IntCompletion* completion);
+void asyncCompleteHeld(int32_t value);
+int32_t viewLength(const char* text, int32_t text_length);
+bool viewEquals(const char* text, int32_t text_length, const char* expected);
+int32_t viewLengthCritical(const char* text, int32_t text_length);
+bool viewEqualsCritical(const char* text, int32_t text_length, const char* expected);
 bool jvmci1();
 bool jvmci2(int32_t a1);
 bool jvmci3(int32_t a1, int32_t a2);
@@ -108,6 +160,10 @@ int32_t jvmci12();
 int64_t jvmci13();
 float jvmci14();
 double jvmci15();
+void jvmciStoreCallback(SimpleCallback* callback);
+int32_t jvmciInvokeStored(int32_t status);
+void jvmciReleaseStored();
+int32_t jvmciSleep(int32_t millis);
 
 #ifdef __cplusplus
 }
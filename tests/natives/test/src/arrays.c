@@ -0,0 +1,30 @@
+#include <api.h>
+
+int32_t sumIntArray(int32_t* arr, int32_t length) {
+    int32_t result = 0;
+    for(int i = 0; i < length; i++)
+        result += arr[i];
+    return result;
+}
+
+void fillDoubleArray(double* arr, int32_t length, double value) {
+    for(int i = 0; i < length; i++)
+        arr[i] = value;
+}
+
+float sumFloatArray(float* arr, int32_t length) {
+    float result = 0;
+    for(int i = 0; i < length; i++)
+        result += arr[i];
+    return result;
+}
+
+void fillLongArray(int64_t* arr, int32_t length, int64_t value) {
+    for(int i = 0; i < length; i++)
+        arr[i] = value;
+}
+
+bool jvmciArrays(int8_t* a1, int32_t a2, int16_t* a3, float a4, int32_t* a5, int64_t* a6, float* a7, double* a8) {
+    return a1[0] == 1 && a2 == 2 && a3[0] == 3 && a4 == 4.0f &&
+        a5[0] == 5 && a6[0] == 6 && a7[0] == 7.0f && a8[0] == 8.0;
+}
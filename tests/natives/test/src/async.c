@@ -0,0 +1,70 @@
+#include <api.h>
+#include <stdlib.h>
+#include <string.h>
+
+#if defined(_WIN32)
+#include <windows.h>
+#elif !defined(__EMSCRIPTEN__)
+#include <pthread.h>
+#endif
+
+typedef struct AsyncTask {
+    IntCompletion* completion;
+    int32_t result;
+    char* error;
+} AsyncTask;
+
+static IntCompletion* heldCompletion = NULL;
+
+static void asyncComplete(AsyncTask* task) {
+    COMPLETE(task->completion, task->result, task->error);
+    free(task->error);
+    free(task);
+}
+
+#if defined(_WIN32)
+static DWORD WINAPI asyncThread(LPVOID task) {
+    asyncComplete((AsyncTask*)task);
+    return 0;
+}
+#elif !defined(__EMSCRIPTEN__)
+static void* asyncThread(void* task) {
+    asyncComplete((AsyncTask*)task);
+    return NULL;
+}
+#endif
+
+// Completes from another thread, when threads are available
+static void asyncStart(IntCompletion* completion, int32_t result, const char* error) {
+    AsyncTask* task = malloc(sizeof(AsyncTask));
+    task->completion = completion;
+    task->result = result;
+    task->error = strdup(error);
+
+#if defined(_WIN32)
+    CloseHandle(CreateThread(NULL, 0, asyncThread, task, 0, NULL));
+#elif defined(__EMSCRIPTEN__)
+    asyncComplete(task);
+#else
+    pthread_t thread;
+    pthread_create(&thread, NULL, asyncThread, task);
+    pthread_detach(thread);
+#endif
+}
+
+void asyncPing(int32_t value, IntCompletion* completion) {
+    asyncStart(completion, value, "");
+}
+
+void asyncFail(const char* message, IntCompletion* completion) {
+    asyncStart(completion, 0, message);
+}
+
+void asyncHold(IntCompletion* completion) {
+    heldCompletion = completion;
+}
+
+void asyncCompleteHeld(int32_t value) {
+    COMPLETE(heldCompletion, value, "");
+    heldCompletion = NULL;
+}
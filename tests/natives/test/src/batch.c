@@ -0,0 +1,19 @@
+#include <api.h>
+
+static int64_t storedSum = 0;
+
+int32_t batchAdd(int32_t a, int32_t b) {
+    return a + b;
+}
+
+float batchMul(float a, float b) {
+    return a * b;
+}
+
+void batchStore(int64_t value) {
+    storedSum += value;
+}
+
+int64_t batchStoredSum() {
+    return storedSum;
+}
@@ -0,0 +1,16 @@
+#include <api.h>
+
+#ifdef _WIN32
+#include <windows.h>
+#else
+#include <unistd.h>
+#endif
+
+int32_t blockingSleep(int32_t millis) {
+#ifdef _WIN32
+    Sleep(millis);
+#else
+    usleep(millis * 1000);
+#endif
+    return millis;
+}
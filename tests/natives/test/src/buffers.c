@@ -0,0 +1,13 @@
+#include <api.h>
+
+void fillBuffer(int8_t* buffer, int32_t length, int8_t value) {
+    for(int i = 0; i < length; i++)
+        buffer[i] = value;
+}
+
+int32_t sumBuffer(int32_t* buffer, int32_t length) {
+    int32_t result = 0;
+    for(int i = 0; i < length; i++)
+        result += buffer[i];
+    return result;
+}
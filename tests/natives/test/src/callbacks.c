@@ -20,7 +20,10 @@ bool callbackReturnString(StringCallback* callback) {
 }
 
 bool callbackPingString(StringPingCallback* callback) {
-    return strcmp(INVOKE(callback, "test"), "test") == 0;
+    const char* text = INVOKE(callback, "test");
+    bool result = strcmp(text, "test") == 0;
+    free((void*)text);
+    return result;
 }
 
 SimpleCallback* callbackPingCallback(CallbackPingCallback* callback, SimpleCallback* item) {
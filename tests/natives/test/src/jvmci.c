@@ -2,6 +2,12 @@
 #include <stdio.h>
 #include <string.h>
 
+#ifdef _WIN32
+#include <windows.h>
+#else
+#include <unistd.h>
+#endif
+
 // JVMCI
 
 bool jvmci1() {
@@ -83,4 +89,31 @@ float jvmci14() {
 
 double jvmci15() {
     return 1.5;
-}
\ No newline at end of file
+}
+
+// JVMCI transitions
+
+static SimpleCallback* storedCallback = NULL;
+
+void jvmciStoreCallback(SimpleCallback* callback) {
+    storedCallback = callback;
+}
+
+int32_t jvmciInvokeStored(int32_t status) {
+    INVOKE(storedCallback, status);
+    return status + 1;
+}
+
+void jvmciReleaseStored() {
+    FREE_CALLBACK(storedCallback);
+    storedCallback = NULL;
+}
+
+int32_t jvmciSleep(int32_t millis) {
+#ifdef _WIN32
+    Sleep(millis);
+#else
+    usleep(millis * 1000);
+#endif
+    return millis;
+}
@@ -0,0 +1,32 @@
+#include <api.h>
+
+float vec2Dot(Vec2 a, Vec2 b) {
+    return a.x * b.x + a.y * b.y;
+}
+
+Vec2 vec2Add(Vec2 a, Vec2 b) {
+    Vec2 result = { a.x + b.x, a.y + b.y };
+    return result;
+}
+
+void vec2Scale(Vec2* vec, float factor) {
+    vec->x *= factor;
+    vec->y *= factor;
+}
+
+Particle createParticle(int64_t id, float x, float y) {
+    Particle result;
+    result.alive = true;
+    result.id = id;
+    result.position.x = x;
+    result.position.y = y;
+    result.flags = 3;
+    return result;
+}
+
+float sumVec2X(Vec2* vectors, int32_t length) {
+    float result = 0;
+    for(int i = 0; i < length; i++)
+        result += vectors[i].x;
+    return result;
+}
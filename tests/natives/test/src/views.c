@@ -0,0 +1,18 @@
+#include <api.h>
+#include <string.h>
+
+int32_t viewLength(const char* text, int32_t text_length) {
+    return text_length;
+}
+
+bool viewEquals(const char* text, int32_t text_length, const char* expected) {
+    return strlen(expected) == (size_t)text_length && memcmp(text, expected, text_length) == 0;
+}
+
+int32_t viewLengthCritical(const char* text, int32_t text_length) {
+    return text_length;
+}
+
+bool viewEqualsCritical(const char* text, int32_t text_length, const char* expected) {
+    return strlen(expected) == (size_t)text_length && memcmp(text, expected, text_length) == 0;
+}
@@ -0,0 +1,48 @@
+import natives.test.fillDoubleArray
+import natives.test.fillLongArray
+import natives.test.jvmciArrays
+import natives.test.sumFloatArray
+import natives.test.sumIntArray
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class Arrays {
+
+    @Test
+    fun passIntArray() = withLib {
+        assertEquals(10, sumIntArray(intArrayOf(1, 2, 3, 4), 4))
+    }
+
+    @Test
+    fun modifyDoubleArray() = withLib {
+        val array = DoubleArray(5)
+        fillDoubleArray(array, array.size, 2.5)
+        assertContentEquals(DoubleArray(5) { 2.5 }, array)
+    }
+
+    @Test
+    fun passFloatArrayCritical() = withLib {
+        assertEquals(6f, sumFloatArray(floatArrayOf(1f, 2f, 3f), 3))
+    }
+
+    @Test
+    fun modifyLongArrayCritical() = withLib {
+        val array = LongArray(3)
+        fillLongArray(array, array.size, 9223372036854775805L)
+        assertContentEquals(LongArray(3) { 9223372036854775805L }, array)
+    }
+
+    @Test
+    fun passMixedArraysCritical() = withLib {
+        assertTrue(jvmciArrays(
+            byteArrayOf(1), 2,
+            shortArrayOf(3), 4f,
+            intArrayOf(5),
+            longArrayOf(6),
+            floatArrayOf(7f),
+            doubleArrayOf(8.0)
+        ))
+    }
+}
@@ -0,0 +1,47 @@
+import com.huskerdev.nativekt.NativeException
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.withTimeoutOrNull
+import natives.test.asyncCompleteHeld
+import natives.test.asyncFail
+import natives.test.asyncHold
+import natives.test.asyncPing
+import natives.test.loadLibTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNull
+
+class Async {
+
+    @Test
+    fun asyncResult() = runTest {
+        loadLibTest()
+        assertEquals(7, asyncPing(7))
+    }
+
+    @Test
+    fun asyncRepeated() = runTest {
+        loadLibTest()
+        repeat(100) {
+            assertEquals(it, asyncPing(it))
+        }
+    }
+
+    @Test
+    fun asyncError() = runTest {
+        loadLibTest()
+        val error = assertFailsWith<NativeException> {
+            asyncFail("Failed")
+        }
+        assertEquals("Failed", error.message)
+    }
+
+    @Test
+    fun asyncCancelled() = runTest {
+        loadLibTest()
+        assertNull(withTimeoutOrNull(1000) { asyncHold() })
+
+        // Late completion of the cancelled call is ignored
+        asyncCompleteHeld(1)
+    }
+}
@@ -0,0 +1,44 @@
+import natives.test.batchAddBatch
+import natives.test.batchMulBatch
+import natives.test.batchStoreBatch
+import natives.test.batchStoredSum
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class Batch {
+
+    @Test
+    fun batchResults() = withLib {
+        val a = IntArray(8) { it }
+        val b = IntArray(8) { it * 10 }
+        val results = IntArray(8)
+        batchAddBatch(a, b, results, 6)
+
+        assertContentEquals(intArrayOf(0, 11, 22, 33, 44, 55, 0, 0), results)
+    }
+
+    @Test
+    fun batchCritical() = withLib {
+        val results = FloatArray(3)
+        batchMulBatch(floatArrayOf(1f, 2f, 3f), floatArrayOf(4f, 5f, 6f), results, 3)
+
+        assertContentEquals(floatArrayOf(4f, 10f, 18f), results)
+    }
+
+    @Test
+    fun batchVoid() = withLib {
+        val before = batchStoredSum()
+        batchStoreBatch(longArrayOf(1, 2, 3), 3)
+
+        assertEquals(before + 6, batchStoredSum())
+    }
+
+    @Test
+    fun batchOutOfBounds() = withLib {
+        assertFailsWith<IllegalArgumentException> {
+            batchAddBatch(IntArray(2), IntArray(2), IntArray(1), 2)
+        }
+    }
+}
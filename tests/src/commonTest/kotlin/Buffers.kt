@@ -0,0 +1,43 @@
+import com.huskerdev.nativekt.NativeBuffer
+import natives.test.fillBuffer
+import natives.test.sumBuffer
+import kotlin.test.Test
+import kotlin.test.assertContentEquals
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class Buffers {
+
+    @Test
+    fun modifyBuffer() = withLib {
+        NativeBuffer(16).use { buffer ->
+            fillBuffer(buffer, buffer.size, 7)
+
+            val result = ByteArray(buffer.size)
+            buffer.read(0, result)
+            assertContentEquals(ByteArray(16) { 7 }, result)
+        }
+    }
+
+    @Test
+    fun reuseBufferCritical() = withLib {
+        NativeBuffer(4 * Int.SIZE_BYTES).use { buffer ->
+            buffer[0] = 1
+            buffer[Int.SIZE_BYTES] = 2
+            assertEquals(3, sumBuffer(buffer, 4))
+
+            buffer.write(2 * Int.SIZE_BYTES, byteArrayOf(3))
+            assertEquals(6, sumBuffer(buffer, 4))
+        }
+    }
+
+    @Test
+    fun closedBuffer() = withLib {
+        val buffer = NativeBuffer(4 * Int.SIZE_BYTES)
+        buffer.close()
+
+        assertFailsWith<IllegalStateException> {
+            sumBuffer(buffer, 4)
+        }
+    }
+}
@@ -0,0 +1,71 @@
+import com.huskerdev.nativekt.NativeBuffer
+import natives.test.Particle
+import natives.test.Vec2
+import natives.test.createParticle
+import natives.test.sumVec2X
+import natives.test.vec2Add
+import natives.test.vec2Dot
+import natives.test.vec2Scale
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class Structs {
+
+    private fun vec2(x: Float, y: Float) = Vec2().apply {
+        this.x = x
+        this.y = y
+    }
+
+    @Test
+    fun passByValue() = withLib {
+        vec2(1f, 2f).use { a ->
+            vec2(3f, 4f).use { b ->
+                assertEquals(11f, vec2Dot(a, b))
+            }
+        }
+    }
+
+    @Test
+    fun returnByValue() = withLib {
+        vec2(1f, 2f).use { a ->
+            vec2(3f, 4f).use { b ->
+                vec2Add(a, b).use { result ->
+                    assertEquals(4f, result.x)
+                    assertEquals(6f, result.y)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun modifyByPointer() = withLib {
+        vec2(1f, 2f).use { vec ->
+            vec2Scale(vec, 2f)
+            assertEquals(2f, vec.x)
+            assertEquals(4f, vec.y)
+        }
+    }
+
+    @Test
+    fun nestedStruct() = withLib {
+        createParticle(42, 1f, 2f).use { particle ->
+            assertEquals(32, Particle.SIZE)
+            assertTrue(particle.alive)
+            assertEquals(42L, particle.id)
+            assertEquals(1f, particle.position.x)
+            assertEquals(2f, particle.position.y)
+            assertEquals(3.toShort(), particle.flags)
+        }
+    }
+
+    @Test
+    fun structBatchCritical() = withLib {
+        NativeBuffer(4 * Vec2.SIZE).use { buffer ->
+            repeat(4) {
+                Vec2(buffer, it * Vec2.SIZE).x = it.toFloat()
+            }
+            assertEquals(6f, sumVec2X(buffer, 4))
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import natives.test.viewEquals
+import natives.test.viewEqualsCritical
+import natives.test.viewLength
+import natives.test.viewLengthCritical
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class Views {
+
+    @Test
+    fun asciiView() = withLib {
+        assertEquals(5, viewLength("hello"))
+        assertTrue(viewEquals("hello", "hello"))
+    }
+
+    @Test
+    fun nonAsciiView() = withLib {
+        assertEquals(6, viewLength("héllo"))
+        assertEquals(12, viewLength("привет"))
+        assertTrue(viewEquals("привет", "привет"))
+    }
+
+    @Test
+    fun emptyView() = withLib {
+        assertEquals(0, viewLength(""))
+        assertTrue(viewEquals("", ""))
+    }
+
+    @Test
+    fun asciiViewCritical() = withLib {
+        assertEquals(5, viewLengthCritical("hello"))
+        assertTrue(viewEqualsCritical("hello", "hello"))
+
+        // Long strings are checked through the cache
+        val long = "a".repeat(1000)
+        repeat(2) {
+            assertEquals(1000, viewLengthCritical(long))
+            assertTrue(viewEqualsCritical(long, long))
+        }
+    }
+
+    @Test
+    fun nonAsciiViewCritical() = withLib {
+        // Latin-1, but not ASCII
+        assertEquals(6, viewLengthCritical("héllo"))
+        assertTrue(viewEqualsCritical("héllo", "héllo"))
+
+        assertEquals(12, viewLengthCritical("привет"))
+        assertTrue(viewEqualsCritical("привет", "привет"))
+
+        val long = "é".repeat(1000)
+        repeat(2) {
+            assertEquals(2000, viewLengthCritical(long))
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import com.huskerdev.nativekt.InvokerSelector
+import com.huskerdev.nativekt.NativeKtUtils
+import java.lang.invoke.MethodHandle
+import kotlin.concurrent.thread
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertSame
+import kotlin.test.assertTrue
+
+
+class Adaptive {
+
+    private val calls = Integer.getInteger("nativekt.jvm.adaptiveCalls", 20000)
+
+    private fun MethodHandle.selected() =
+        invokeExact() as String?
+
+    @Test
+    fun selectsFastest() {
+        val site = InvokerSelector.callSite(String::class.java)
+        val invoker = site.dynamicInvoker()
+        val selector = InvokerSelector("adaptive.selectsFastest", "jni", "foreign", site)
+
+        var count = 0
+        while(invoker.selected() == null) {
+            val index = selector.next()
+            selector.record(index, if(index == 1) 10 else 100)
+            count++
+        }
+        // Warm-up and measurement
+        assertTrue(count in calls..calls * 2)
+
+        assertSame("foreign", invoker.selected())
+        assertSame("foreign", selector.selected)
+        assertEquals(NativeKtUtils.Invoker.FOREIGN, InvokerSelector.getSelectedInvokers()["adaptive.selectsFastest"])
+    }
+
+    @Test
+    fun concurrentRecords() {
+        val site = InvokerSelector.callSite(String::class.java)
+        val invoker = site.dynamicInvoker()
+        val selector = InvokerSelector("adaptive.concurrentRecords", "jni", "foreign", site)
+
+        List(4) {
+            thread {
+                while(invoker.selected() == null) {
+                    val index = selector.next()
+                    selector.record(index, if(index == 0) 10 else 100)
+                }
+            }
+        }.forEach { it.join() }
+
+        assertSame("jni", invoker.selected())
+        assertEquals(NativeKtUtils.Invoker.JNI, InvokerSelector.getSelectedInvokers()["adaptive.concurrentRecords"])
+    }
+
+    @Test
+    fun pinnedInvoker() {
+        System.setProperty("nativekt.jvm.invoker.adaptive.pinnedInvoker", "jni")
+        try {
+            val site = InvokerSelector.callSite(String::class.java)
+            InvokerSelector("adaptive.pinnedInvoker", "jni", "foreign", site)
+
+            assertSame("jni", site.dynamicInvoker().selected())
+            assertEquals(NativeKtUtils.Invoker.JNI, InvokerSelector.getSelectedInvokers()["adaptive.pinnedInvoker"])
+        } finally {
+            System.clearProperty("nativekt.jvm.invoker.adaptive.pinnedInvoker")
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import com.huskerdev.nativekt.BlockingPool
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.test.runTest
+import natives.test.*
+import kotlin.concurrent.thread
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertTrue
+
+
+class Blocking {
+
+    private val pool
+        get() = BlockingPool.getPools().getValue("test")
+
+    private fun <T> onVirtualThread(block: () -> T): T {
+        var result: Result<T>? = null
+        Thread.ofVirtual().start { result = runCatching(block) }.join()
+        return result!!.getOrThrow()
+    }
+
+    @Test
+    fun offloadedCall() = runTest {
+        loadLibTest()
+        val busyTime = pool.busyTime
+
+        // Suspend variant, that awaits the pool
+        assertEquals(10, blockingSleepOffloaded(10))
+        assertTrue(pool.busyTime > busyTime)
+    }
+
+    @Test
+    fun offloadedConcurrentCalls() = runTest {
+        loadLibTest()
+        val results = List(pool.maxThreads * 2) {
+            async { blockingSleepOffloaded(it) }
+        }.awaitAll()
+        assertEquals(List(pool.maxThreads * 2) { it }, results)
+    }
+
+    @Test
+    fun poolCall() = withLib {
+        // Blocking variant, that parks the caller
+        assertEquals(10, pool.call { blockingSleep(10) })
+    }
+
+    @Test
+    fun offloadedCallOnVirtualThread() = withLib {
+        val busyTime = pool.busyTime
+
+        assertEquals(10, onVirtualThread { runBlocking { blockingSleepOffloaded(10) } })
+        assertTrue(pool.busyTime > busyTime)
+    }
+
+    @Test
+    fun poolCallOnVirtualThread() = withLib {
+        val busyTime = pool.busyTime
+
+        assertEquals(10, onVirtualThread { pool.call { blockingSleep(10) } })
+        assertTrue(pool.busyTime > busyTime)
+    }
+
+    @Test
+    fun poolCallException() = withLib {
+        assertFailsWith<IllegalStateException> {
+            pool.call<Int> { throw IllegalStateException() }
+        }
+    }
+
+    @Test
+    fun poolCallInterrupted() = withLib {
+        var error: Throwable? = null
+        val caller = thread {
+            try {
+                pool.call { blockingSleep(2000) }
+            } catch (e: Throwable) {
+                error = e
+            }
+        }
+        Thread.sleep(100)
+        caller.interrupt()
+        caller.join(1000)
+
+        assertTrue(error is InterruptedException, "Expected InterruptedException, but was $error")
+    }
+}
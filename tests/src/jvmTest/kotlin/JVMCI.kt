@@ -1,5 +1,6 @@
 import com.huskerdev.nativekt.NativeKtUtils
 import natives.test.*
+import kotlin.concurrent.thread
 import kotlin.test.Test
 import kotlin.test.assertEquals
 import kotlin.test.assertTrue
@@ -89,4 +90,48 @@ class JVMCI {
     fun jvmciReturnsDouble() = withJVMCI {
         assertEquals(1.5, jvmci15())
     }
-}
\ No newline at end of file
+
+    @Test
+    fun jvmciNonCriticalCallback() = withJVMCI {
+        var status = 0
+        simpleCallback {
+            System.gc()
+            status = it
+        }
+        assertEquals(2, status)
+    }
+
+    @Test
+    fun jvmciTransitionCallback() = withJVMCI {
+        val received = arrayListOf<Int>()
+        jvmciStoreCallback {
+            // Callback is called from the transition stub, so GC can run during the call
+            System.gc()
+            received += it
+        }
+        try {
+            repeat(10) {
+                assertEquals(it + 1, jvmciInvokeStored(it))
+            }
+            assertEquals(List(10) { it }, received)
+        } finally {
+            jvmciReleaseStored()
+        }
+    }
+
+    @Test
+    fun jvmciTransitionLongCall() = withJVMCI {
+        var result = 0
+        val call = thread { result = jvmciSleep(3000) }
+        Thread.sleep(300)
+
+        // Thread is in native state, so safepoint is not blocked by the call
+        val start = System.nanoTime()
+        System.gc()
+        val elapsed = (System.nanoTime() - start) / 1_000_000
+
+        call.join()
+        assertEquals(3000, result)
+        assertTrue(elapsed < 2000, "GC was blocked by native call for $elapsed ms")
+    }
+}